@@ -0,0 +1,1061 @@
+package com.example.webviewapp;
+
+import android.content.Context;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache for H5 static assets, served to the WebView from shouldInterceptRequest
+ * GET requests under the configured URL prefixes with a static file extension are fetched once, stored
+ * content-addressed by SHA-256 and served from memory-mapped files on later requests and launches.
+ * An in-memory index maps URLs to stored files and evicts the least recently used ones above the byte budget.
+ * Freshness is driven by an asset manifest: {"version": "...", "assets": {"path": "sha256", ...}}.
+ * When the manifest version of an origin changes, entries whose hash differs or that are no longer listed
+ * are dropped; listed hashes are also checked against downloaded content.
+ * Entries the manifest does not vouch for follow HTTP caching: they are served for their Cache-Control
+ * max-age or Expires lifetime, then revalidated with a conditional GET. Private responses and responses
+ * to requests carrying cookies are only stored for assets listed by the manifest
+ */
+public final class AssetCache {
+    private static final String TAG = "AssetCache";
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final String DEFAULT_MANIFEST_NAME = "asset-manifest.json";
+
+    private static final String INDEX_FILE = "index";
+    private static final String INDEX_HEADER = "asset-cache 2";
+    // Entries of the previous format have no validators and are revalidated on first use
+    private static final String INDEX_HEADER_V1 = "asset-cache 1";
+    private static final String OBJECTS_DIR = "objects";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_MANIFEST_BYTES = 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 20000;
+    // Cap of the freshness guessed from Last-Modified when the origin gives no lifetime
+    private static final long MAX_HEURISTIC_FRESHNESS_MS = 24L * 60 * 60 * 1000;
+
+    private static final Set<String> DEFAULT_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "js", "mjs", "css", "woff", "woff2", "ttf", "otf", "png", "jpg", "jpeg", "gif", "webp", "svg", "ico",
+            "wasm"));
+
+    private static volatile AssetCache defaultCache;
+
+    /**
+     * Source of assets on a cache miss, replaceable by a local stand-in for testing
+     */
+    public interface Origin {
+        /**
+         * @param url Asset URL
+         * @param headers Request headers to forward
+         * @return Response, its body is closed by the cache or the WebView it is served to; redirects are returned as they are, not followed,
+         *         since the content of another URL must not be stored under this one
+         */
+        OriginResponse fetch(String url, Map<String, String> headers) throws IOException;
+    }
+
+    /**
+     * Paces a download, called after every block read from the origin
+     */
+    public interface ReadThrottle {
+        /**
+         * @param bytes Bytes just read
+         * @throws IOException to abort the download, e.g. an InterruptedIOException on cancellation
+         */
+        void onRead(int bytes) throws IOException;
+    }
+
+    /**
+     * Response of an {@link Origin}
+     */
+    public static final class OriginResponse {
+        final int status;
+        final String mimeType;
+        final String encoding;
+        final String allowOrigin;
+        final boolean cacheable;
+        final boolean shared;
+        final String etag;
+        final String lastModified;
+        final long maxAgeMs;
+        final InputStream body;
+
+        /**
+         * Response without validators or lifetime, stored but revalidated on every use unless a manifest lists it
+         * @param status HTTP status, only 200 is stored
+         * @param mimeType MIME type without parameters
+         * @param encoding Charset, may be null
+         * @param allowOrigin Access-Control-Allow-Origin value replayed to the WebView, may be null
+         * @param cacheable false if the origin forbids storing the response
+         * @param body Response body
+         */
+        public OriginResponse(int status, String mimeType, String encoding, String allowOrigin,
+                              boolean cacheable, InputStream body) {
+            this(status, mimeType, encoding, allowOrigin, cacheable, true, null, null, 0, body);
+        }
+
+        /**
+         * @param status HTTP status, 200 is stored and 304 confirms the stored entry
+         * @param shared false for a private response, stored only if a manifest lists the asset
+         * @param etag ETag validator, may be null
+         * @param lastModified Last-Modified validator as sent, may be null
+         * @param maxAgeMs Time the response stays fresh from now, 0 to revalidate on every use
+         * @see #OriginResponse(int, String, String, String, boolean, InputStream)
+         */
+        public OriginResponse(int status, String mimeType, String encoding, String allowOrigin, boolean cacheable,
+                              boolean shared, String etag, String lastModified, long maxAgeMs, InputStream body) {
+            this.status = status;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.allowOrigin = allowOrigin;
+            this.cacheable = cacheable;
+            this.shared = shared;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.maxAgeMs = maxAgeMs;
+            this.body = body;
+        }
+    }
+
+    /**
+     * A stored asset
+     */
+    public static final class CachedAsset {
+        final String url;
+        final String hash;
+        final String mimeType;
+        final String encoding;
+        final String allowOrigin;
+        final long size;
+        final File file;
+        final String etag;
+        final String lastModified;
+        // Wall-clock time after which the entry is revalidated, unless the manifest lists its hash
+        final long expiresAt;
+
+        CachedAsset(String url, String hash, String mimeType, String encoding, String allowOrigin, long size,
+                    File file, String etag, String lastModified, long expiresAt) {
+            this.url = url;
+            this.hash = hash;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.allowOrigin = allowOrigin;
+            this.size = size;
+            this.file = file;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return SHA-256 of the content, lower-case hex
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Open the content as a memory-mapped stream, no copy through the Java heap
+         */
+        public InputStream open() throws IOException {
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                FileChannel channel = in.getChannel();
+                // The mapping stays valid after the channel is closed
+                return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+    }
+
+    private final File dir;
+    private final File objectsDir;
+    private final long maxBytes;
+    private final Executor ioExecutor;
+    private volatile Origin origin = new HttpOrigin();
+    private final CopyOnWriteArrayList<String> prefixes = new CopyOnWriteArrayList<>();
+    private final Set<String> extensions = new HashSet<>(DEFAULT_EXTENSIONS);
+
+    // Guarded by this: URL index in access order, reference counts and sizes of stored objects
+    private final LinkedHashMap<String, CachedAsset> index = new LinkedHashMap<>(64, 0.75f, true);
+    private final HashMap<String, Integer> objectRefs = new HashMap<>();
+    private final HashMap<String, String> manifestVersions = new HashMap<>();
+    private long totalBytes;
+    private boolean loaded;
+
+    // Hashes announced by manifests, checked against downloaded content
+    private final ConcurrentHashMap<String, String> expectedHashes = new ConcurrentHashMap<>();
+    // One download per URL, concurrent requests for it wait for the same result
+    private final ConcurrentHashMap<String, CompletableFuture<CachedAsset>> inflight = new ConcurrentHashMap<>();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param dir Cache directory, created on first use
+     * @param maxBytes Byte budget of stored assets
+     */
+    public AssetCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.objectsDir = new File(dir, OBJECTS_DIR);
+        this.maxBytes = maxBytes;
+        this.ioExecutor = BridgeIoExecutor.shared();
+    }
+
+    /**
+     * @return Application-wide cache in the app cache directory, with the default byte budget
+     */
+    public static AssetCache getDefault(Context context) {
+        AssetCache cache = defaultCache;
+        if (cache == null) {
+            synchronized (AssetCache.class) {
+                cache = defaultCache;
+                if (cache == null) {
+                    cache = new AssetCache(new File(context.getApplicationContext().getCacheDir(), "h5-assets"),
+                            DEFAULT_MAX_BYTES);
+                    defaultCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Cache static assets whose URL starts with the given prefix
+     * @param urlPrefix Absolute URL prefix, e.g. "https://example.com/static/"
+     */
+    public void addPrefix(String urlPrefix) {
+        prefixes.addIfAbsent(urlPrefix);
+    }
+
+    /**
+     * @param extension File extension without the dot, added to the cacheable ones
+     */
+    public synchronized void addExtension(String extension) {
+        extensions.add(extension.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Replace the source of assets, e.g. with a local HTTP stand-in
+     */
+    public void setOrigin(Origin origin) {
+        this.origin = origin;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public synchronized long getSizeBytes() {
+        ensureLoaded();
+        return totalBytes;
+    }
+
+    /**
+     * @return true if the URL is under a configured prefix and has a cacheable extension
+     */
+    public boolean isCacheable(String url) {
+        boolean matches = false;
+        for (String prefix : prefixes) {
+            if (url.startsWith(prefix)) {
+                matches = true;
+                break;
+            }
+        }
+        if (!matches) {
+            return false;
+        }
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        int dot = url.lastIndexOf('.', end);
+        if (dot < 0 || dot < url.lastIndexOf('/', end)) {
+            return false;
+        }
+        String extension = url.substring(dot + 1, end).toLowerCase(Locale.US);
+        synchronized (this) {
+            return extensions.contains(extension);
+        }
+    }
+
+    /**
+     * Serve a WebView request from the cache, downloading and storing the asset on a miss
+     * A response that is downloaded but not stored is served as it is, so the asset is not fetched twice
+     * Called from WebViewClient.shouldInterceptRequest, which runs on a WebView background thread
+     * @return Response, null to let the WebView load the request itself
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return null;
+        }
+        String url = request.getUrl().toString();
+        if (!isCacheable(url)) {
+            return null;
+        }
+        Map<String, String> headers = new HashMap<>(request.getRequestHeaders());
+        if (headers.containsKey("Range")) {
+            // Partial content is left to the network stack
+            return null;
+        }
+        CachedAsset asset = get(url);
+        if (asset == null) {
+            String cookie = CookieManager.getInstance().getCookie(url);
+            if (cookie != null) {
+                if (!expectedHashes.containsKey(url)) {
+                    // The response may be personalized, only content the manifest vouches for is shared
+                    return null;
+                }
+                headers.put("Cookie", cookie);
+            }
+            PassThrough passThrough = new PassThrough();
+            asset = load(url, headers, null, passThrough);
+            if (passThrough.body != null) {
+                // Already open, the WebView gets it rather than requesting the asset a second time
+                return passThrough.toWebResourceResponse();
+            }
+        }
+        if (asset == null) {
+            return null;
+        }
+        try {
+            HashMap<String, String> responseHeaders = new HashMap<>();
+            responseHeaders.put("Content-Length", Long.toString(asset.size));
+            if (asset.allowOrigin != null) {
+                responseHeaders.put("Access-Control-Allow-Origin", asset.allowOrigin);
+            }
+            return new WebResourceResponse(asset.mimeType, asset.encoding, 200, "OK", responseHeaders, asset.open());
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot open cached " + url + ", evicting", e);
+            remove(url);
+            return null;
+        }
+    }
+
+    /**
+     * @return Stored asset, null on a miss or if it has to be revalidated; never touches the network
+     */
+    public CachedAsset get(String url) {
+        CachedAsset asset = peek(url);
+        if (asset == null || !isFresh(asset)) {
+            return null;
+        }
+        hits.incrementAndGet();
+        return asset;
+    }
+
+    /**
+     * @return Stored asset whether fresh or not, null on a miss
+     */
+    private CachedAsset peek(String url) {
+        CachedAsset asset;
+        synchronized (this) {
+            ensureLoaded();
+            asset = index.get(url);
+        }
+        if (asset != null && !asset.file.exists()) {
+            remove(url);
+            return null;
+        }
+        return asset;
+    }
+
+    /**
+     * @return true if the asset can be served without asking the origin
+     */
+    private boolean isFresh(CachedAsset asset) {
+        // Content matching the manifest hash is current whatever its HTTP lifetime
+        return asset.hash.equals(expectedHashes.get(asset.url)) || System.currentTimeMillis() < asset.expiresAt;
+    }
+
+    /**
+     * Return a fresh stored asset or download and store it, blocking the calling thread
+     * A stale entry is revalidated with its ETag and Last-Modified, and kept if the origin answers 304
+     * @param url Asset URL
+     * @param headers Request headers forwarded to the origin
+     * @return Stored asset, null if it could not be downloaded or must not be cached
+     */
+    public CachedAsset load(String url, Map<String, String> headers) {
+        return load(url, headers, null);
+    }
+
+    /**
+     * Return a stored asset or download it at the pace set by a throttle
+     * Concurrent requests for the same URL wait for this download, and fall back to the network if it is aborted
+     * @param throttle Pacing of the download, null for full speed
+     * @see #load(String, Map)
+     */
+    public CachedAsset load(String url, Map<String, String> headers, ReadThrottle throttle) {
+        return load(url, headers, throttle, null);
+    }
+
+    /**
+     * @param passThrough Receives the open response if the asset was downloaded but not stored, null to discard it
+     * @see #load(String, Map, ReadThrottle)
+     */
+    CachedAsset load(String url, Map<String, String> headers, ReadThrottle throttle, PassThrough passThrough) {
+        CachedAsset stored = peek(url);
+        if (stored != null && isFresh(stored)) {
+            hits.incrementAndGet();
+            return stored;
+        }
+        CachedAsset asset = null;
+        CompletableFuture<CachedAsset> download = new CompletableFuture<>();
+        CompletableFuture<CachedAsset> existing = inflight.putIfAbsent(url, download);
+        if (existing != null) {
+            return existing.join();
+        }
+        misses.incrementAndGet();
+        try {
+            asset = download(url, headers, throttle, stored, passThrough);
+            return asset;
+        } finally {
+            inflight.remove(url, download);
+            download.complete(asset);
+        }
+    }
+
+    /**
+     * Download a manifest in the background and apply it
+     * @param manifestUrl Absolute manifest URL, asset paths in it are resolved against it
+     */
+    public void refreshManifest(String manifestUrl) {
+        ioExecutor.execute(() -> {
+            try {
+                updateManifest(manifestUrl);
+            } catch (IOException | JSONException | RuntimeException e) {
+                Log.w(TAG, "Cannot refresh manifest " + manifestUrl + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Download a manifest and apply it, blocking the calling thread
+     * @param manifestUrl Absolute manifest URL
+     * @return The manifest
+     */
+    public JSONObject updateManifest(String manifestUrl) throws IOException, JSONException {
+        JSONObject manifest = new JSONObject(fetchText(manifestUrl));
+        applyManifest(manifestUrl, manifest);
+        return manifest;
+    }
+
+    /**
+     * @param pageUrl Absolute page URL
+     * @return URL of the asset manifest published next to the page
+     */
+    public static String manifestUrlFor(String pageUrl) {
+        URI page = URI.create(pageUrl);
+        String path = page.getRawPath();
+        String directory = path == null || path.isEmpty() ? "/" : path.substring(0, path.lastIndexOf('/') + 1);
+        return page.getScheme() + "://" + page.getRawAuthority() + directory + DEFAULT_MANIFEST_NAME;
+    }
+
+    /**
+     * @param url Absolute URL
+     * @return Scheme and authority followed by "/", the prefix covering every asset of the URL's origin
+     */
+    public static String originPrefixOf(String url) {
+        URI uri = URI.create(url);
+        return uri.getScheme() + "://" + uri.getRawAuthority() + "/";
+    }
+
+    /**
+     * Invalidate entries against a manifest of their origin
+     * Entries with a listed hash are kept if the hash matches. When the version differs from the previous
+     * manifest of the origin, unlisted entries are dropped as well
+     * @param manifestUrl Absolute manifest URL
+     * @param manifest Manifest object
+     * @return Absolute URLs listed by the manifest, keyed to their expected hash
+     */
+    public Map<String, String> applyManifest(String manifestUrl, JSONObject manifest) {
+        URI base = URI.create(manifestUrl);
+        String originKey = base.getScheme() + "://" + base.getRawAuthority();
+        String version = manifest.optString("version");
+        JSONObject assets = manifest.optJSONObject("assets");
+        HashMap<String, String> listed = new HashMap<>();
+        if (assets != null) {
+            Iterator<String> keys = assets.keys();
+            while (keys.hasNext()) {
+                String path = keys.next();
+                String hash = assets.optString(path).toLowerCase(Locale.US);
+                if (!hash.isEmpty()) {
+                    listed.put(base.resolve(path).toString(), hash);
+                }
+            }
+        }
+        expectedHashes.keySet().removeIf(url -> url.startsWith(originKey + "/"));
+        expectedHashes.putAll(listed);
+
+        int dropped = 0;
+        synchronized (this) {
+            ensureLoaded();
+            String previous = manifestVersions.put(originKey, version);
+            boolean versionChanged = !version.equals(previous);
+            Iterator<Map.Entry<String, CachedAsset>> entries = index.entrySet().iterator();
+            while (entries.hasNext()) {
+                CachedAsset asset = entries.next().getValue();
+                if (!asset.url.startsWith(originKey + "/")) {
+                    continue;
+                }
+                String expected = listed.get(asset.url);
+                if (expected != null ? !expected.equals(asset.hash) : versionChanged) {
+                    entries.remove();
+                    releaseObject(asset);
+                    dropped++;
+                }
+            }
+        }
+        Log.d(TAG, "Manifest " + version + " for " + originKey + ": " + listed.size() + " assets, "
+                + dropped + " stale entries dropped");
+        scheduleSave();
+        return listed;
+    }
+
+    /**
+     * Remove an entry, the file is deleted once no other URL refers to the same content
+     */
+    public synchronized void remove(String url) {
+        ensureLoaded();
+        CachedAsset asset = index.remove(url);
+        if (asset != null) {
+            releaseObject(asset);
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Remove every entry and stored file
+     */
+    public synchronized void clear() {
+        ensureLoaded();
+        for (CachedAsset asset : index.values()) {
+            releaseObject(asset);
+        }
+        index.clear();
+        manifestVersions.clear();
+        scheduleSave();
+    }
+
+    /**
+     * @param stale Stored entry to revalidate, null if none
+     */
+    private CachedAsset download(String url, Map<String, String> headers, ReadThrottle throttle, CachedAsset stale,
+                                 PassThrough passThrough) {
+        Map<String, String> requestHeaders = headers;
+        if (stale != null && (stale.etag != null || stale.lastModified != null)) {
+            requestHeaders = new HashMap<>(headers);
+            if (stale.etag != null) {
+                requestHeaders.put("If-None-Match", stale.etag);
+            }
+            if (stale.lastModified != null) {
+                requestHeaders.put("If-Modified-Since", stale.lastModified);
+            }
+        }
+        OriginResponse response;
+        try {
+            response = origin.fetch(url, requestHeaders);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot fetch " + url + ": " + e.getMessage());
+            return null;
+        }
+        File temp = null;
+        InputStream body = response.body;
+        try {
+            if (response.status == 304 && stale != null) {
+                // Unchanged, the stored content is fresh again; a 304 may update the validators
+                CachedAsset asset = new CachedAsset(url, stale.hash, stale.mimeType, stale.encoding, stale.allowOrigin,
+                        stale.size, stale.file, response.etag != null ? response.etag : stale.etag,
+                        response.lastModified != null ? response.lastModified : stale.lastModified,
+                        System.currentTimeMillis() + response.maxAgeMs);
+                put(asset);
+                return asset;
+            }
+            if (stale != null) {
+                remove(url);
+            }
+            if (response.status != 200 || !response.cacheable) {
+                handOff(passThrough, response, body);
+                return null;
+            }
+            if (!expectedHashes.containsKey(url) && (!response.shared || hasHeader(headers, "Cookie"))) {
+                Log.d(TAG, "Not caching " + url + ", private response not listed by the manifest");
+                handOff(passThrough, response, body);
+                return null;
+            }
+            if (!objectsDir.isDirectory() && !objectsDir.mkdirs()) {
+                throw new IOException("Cannot create " + objectsDir);
+            }
+            temp = File.createTempFile("download", ".tmp", objectsDir);
+            MessageDigest digest = sha256();
+            long size = 0;
+            try (OutputStream out = new FileOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes / 4) {
+                        Log.w(TAG, "Not caching " + url + ", larger than a quarter of the budget");
+                        if (passThrough != null) {
+                            // What was read so far, followed by the rest of the origin body
+                            out.write(buffer, 0, read);
+                            handOff(passThrough, response, new SequenceInputStream(new FileInputStream(temp), body));
+                        }
+                        return null;
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    if (throttle != null) {
+                        throttle.onRead(read);
+                    }
+                }
+            }
+            String hash = toHex(digest.digest());
+            String expected = expectedHashes.get(url);
+            if (expected != null && !expected.equals(hash)) {
+                Log.w(TAG, "Not caching " + url + ", content does not match the manifest hash");
+                if (passThrough != null) {
+                    // The origin body is at its end, closing the sequence closes it
+                    handOff(passThrough, response, new SequenceInputStream(new FileInputStream(temp), body));
+                }
+                return null;
+            }
+            File file = new File(objectsDir, hash);
+            // Content already stored under another URL is shared, the download is discarded
+            if (!file.exists() && !temp.renameTo(file)) {
+                throw new IOException("Cannot store " + file);
+            }
+            CachedAsset asset = new CachedAsset(url, hash, response.mimeType, response.encoding,
+                    response.allowOrigin, size, file, response.etag, response.lastModified,
+                    System.currentTimeMillis() + response.maxAgeMs);
+            put(asset);
+            return asset;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot cache " + url + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (passThrough == null || passThrough.body == null) {
+                closeQuietly(body);
+            }
+            // A temp file handed off stays readable through its open stream once deleted
+            if (temp != null && temp.exists() && !temp.delete()) {
+                Log.w(TAG, "Cannot delete " + temp);
+            }
+        }
+    }
+
+    /**
+     * Give a response that is not stored to a caller that wants it, if a WebResourceResponse can carry its status
+     * @param passThrough Receiver, null if the caller discards the response
+     * @param body Unread rest of the response
+     */
+    private static void handOff(PassThrough passThrough, OriginResponse response, InputStream body) {
+        // WebResourceResponse rejects redirects and anything outside 100..599
+        if (passThrough != null && (response.status >= 200 && response.status < 300
+                || response.status >= 400 && response.status < 600)) {
+            passThrough.response = response;
+            passThrough.body = body;
+        }
+    }
+
+    private synchronized void put(CachedAsset asset) {
+        ensureLoaded();
+        CachedAsset previous = index.put(asset.url, asset);
+        retainObject(asset);
+        if (previous != null) {
+            releaseObject(previous);
+        }
+        // Evict least recently used entries, never the one just stored
+        Iterator<Map.Entry<String, CachedAsset>> entries = index.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.hasNext()) {
+            CachedAsset eldest = entries.next().getValue();
+            if (eldest == asset) {
+                break;
+            }
+            entries.remove();
+            releaseObject(eldest);
+        }
+        scheduleSave();
+    }
+
+    private void retainObject(CachedAsset asset) {
+        Integer refs = objectRefs.get(asset.hash);
+        if (refs == null) {
+            totalBytes += asset.size;
+            objectRefs.put(asset.hash, 1);
+        } else {
+            objectRefs.put(asset.hash, refs + 1);
+        }
+    }
+
+    private void releaseObject(CachedAsset asset) {
+        Integer refs = objectRefs.get(asset.hash);
+        if (refs == null) {
+            return;
+        }
+        if (refs > 1) {
+            objectRefs.put(asset.hash, refs - 1);
+            return;
+        }
+        objectRefs.remove(asset.hash);
+        totalBytes -= asset.size;
+        // Open mappings stay readable after the file is deleted
+        if (asset.file.exists() && !asset.file.delete()) {
+            Log.w(TAG, "Cannot delete " + asset.file);
+        }
+    }
+
+    /**
+     * Read the persisted index on first use, off the main thread in practice since the first
+     * access comes from shouldInterceptRequest or a manifest refresh
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File file = new File(dir, INDEX_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (!INDEX_HEADER.equals(header) && !INDEX_HEADER_V1.equals(header)) {
+                Log.w(TAG, "Unknown index format, starting empty");
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 3 && "M".equals(fields[0])) {
+                    manifestVersions.put(fields[1], fields[2]);
+                } else if ((fields.length == 7 || fields.length == 10) && "A".equals(fields[0])) {
+                    File object = new File(objectsDir, fields[2]);
+                    if (object.isFile()) {
+                        boolean validated = fields.length == 10;
+                        CachedAsset asset = new CachedAsset(fields[1], fields[2], fields[3], emptyToNull(fields[4]),
+                                emptyToNull(fields[5]), Long.parseLong(fields[6]), object,
+                                validated ? emptyToNull(fields[7]) : null, validated ? emptyToNull(fields[8]) : null,
+                                validated ? Long.parseLong(fields[9]) : 0);
+                        index.put(asset.url, asset);
+                        retainObject(asset);
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, "Cannot read index, starting empty", e);
+            index.clear();
+            objectRefs.clear();
+            manifestVersions.clear();
+            totalBytes = 0;
+        }
+    }
+
+    /**
+     * Persist the index in the background, coalescing bursts of changes into one write
+     */
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            ioExecutor.execute(this::save);
+        }
+    }
+
+    private void save() {
+        saveScheduled.set(false);
+        StringBuilder sb = new StringBuilder(4096);
+        synchronized (this) {
+            sb.append(INDEX_HEADER).append('\n');
+            for (Map.Entry<String, String> version : manifestVersions.entrySet()) {
+                sb.append("M\t").append(version.getKey()).append('\t').append(version.getValue()).append('\n');
+            }
+            // Least recently used first, so reloading the index restores the eviction order
+            for (CachedAsset asset : index.values()) {
+                sb.append("A\t").append(asset.url).append('\t').append(asset.hash)
+                        .append('\t').append(asset.mimeType)
+                        .append('\t').append(asset.encoding != null ? asset.encoding : "")
+                        .append('\t').append(asset.allowOrigin != null ? asset.allowOrigin : "")
+                        .append('\t').append(asset.size)
+                        .append('\t').append(asset.etag != null ? asset.etag : "")
+                        .append('\t').append(asset.lastModified != null ? asset.lastModified : "")
+                        .append('\t').append(asset.expiresAt).append('\n');
+            }
+        }
+        File file = new File(dir, INDEX_FILE);
+        File temp = new File(dir, INDEX_FILE + ".tmp");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                writer.write(sb.toString());
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save index", e);
+        }
+    }
+
+    private String fetchText(String url) throws IOException {
+        OriginResponse response = origin.fetch(url, new HashMap<>());
+        try (InputStream body = response.body) {
+            if (response.status != 200) {
+                throw new IOException("HTTP " + response.status);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (out.size() > MAX_MANIFEST_BYTES) {
+                    throw new IOException("Manifest too large");
+                }
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    private static boolean hasHeader(Map<String, String> headers, String name) {
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Response downloaded for the WebView but not stored, served once as it is
+     */
+    static final class PassThrough {
+        OriginResponse response;
+        InputStream body;
+
+        WebResourceResponse toWebResourceResponse() {
+            HashMap<String, String> headers = new HashMap<>();
+            if (response.allowOrigin != null) {
+                headers.put("Access-Control-Allow-Origin", response.allowOrigin);
+            }
+            return new WebResourceResponse(response.mimeType, response.encoding, response.status,
+                    response.status == 200 ? "OK" : "Status " + response.status, headers, body);
+        }
+    }
+
+    /**
+     * Default origin over HttpURLConnection
+     */
+    private static final class HttpOrigin implements Origin {
+        @Override
+        public OriginResponse fetch(String url, Map<String, String> headers) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            // A redirect target must not be stored under the requested URL; 3xx is never cached
+            connection.setInstanceFollowRedirects(false);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            int status = connection.getResponseCode();
+            String contentType = connection.getContentType();
+            String mimeType = "application/octet-stream";
+            String encoding = null;
+            if (contentType != null) {
+                String[] parts = contentType.split(";");
+                mimeType = parts[0].trim();
+                for (int i = 1; i < parts.length; i++) {
+                    String part = parts[i].trim();
+                    if (part.regionMatches(true, 0, "charset=", 0, 8)) {
+                        encoding = part.substring(8).replace("\"", "");
+                    }
+                }
+            }
+            boolean cacheable = true;
+            boolean shared = true;
+            long maxAgeMs = -1;
+            String cacheControl = connection.getHeaderField("Cache-Control");
+            if (cacheControl != null) {
+                for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                    directive = directive.trim();
+                    if (directive.equals("no-store")) {
+                        cacheable = false;
+                    } else if (directive.equals("private") || directive.startsWith("private=")) {
+                        shared = false;
+                    } else if (directive.equals("no-cache") || directive.startsWith("no-cache=")) {
+                        maxAgeMs = 0;
+                    } else if (directive.startsWith("max-age=") && maxAgeMs != 0) {
+                        maxAgeMs = parseSeconds(directive.substring(8)) * 1000;
+                    }
+                }
+            }
+            String etag = connection.getHeaderField("ETag");
+            String lastModified = connection.getHeaderField("Last-Modified");
+            long date = connection.getDate();
+            if (date == 0) {
+                date = System.currentTimeMillis();
+            }
+            if (maxAgeMs < 0 && connection.getHeaderField("Expires") != null) {
+                // An invalid date, such as "0", means already expired
+                maxAgeMs = Math.max(0, connection.getHeaderFieldDate("Expires", date) - date);
+            }
+            if (maxAgeMs < 0) {
+                // No lifetime given: a tenth of the time since the last change, as suggested by RFC 7234
+                long modified = connection.getLastModified();
+                maxAgeMs = modified > 0 && modified < date
+                        ? Math.min((date - modified) / 10, MAX_HEURISTIC_FRESHNESS_MS) : 0;
+            }
+            // Time already spent in shared caches on the way
+            maxAgeMs = Math.max(0, maxAgeMs - Math.max(0, parseSeconds(connection.getHeaderField("Age"))) * 1000);
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            return new OriginResponse(status, mimeType, encoding, connection.getHeaderField("Access-Control-Allow-Origin"),
+                    cacheable, shared, etag, lastModified, maxAgeMs,
+                    body != null ? body : new ByteArrayInputStream(new byte[0]));
+        }
+
+        /**
+         * @return Delta-seconds value, 0 if absent or malformed
+         */
+        private static long parseSeconds(String value) {
+            if (value == null) {
+                return 0;
+            }
+            try {
+                return Math.max(0, Long.parseLong(value.trim().replace("\"", "")));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Stream over a memory-mapped file
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
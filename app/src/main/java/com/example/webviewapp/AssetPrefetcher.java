@@ -0,0 +1,177 @@
+package com.example.webviewapp;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * Downloads the asset manifest and critical assets of a page into an {@link AssetCache} before it is opened
+ * Assets are fetched one at a time on a background thread, paced by a bandwidth limit, so prefetching
+ * does not compete with the foreground. Starting a prefetch for another page cancels the previous one,
+ * including the download in progress.
+ * The manifest lists critical assets in an optional "critical" array of paths; without it every asset
+ * of the manifest is prefetched
+ */
+public final class AssetPrefetcher {
+    private static final String TAG = "AssetPrefetcher";
+
+    public static final long DEFAULT_BYTES_PER_SECOND = 512 * 1024;
+
+    // Bytes that may be read in a burst before pacing kicks in, expressed as time at the current rate
+    private static final long BURST_NANOS = 100_000_000L;
+
+    private final AssetCache cache;
+    private final Executor executor;
+    private volatile long bytesPerSecond = DEFAULT_BYTES_PER_SECOND;
+    private Job current;
+
+    public AssetPrefetcher(AssetCache cache) {
+        this.cache = cache;
+        // Paced downloads sleep, they get a thread of their own
+        this.executor = BridgeIoExecutor.newSingleThread("asset-prefetch");
+    }
+
+    /**
+     * @param bytesPerSecond Bandwidth limit of prefetch downloads, 0 for none; applies to running downloads too
+     */
+    public void setBandwidthLimit(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Prefetch the assets of a page, cancelling the prefetch of any other page
+     * @param pageUrl Absolute page URL
+     */
+    public synchronized void prefetch(String pageUrl) {
+        String manifestUrl;
+        try {
+            manifestUrl = AssetCache.manifestUrlFor(pageUrl);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Cannot prefetch " + pageUrl + ": " + e.getMessage());
+            return;
+        }
+        if (current != null) {
+            if (current.manifestUrl.equals(manifestUrl) && !current.cancelled && !current.finished) {
+                return;
+            }
+            current.cancelled = true;
+        }
+        Job job = new Job(manifestUrl);
+        current = job;
+        cache.addPrefix(AssetCache.originPrefixOf(pageUrl));
+        executor.execute(job);
+    }
+
+    /**
+     * Cancel the running prefetch, the download in progress is aborted
+     */
+    public synchronized void cancel() {
+        if (current != null) {
+            current.cancelled = true;
+            current = null;
+        }
+    }
+
+    /**
+     * One prefetch run: manifest, then critical assets in order
+     */
+    private final class Job implements Runnable, AssetCache.ReadThrottle {
+        final String manifestUrl;
+        volatile boolean cancelled;
+        volatile boolean finished;
+        private long nextFreeNanos;
+
+        Job(String manifestUrl) {
+            this.manifestUrl = manifestUrl;
+        }
+
+        @Override
+        public void run() {
+            try {
+                prefetchAll();
+            } finally {
+                finished = true;
+            }
+        }
+
+        private void prefetchAll() {
+            long start = System.nanoTime();
+            ArrayList<String> urls;
+            try {
+                urls = criticalUrls(cache.updateManifest(manifestUrl));
+            } catch (IOException | JSONException | RuntimeException e) {
+                Log.w(TAG, "Cannot prefetch manifest " + manifestUrl + ": " + e.getMessage());
+                return;
+            }
+            int ready = 0;
+            HashMap<String, String> headers = new HashMap<>();
+            for (String url : urls) {
+                if (cancelled) {
+                    Log.d(TAG, "Prefetch of " + manifestUrl + " cancelled after " + ready + " assets");
+                    return;
+                }
+                // Cached assets return immediately, the others are downloaded at the paced rate
+                if (cache.load(url, headers, this) != null) {
+                    ready++;
+                }
+            }
+            Log.d(TAG, ready + " of " + urls.size() + " assets ready for " + manifestUrl + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+
+        @Override
+        public void onRead(int bytes) throws IOException {
+            if (cancelled) {
+                throw new InterruptedIOException("Prefetch cancelled");
+            }
+            long rate = bytesPerSecond;
+            if (rate <= 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            nextFreeNanos = Math.max(nextFreeNanos, now - BURST_NANOS) + bytes * 1_000_000_000L / rate;
+            long wait = nextFreeNanos - now;
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Prefetch interrupted");
+                }
+            }
+        }
+
+        private ArrayList<String> criticalUrls(JSONObject manifest) {
+            URI base = URI.create(manifestUrl);
+            ArrayList<String> urls = new ArrayList<>();
+            JSONArray critical = manifest.optJSONArray("critical");
+            if (critical != null) {
+                for (int i = 0; i < critical.length(); i++) {
+                    String path = critical.optString(i);
+                    if (!path.isEmpty()) {
+                        urls.add(base.resolve(path).toString());
+                    }
+                }
+                return urls;
+            }
+            JSONObject assets = manifest.optJSONObject("assets");
+            if (assets != null) {
+                Iterator<String> paths = assets.keys();
+                while (paths.hasNext()) {
+                    urls.add(base.resolve(paths.next()).toString());
+                }
+            }
+            return urls;
+        }
+    }
+}
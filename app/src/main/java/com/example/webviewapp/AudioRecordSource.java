@@ -0,0 +1,106 @@
+package com.example.webviewapp;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Microphone PCM from AudioRecord, 16-bit mono
+ * Records with the voice recognition source, which skips the platform's gain control so the voice
+ * activity detector sees real levels. The recorder is created and released on the capture thread
+ */
+final class AudioRecordSource implements AudioSource {
+    private static final String TAG = "AudioRecordSource";
+
+    // Recorder buffer, enough to ride out a capture thread stall without losing samples
+    private static final int BUFFER_MS = 200;
+
+    private final int sampleRate;
+    private AudioRecord record;
+    private Thread captureThread;
+    private volatile boolean stopped;
+
+    AudioRecordSource(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() throws IOException {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        int minBuffer = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        if (minBuffer <= 0) {
+            throw new IOException("Unsupported sample rate " + sampleRate);
+        }
+        int bufferBytes = Math.max(minBuffer, sampleRate * 2 * BUFFER_MS / 1000);
+        synchronized (this) {
+            if (stopped) {
+                throw new IOException("Stopped before recording started");
+            }
+            captureThread = Thread.currentThread();
+            try {
+                record = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate,
+                        AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferBytes);
+            } catch (IllegalArgumentException | SecurityException e) {
+                throw new IOException("Cannot create AudioRecord", e);
+            }
+            if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                releaseRecord();
+                throw new IOException("AudioRecord not initialized");
+            }
+            record.startRecording();
+            if (record.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+                releaseRecord();
+                throw new IOException("Microphone is in use");
+            }
+        }
+        Log.d(TAG, "Recording at " + sampleRate + " Hz, buffer " + bufferBytes + " bytes");
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        if (stopped) {
+            return -1;
+        }
+        int read = record.read(buffer, offset, length);
+        if (read < 0) {
+            if (stopped) {
+                return -1;
+            }
+            throw new IOException("AudioRecord read failed: " + read);
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (record == null) {
+            return;
+        }
+        if (Thread.currentThread() == captureThread) {
+            releaseRecord();
+        } else {
+            try {
+                // Unblocks the capture thread, which releases the recorder
+                record.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Cannot stop recording", e);
+            }
+        }
+    }
+
+    private void releaseRecord() {
+        record.release();
+        record = null;
+    }
+}
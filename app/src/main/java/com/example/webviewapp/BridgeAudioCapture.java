@@ -0,0 +1,374 @@
+package com.example.webviewapp;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Native microphone capture streamed to H5 as encoded frames
+ * H5 starts and stops a session over the bridge. Native records PCM on a capture thread, gates it with voice
+ * activity detection, encodes it as 8-bit mu-law and sends fixed-size frames from a sender thread. Frames
+ * travel through the preallocated ring of {@link AudioCapturePipeline}, so recording allocates nothing
+ * per frame; a sender that falls behind loses frames instead of delaying capture.
+ *
+ * Protocol:
+ * audio.start  request {sampleRate, frameMs, vad}  result {sessionId, sampleRate, frameSamples, encoding, gated}
+ * audio.stop   request {sessionId}                 result {sessionId, frames, sent, dropped}
+ * audio.frame  {sessionId, seq, timestamp, speech, data}  base64 mu-law frame, seq counts captured frames
+ * audio.speech {sessionId, speech}                 voice activity started or ended
+ * audio.end    {sessionId, reason, frames, sent, dropped}  session ended: stopped, end_of_input or error
+ */
+public class BridgeAudioCapture {
+    private static final String TAG = "BridgeAudioCapture";
+
+    public static final String EVENT_AUDIO_START = "audio.start";
+    public static final String EVENT_AUDIO_STOP = "audio.stop";
+    public static final String EVENT_AUDIO_FRAME = "audio.frame";
+    public static final String EVENT_AUDIO_SPEECH = "audio.speech";
+    public static final String EVENT_AUDIO_END = "audio.end";
+
+    public static final String ERROR_PERMISSION_DENIED = "permission_denied";
+    public static final String ERROR_BUSY = "audio_busy";
+    public static final String ERROR_UNAVAILABLE = "audio_unavailable";
+    public static final String ERROR_INVALID_REQUEST = "invalid_request";
+
+    public static final int DEFAULT_SAMPLE_RATE = 16000;
+    public static final int DEFAULT_FRAME_MS = 20;
+    // Frames the sender may fall behind, 1.28 s at the default frame length
+    public static final int DEFAULT_RING_FRAMES = 64;
+
+    private static final String AUDIO_LANE = "audio";
+    private static final String ENCODING = "mulaw";
+
+    /**
+     * Creates the PCM source of a session, replaceable to feed synthetic audio
+     */
+    public interface SourceFactory {
+        AudioSource create(int sampleRate) throws IOException;
+    }
+
+    /**
+     * Asks the user for the microphone permission, answered through {@link #onPermissionResult(boolean)}
+     */
+    public interface PermissionRequester {
+        void requestRecordAudio();
+    }
+
+    private final Context context;
+    private final WebViewBridge bridge;
+    private final AtomicLong nextSessionId = new AtomicLong();
+
+    private volatile SourceFactory sourceFactory = AudioRecordSource::new;
+    private volatile PermissionRequester permissionRequester;
+    private volatile int ringFrames = DEFAULT_RING_FRAMES;
+
+    // Only touched on the audio lane
+    private Session current;
+    private StartRequest pendingStart;
+    private BridgeResponder pendingResponder;
+    private boolean released;
+
+    // Sends frames and session events in capture order, created with the first session
+    private HandlerThread senderThread;
+    private Handler sender;
+
+    public BridgeAudioCapture(Context context, WebViewBridge bridge) {
+        this.context = context.getApplicationContext();
+        this.bridge = bridge;
+    }
+
+    /**
+     * Register the audio.* handlers on the bridge
+     * Start and stop share one serial lane, so sessions are started and stopped in request order
+     */
+    public void install() {
+        BridgeDispatcher dispatcher = bridge.getDispatcher();
+        dispatcher.setSharedLane(EVENT_AUDIO_START, AUDIO_LANE);
+        dispatcher.setSharedLane(EVENT_AUDIO_STOP, AUDIO_LANE);
+        BridgeAudioCapture_BridgeHandlers.register(bridge, this);
+        // A full outbound buffer discards frames rather than audio.speech and audio.end
+        bridge.setOutboundPolicy(EVENT_AUDIO_FRAME, WebViewBridge.Priority.NORMAL, false, true);
+        // Frames are worthless once late, they are not held for a page in the background
+        bridge.setBackgroundPolicy(EVENT_AUDIO_FRAME, WebViewBridge.BackgroundPolicy.DROP);
+        // 50 frames per second are too chatty to log one by one
+        bridge.getLogger().setSampleRate(EVENT_AUDIO_FRAME, 1.0 / 50);
+    }
+
+    public void setSourceFactory(SourceFactory factory) {
+        sourceFactory = factory;
+    }
+
+    public void setPermissionRequester(PermissionRequester requester) {
+        permissionRequester = requester;
+    }
+
+    /**
+     * @param frames Frames the sender may fall behind before frames are dropped
+     */
+    public void setRingFrames(int frames) {
+        ringFrames = frames;
+    }
+
+    /**
+     * Result of a {@link PermissionRequester} request, resumes the start request waiting for it
+     * @param granted true if the microphone permission was granted
+     */
+    public void onPermissionResult(boolean granted) {
+        bridge.getDispatcher().dispatch(EVENT_AUDIO_START, () -> {
+            StartRequest request = pendingStart;
+            BridgeResponder responder = pendingResponder;
+            pendingStart = null;
+            pendingResponder = null;
+            if (request == null) {
+                return;
+            }
+            if (granted) {
+                start(request, responder);
+            } else {
+                responder.reject(ERROR_PERMISSION_DENIED, "Microphone permission denied");
+            }
+        });
+    }
+
+    /**
+     * Stop the running session, e.g. when the page goes away
+     */
+    public void stop() {
+        bridge.getDispatcher().dispatch(EVENT_AUDIO_STOP, () -> {
+            if (current != null) {
+                current.pipeline.stop();
+            }
+        });
+    }
+
+    /**
+     * Stop the running session, and the sender thread once it has delivered the end of the session
+     */
+    public void release() {
+        bridge.getDispatcher().dispatch(EVENT_AUDIO_STOP, () -> {
+            released = true;
+            pendingStart = null;
+            pendingResponder = null;
+            if (current != null) {
+                current.pipeline.stop();
+            } else {
+                quitSender();
+            }
+        });
+    }
+
+    @BridgeHandler(EVENT_AUDIO_START)
+    void onStart(StartRequest request, BridgeResponder responder) {
+        if (request.sampleRate < 8000 || request.sampleRate > 48000 || request.frameMs < 10 || request.frameMs > 100) {
+            responder.reject(ERROR_INVALID_REQUEST, "Unsupported sampleRate or frameMs");
+            return;
+        }
+        if (released) {
+            responder.reject(ERROR_UNAVAILABLE, "Audio capture released");
+            return;
+        }
+        if (current != null || pendingStart != null) {
+            responder.reject(ERROR_BUSY, "A capture session is already running");
+            return;
+        }
+        if (context.checkSelfPermission(Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+            PermissionRequester requester = permissionRequester;
+            if (requester == null) {
+                responder.reject(ERROR_PERMISSION_DENIED, "Microphone permission not granted");
+                return;
+            }
+            pendingStart = request;
+            pendingResponder = responder;
+            requester.requestRecordAudio();
+            return;
+        }
+        start(request, responder);
+    }
+
+    @BridgeHandler(EVENT_AUDIO_STOP)
+    void onStop(StopRequest request, BridgeResponder responder) {
+        Session session = current;
+        if (session == null || (request.sessionId != null && !request.sessionId.equals(session.id))) {
+            responder.reject(ERROR_INVALID_REQUEST, "No capture session " + request.sessionId);
+            return;
+        }
+        session.pipeline.stop();
+        responder.resolve(session.stats(), BridgeAudioCapture_StopResult_BridgeCodec.INSTANCE);
+    }
+
+    private void start(StartRequest request, BridgeResponder responder) {
+        AudioSource source;
+        try {
+            source = sourceFactory.create(request.sampleRate);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Cannot create audio source", e);
+            responder.reject(ERROR_UNAVAILABLE, e.getMessage());
+            return;
+        }
+        if (senderThread == null) {
+            senderThread = new HandlerThread("bridge-audio-sender");
+            senderThread.start();
+            sender = new Handler(senderThread.getLooper());
+        }
+        Session session = new Session("as" + nextSessionId.incrementAndGet(), source, request, sender);
+        current = session;
+        session.pipeline.start("bridge-audio-capture");
+        Log.d(TAG, "Capture session " + session.id + " started at " + request.sampleRate + " Hz");
+
+        StartResult result = new StartResult();
+        result.sessionId = session.id;
+        result.sampleRate = request.sampleRate;
+        result.frameSamples = session.pipeline.getFrameSamples();
+        result.encoding = ENCODING;
+        result.gated = request.vad;
+        responder.resolve(result, BridgeAudioCapture_StartResult_BridgeCodec.INSTANCE);
+    }
+
+    private void onSessionEnded(Session session) {
+        bridge.getDispatcher().dispatch(EVENT_AUDIO_STOP, () -> {
+            if (current == session) {
+                current = null;
+            }
+            if (released && current == null) {
+                quitSender();
+            }
+        });
+    }
+
+    private void quitSender() {
+        if (senderThread != null) {
+            // Messages already posted, such as the end of the last session, are still delivered
+            senderThread.quitSafely();
+            senderThread = null;
+            sender = null;
+        }
+    }
+
+    /**
+     * One capture session; pipeline callbacks arrive on the capture thread, frames are sent on the sender thread
+     */
+    private final class Session implements AudioCapturePipeline.Listener, AudioCapturePipeline.FrameConsumer {
+        final String id;
+        final AudioCapturePipeline pipeline;
+        final Handler sender;
+        // Sender thread only, reused for every frame
+        private final StringBuilder payload;
+        private final Runnable drainTask = this::drain;
+
+        Session(String id, AudioSource source, StartRequest request, Handler sender) {
+            this.id = id;
+            this.sender = sender;
+            int frameSamples = request.sampleRate * request.frameMs / 1000;
+            this.pipeline = new AudioCapturePipeline(source, frameSamples, ringFrames,
+                    new VoiceActivityDetector(), request.vad, this);
+            this.payload = new StringBuilder(frameSamples * 4 / 3 + 128);
+        }
+
+        @Override
+        public void onFramesAvailable() {
+            sender.post(drainTask);
+        }
+
+        @Override
+        public void onSpeechChanged(boolean speech) {
+            // Through the sender, so the event is ordered with the frames around it
+            sender.post(() -> {
+                drain();
+                StringBuilder sb = new StringBuilder(64);
+                sb.append("{\"sessionId\":");
+                JsLiteralEncoder.appendString(sb, id);
+                sb.append(",\"speech\":").append(speech).append('}');
+                bridge.callH5Raw(EVENT_AUDIO_SPEECH, sb.toString());
+            });
+        }
+
+        @Override
+        public void onStopped(String reason, Exception error) {
+            if (error != null) {
+                Log.e(TAG, "Capture session " + id + " failed", error);
+            }
+            sender.post(() -> {
+                drain();
+                StopResult stats = stats();
+                StringBuilder sb = new StringBuilder(128);
+                sb.append("{\"sessionId\":");
+                JsLiteralEncoder.appendString(sb, id);
+                sb.append(",\"reason\":");
+                JsLiteralEncoder.appendString(sb, reason);
+                sb.append(",\"frames\":").append(stats.frames)
+                        .append(",\"sent\":").append(stats.sent)
+                        .append(",\"dropped\":").append(stats.dropped).append('}');
+                bridge.callH5Raw(EVENT_AUDIO_END, sb.toString());
+                Log.d(TAG, "Capture session " + id + " ended: " + reason + ", " + stats.sent + " of "
+                        + stats.frames + " frames sent, " + stats.dropped + " dropped");
+            });
+            onSessionEnded(this);
+        }
+
+        @Override
+        public void accept(AudioFrameRing.Frame frame) {
+            payload.setLength(0);
+            payload.append("{\"sessionId\":");
+            JsLiteralEncoder.appendString(payload, id);
+            payload.append(",\"seq\":").append(frame.getSeq())
+                    .append(",\"timestamp\":").append(frame.getTimestampMs())
+                    .append(",\"speech\":").append(frame.isSpeech())
+                    .append(",\"data\":");
+            BridgeJsonWriter.appendBase64(payload, frame.getData(), 0, frame.getLength());
+            payload.append('}');
+            bridge.callH5Raw(EVENT_AUDIO_FRAME, payload.toString());
+        }
+
+        private void drain() {
+            pipeline.drain(this, Integer.MAX_VALUE);
+        }
+
+        StopResult stats() {
+            StopResult result = new StopResult();
+            result.sessionId = id;
+            result.frames = pipeline.getCapturedFrames();
+            result.sent = pipeline.getPublishedFrames();
+            result.dropped = pipeline.getDroppedFrames();
+            return result;
+        }
+    }
+
+    /**
+     * audio.start request, absent members keep their defaults
+     */
+    @BridgeMessage
+    static final class StartRequest {
+        int sampleRate = DEFAULT_SAMPLE_RATE;
+        int frameMs = DEFAULT_FRAME_MS;
+        // Send speech frames only
+        boolean vad = true;
+    }
+
+    @BridgeMessage
+    static final class StartResult {
+        String sessionId;
+        int sampleRate;
+        int frameSamples;
+        String encoding;
+        boolean gated;
+    }
+
+    @BridgeMessage
+    static final class StopRequest {
+        String sessionId;
+    }
+
+    @BridgeMessage
+    static final class StopResult {
+        String sessionId;
+        long frames;
+        long sent;
+        long dropped;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.webviewapp;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pending native-to-H5 request
+ * Completes exactly once: with the H5 response, with a timeout error, or by cancellation
+ */
+public final class BridgeCall {
+
+    private final WebViewBridge bridge;
+    private final String callId;
+    private final String eventType;
+    final WebViewBridge.ResultCallback callback;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    volatile HashedTimerWheel.Timeout timeout;
+
+    BridgeCall(WebViewBridge bridge, String callId, String eventType, WebViewBridge.ResultCallback callback) {
+        this.bridge = bridge;
+        this.callId = callId;
+        this.eventType = eventType;
+        this.callback = callback;
+    }
+
+    public String getCallId() {
+        return callId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return true once the call has a result, failed or was cancelled
+     */
+    public boolean isDone() {
+        return done.get();
+    }
+
+    /**
+     * Stop waiting for the response, the callback receives a cancelled error
+     * @return false if the call had already completed
+     */
+    public boolean cancel() {
+        return bridge.failCall(this, WebViewBridge.ERROR_CANCELLED, "Call cancelled");
+    }
+
+    /**
+     * Claim completion of the call
+     * @return true for the single caller that completes it
+     */
+    boolean markDone() {
+        if (!done.compareAndSet(false, true)) {
+            return false;
+        }
+        HashedTimerWheel.Timeout pendingTimeout = timeout;
+        if (pendingTimeout != null) {
+            pendingTimeout.cancel();
+        }
+        return true;
+    }
+}
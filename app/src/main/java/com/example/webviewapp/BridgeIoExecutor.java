@@ -0,0 +1,70 @@
+package com.example.webviewapp;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for blocking disk and network I/O, kept apart from the dispatch pool of bridge handlers
+ * Asset downloads, index writes and stream chunks would otherwise occupy the few threads that run
+ * BACKGROUND handlers and SERIAL lanes, delaying every handler behind them. Threads time out when idle
+ */
+final class BridgeIoExecutor {
+
+    private static final int SHARED_THREADS = 4;
+
+    private static volatile Executor sharedExecutor;
+
+    private BridgeIoExecutor() {
+    }
+
+    /**
+     * @return Shared bounded pool for short blocking I/O, such as cache reads and writes or stream chunks
+     */
+    static Executor shared() {
+        Executor executor = sharedExecutor;
+        if (executor == null) {
+            synchronized (BridgeIoExecutor.class) {
+                executor = sharedExecutor;
+                if (executor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(SHARED_THREADS, SHARED_THREADS, 30,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new IoThreadFactory("bridge-io-"));
+                    pool.allowCoreThreadTimeOut(true);
+                    sharedExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Executor of its own for work that blocks for long on purpose, such as a paced download,
+     * so it never holds a thread of the shared pool
+     * @param name Thread name
+     */
+    static Executor newSingleThread(String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new IoThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class IoThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        IoThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name.endsWith("-") ? name + count.incrementAndGet() : name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
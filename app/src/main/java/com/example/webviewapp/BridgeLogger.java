@@ -0,0 +1,257 @@
+package com.example.webviewapp;
+
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logging layer for the bridge hot path
+ * The level and the per-event sample rate are checked before any string is built, payloads are truncated,
+ * and recent messages are kept in a fixed-size ring buffer that can be dumped on request or on a crash.
+ * Ring entries keep a reference to the payload when it is short and a truncated copy otherwise,
+ * so recording a message costs no formatting
+ */
+public final class BridgeLogger {
+
+    private static final int DEFAULT_RING_SIZE = 128;
+    private static final int DEFAULT_MAX_PAYLOAD_CHARS = 512;
+
+    // Every logger of the process, dumped on a crash; weakly held so discarded bridges can be collected
+    private static final Set<BridgeLogger> loggers = Collections.newSetFromMap(new WeakHashMap<>());
+    private static final AtomicBoolean crashDumpInstalled = new AtomicBoolean();
+
+    private final String tag;
+    private final Entry[] ring;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+    private final ConcurrentHashMap<String, Sampler> samplers = new ConcurrentHashMap<>();
+
+    private volatile int level;
+    private volatile int maxPayloadChars = DEFAULT_MAX_PAYLOAD_CHARS;
+    private volatile boolean ringEnabled = true;
+
+    /**
+     * @param tag Logcat tag
+     * @param level Lowest level written to logcat, e.g. {@link Log#DEBUG}
+     */
+    public BridgeLogger(String tag, int level) {
+        this(tag, level, DEFAULT_RING_SIZE);
+    }
+
+    /**
+     * @param ringSize Number of recent messages kept, rounded up to a power of two
+     */
+    public BridgeLogger(String tag, int level, int ringSize) {
+        int size = Integer.highestOneBit(Math.max(1, ringSize - 1)) << 1;
+        this.tag = tag;
+        this.level = level;
+        this.ring = new Entry[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Entry();
+        }
+        synchronized (loggers) {
+            loggers.add(this);
+        }
+    }
+
+    /**
+     * @param level Lowest level written to logcat, {@link Log#ASSERT} to silence it
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public boolean isLoggable(int level) {
+        return level >= this.level;
+    }
+
+    /**
+     * @param chars Longest payload prefix written to logcat and kept in the ring buffer
+     */
+    public void setMaxPayloadChars(int chars) {
+        maxPayloadChars = chars;
+    }
+
+    /**
+     * @param enabled Whether recent messages are kept for {@link #dump()}
+     */
+    public void setRingEnabled(boolean enabled) {
+        ringEnabled = enabled;
+    }
+
+    /**
+     * Log only a fraction of the messages of an event type, for chatty events such as progress updates
+     * @param eventType Event type
+     * @param rate Fraction between 0 and 1; 1 logs every message, 0 none
+     */
+    public void setSampleRate(String eventType, double rate) {
+        if (rate >= 1) {
+            samplers.remove(eventType);
+        } else {
+            samplers.put(eventType, new Sampler(rate <= 0 ? 0 : (int) Math.round(1 / rate)));
+        }
+    }
+
+    /**
+     * Record a bridge message
+     * Sampled-out messages cost one map lookup; others are stored in the ring buffer and written
+     * to logcat only when the debug level is enabled
+     * @param direction Direction of the message
+     * @param eventType Event type
+     * @param payload Message or data payload, may be null
+     */
+    public void message(BridgeMetrics.Direction direction, String eventType, String payload) {
+        Sampler sampler = samplers.get(eventType);
+        if (sampler != null && !sampler.sample()) {
+            return;
+        }
+        int limit = maxPayloadChars;
+        if (ringEnabled) {
+            Entry entry = ring[(int) (cursor.getAndIncrement() & mask)];
+            entry.set(System.currentTimeMillis(), direction, eventType, payload, limit);
+        }
+        if (level <= Log.DEBUG) {
+            Log.d(tag, (direction == BridgeMetrics.Direction.INBOUND ? "H5 -> native " : "native -> H5 ")
+                    + eventType + ": " + truncate(payload, limit));
+        }
+    }
+
+    public void d(String message) {
+        if (level <= Log.DEBUG) {
+            Log.d(tag, message);
+        }
+    }
+
+    public void w(String message) {
+        if (level <= Log.WARN) {
+            Log.w(tag, message);
+        }
+    }
+
+    public void e(String message, Throwable error) {
+        if (level <= Log.ERROR) {
+            Log.e(tag, message, error);
+        }
+    }
+
+    /**
+     * Format the ring buffer, oldest message first
+     * @return Recent messages, one per line
+     */
+    public String dump() {
+        long end = cursor.get();
+        long start = Math.max(0, end - ring.length);
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        StringBuilder sb = new StringBuilder((int) (end - start) * 96 + 64);
+        sb.append("Recent bridge messages (").append(end - start).append(" of ").append(end).append(")\n");
+        for (long i = start; i < end; i++) {
+            ring[(int) (i & mask)].appendTo(sb, format);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the ring buffer to logcat at error level, regardless of the configured level
+     */
+    public void dumpToLog() {
+        for (String line : dump().split("\n")) {
+            Log.e(tag, line);
+        }
+    }
+
+    /**
+     * Dump the ring buffer of every logger that recorded messages to logcat when the app crashes,
+     * then let the previous handler run
+     * Installs one handler per process, later calls do nothing
+     */
+    public static void installCrashDump() {
+        if (!crashDumpInstalled.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, error) -> {
+            try {
+                BridgeLogger[] live;
+                synchronized (loggers) {
+                    live = loggers.toArray(new BridgeLogger[0]);
+                }
+                for (BridgeLogger logger : live) {
+                    if (logger.cursor.get() > 0) {
+                        logger.dumpToLog();
+                    }
+                }
+            } catch (RuntimeException ignored) {
+                // Never mask the original crash
+            }
+            if (previous != null) {
+                previous.uncaughtException(thread, error);
+            }
+        });
+    }
+
+    private static String truncate(String payload, int limit) {
+        if (payload == null || payload.length() <= limit) {
+            return payload;
+        }
+        return payload.substring(0, limit) + "...(" + payload.length() + " chars)";
+    }
+
+    /**
+     * Deterministic 1-in-N sampler
+     */
+    private static final class Sampler {
+        private final int every;
+        private final AtomicLong counter = new AtomicLong();
+
+        Sampler(int every) {
+            this.every = every;
+        }
+
+        boolean sample() {
+            return every > 0 && counter.getAndIncrement() % every == 0;
+        }
+    }
+
+    /**
+     * Reusable ring buffer slot
+     */
+    private static final class Entry {
+        private long timeMillis;
+        private BridgeMetrics.Direction direction;
+        private String eventType;
+        private String payload;
+        private int length;
+
+        synchronized void set(long timeMillis, BridgeMetrics.Direction direction, String eventType,
+                              String payload, int limit) {
+            this.timeMillis = timeMillis;
+            this.direction = direction;
+            this.eventType = eventType;
+            this.length = payload != null ? payload.length() : 0;
+            // Short payloads are kept by reference, long ones as a bounded prefix
+            this.payload = payload == null || payload.length() <= limit ? payload : payload.substring(0, limit);
+        }
+
+        synchronized void appendTo(StringBuilder sb, SimpleDateFormat format) {
+            if (direction == null) {
+                return;
+            }
+            sb.append(format.format(new Date(timeMillis)))
+                    .append(direction == BridgeMetrics.Direction.INBOUND ? " H5 -> native " : " native -> H5 ")
+                    .append(eventType).append(": ").append(payload);
+            if (payload != null && payload.length() < length) {
+                sb.append("...(").append(length).append(" chars)");
+            }
+            sb.append('\n');
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.webviewapp;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reply channel of a single H5 request
+ * A request is answered at most once, either with a result or an error; replies to fire-and-forget
+ * messages (no call ID) are ignored, so handlers can answer unconditionally
+ */
+public final class BridgeResponder {
+
+    private final WebViewBridge bridge;
+    private final String callId;
+    private final AtomicBoolean replied = new AtomicBoolean(false);
+
+    BridgeResponder(WebViewBridge bridge, String callId) {
+        this.bridge = bridge;
+        this.callId = callId;
+    }
+
+    /**
+     * @return true if H5 is awaiting a reply for this message
+     */
+    public boolean isExpected() {
+        return callId != null;
+    }
+
+    /**
+     * @return true if a result or an error has already been sent
+     */
+    public boolean isReplied() {
+        return replied.get();
+    }
+
+    /**
+     * Answer the request with a result
+     * @param result Result object, null for an empty object
+     */
+    public void resolve(JSONObject result) {
+        resolveRaw(result != null ? result.toString() : null);
+    }
+
+    /**
+     * Answer the request with a typed result
+     * @param result Result message, null for an empty object
+     * @param codec Codec of the result type
+     */
+    public <T> void resolve(T result, BridgeCodec<T> codec) {
+        resolveRaw(WebViewBridge.toJson(result, codec));
+    }
+
+    /**
+     * Answer the request with an already serialized result
+     * @param resultJson Serialized JSON object, null for an empty object
+     * @throws IllegalArgumentException if resultJson is not a serialized JSON object
+     */
+    public void resolveRaw(String resultJson) {
+        if (callId != null && replied.compareAndSet(false, true)) {
+            bridge.sendResponse(callId, resultJson, null);
+        }
+    }
+
+    /**
+     * Answer the request with an error
+     * @param code Error code
+     * @param message Error description, may be null
+     */
+    public void reject(String code, String message) {
+        if (callId != null && replied.compareAndSet(false, true)) {
+            bridge.sendResponse(callId, null, JsLiteralEncoder.errorJson(code, message));
+        }
+    }
+}
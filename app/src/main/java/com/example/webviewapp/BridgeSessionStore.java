@@ -0,0 +1,464 @@
+package com.example.webviewapp;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.webkit.WebViewCompat;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists a page session so it survives process death and renderer crashes
+ * A snapshot holds the WebView back/forward state and a journal of the bridge: fire-and-forget messages
+ * H5 has not received yet and the latest value of every synced state key. It is captured on the main
+ * thread, which only copies references, then serialized and written on a single background thread.
+ * Restoring queues a session.restored notice ahead of the journal, so once the reloaded page reports
+ * ready it receives the notice first, then its synced state in full and the undelivered messages,
+ * and can skip the bootstrap it would run on a fresh start.
+ *
+ * Protocol:
+ * session.restored {reason, url, savedAt}   native to H5, first message after a restore
+ */
+public final class BridgeSessionStore {
+    private static final String TAG = "BridgeSessionStore";
+
+    public static final String EVENT_SESSION_RESTORED = "session.restored";
+
+    // Restore reasons reported in session.restored: the activity was recreated from its saved state, usually
+    // after process death, or the WebView was rebuilt after its renderer process was lost
+    public static final String REASON_RECREATED = "recreated";
+    public static final String REASON_RENDERER_GONE = "renderer_gone";
+
+    public static final long DEFAULT_MAX_AGE_MS = 12 * 60 * 60 * 1000L;
+
+    private static final String DIR = "webview_sessions";
+    private static final String SUFFIX = ".session";
+    private static final int MAGIC = 0x57565353; // WVSS
+    private static final int FORMAT_VERSION = 2;
+    // Journal messages past this many payload characters are left out, lowest priority first
+    private static final int MAX_JOURNAL_CHARS = 256 * 1024;
+
+    private static volatile BridgeSessionStore defaultStore;
+
+    /**
+     * Receives a loaded snapshot on the main thread
+     */
+    public interface LoadCallback {
+        /**
+         * @param snapshot Saved session, null if there is none, it is too old or unreadable
+         */
+        void onLoaded(Snapshot snapshot);
+    }
+
+    /**
+     * Session state captured from a WebView and its bridge
+     */
+    public static final class Snapshot {
+        final String url;
+        final long savedAt;
+        // Filled by WebView.saveState, null if the WebView had no history
+        final Bundle webViewState;
+        final ArrayList<OutboundMessageQueue.Message> messages;
+        final Map<String, JSONObject> states;
+
+        Snapshot(String url, long savedAt, Bundle webViewState, ArrayList<OutboundMessageQueue.Message> messages,
+                 Map<String, JSONObject> states) {
+            this.url = url;
+            this.savedAt = savedAt;
+            this.webViewState = webViewState;
+            this.messages = messages;
+            this.states = states;
+        }
+
+        /**
+         * @return Page URL when the snapshot was taken, null if unknown
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return WebView back/forward state for {@link android.webkit.WebView#restoreState}, null if none
+         */
+        public Bundle getWebViewState() {
+            return webViewState;
+        }
+    }
+
+    private final Context appContext;
+    private final File dir;
+    private final long buildTime;
+    // Device build and WebView version, resolved on the executor; WebView state of another one may not unmarshall
+    private String environment;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Single thread, so a save is never overtaken by the delete that follows it
+    private final ThreadPoolExecutor executor;
+    private final Set<String> excludedRoutes = new CopyOnWriteArraySet<>();
+    private volatile long maxAgeMs = DEFAULT_MAX_AGE_MS;
+
+    /**
+     * @return Process-wide store
+     */
+    public static BridgeSessionStore getDefault(Context context) {
+        BridgeSessionStore store = defaultStore;
+        if (store == null) {
+            synchronized (BridgeSessionStore.class) {
+                store = defaultStore;
+                if (store == null) {
+                    defaultStore = store = new BridgeSessionStore(context);
+                }
+            }
+        }
+        return store;
+    }
+
+    public BridgeSessionStore(Context context) {
+        appContext = context.getApplicationContext();
+        // Sessions belong to this device and this install, they are never backed up
+        this.dir = new File(appContext.getNoBackupFilesDir(), DIR);
+        long installed;
+        try {
+            installed = appContext.getPackageManager().getPackageInfo(appContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            installed = 0;
+        }
+        this.buildTime = installed;
+        executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "session-store"));
+        executor.allowCoreThreadTimeOut(true);
+        // Sessions of tasks the user closed are never restored
+        executor.execute(this::prune);
+    }
+
+    /**
+     * @param maxAgeMs Age past which a snapshot is discarded and the page loads fresh
+     */
+    public void setMaxAge(long maxAgeMs) {
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Leave the messages of an event type out of the journal, such as live media frames that mean nothing later
+     * @param route Event type, or a namespace wildcard such as "audio.*"
+     */
+    public void excludeFromJournal(String route) {
+        excludedRoutes.add(route);
+    }
+
+    /**
+     * @return Id for a new session, kept in the activity's saved instance state
+     */
+    public static String newSessionId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Capture the session of a page, on the main thread
+     * @param webViewState Bundle filled by {@link android.webkit.WebView#saveState}, null if none
+     * @param url Current page URL
+     * @param bridge Bridge of the page
+     */
+    public Snapshot capture(Bundle webViewState, String url, WebViewBridge bridge) {
+        ArrayList<OutboundMessageQueue.Message> queued = new ArrayList<>();
+        bridge.snapshotOutbound(queued);
+        ArrayList<OutboundMessageQueue.Message> messages = new ArrayList<>(queued.size());
+        int chars = 0;
+        int skipped = 0;
+        for (OutboundMessageQueue.Message message : queued) {
+            if (isExcluded(message.eventType)) {
+                continue;
+            }
+            int length = message.dataJson != null ? message.dataJson.length() : 0;
+            if (chars + length > MAX_JOURNAL_CHARS) {
+                skipped++;
+                continue;
+            }
+            chars += length;
+            messages.add(message);
+        }
+        if (skipped > 0) {
+            Log.w(TAG, "Journal full, left out " + skipped + " messages");
+        }
+        Map<String, JSONObject> states = new LinkedHashMap<>();
+        bridge.getStateSync().snapshot(states);
+        return new Snapshot(url, System.currentTimeMillis(), webViewState, messages, states);
+    }
+
+    /**
+     * Write a snapshot in the background, replacing the previous one of the session
+     */
+    public void save(String sessionId, Snapshot snapshot) {
+        executor.execute(() -> write(sessionId, snapshot));
+    }
+
+    /**
+     * Read a snapshot in the background
+     * @param callback Receives the snapshot on the main thread
+     */
+    public void load(String sessionId, LoadCallback callback) {
+        executor.execute(() -> {
+            Snapshot snapshot = read(sessionId);
+            mainHandler.post(() -> callback.onLoaded(snapshot));
+        });
+    }
+
+    /**
+     * Forget a session, once its page is closed for good
+     */
+    public void delete(String sessionId) {
+        executor.execute(() -> {
+            File file = fileOf(sessionId);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Cannot delete " + file);
+            }
+        });
+    }
+
+    /**
+     * Queue the journal of a snapshot on the bridge of the rebuilt page, before it loads
+     * The session.restored notice goes first, then synced state and undelivered messages
+     * @param reason {@link #REASON_RECREATED} or {@link #REASON_RENDERER_GONE}
+     */
+    public void restore(Snapshot snapshot, WebViewBridge bridge, String reason) {
+        Restored notice = new Restored();
+        notice.reason = reason;
+        notice.url = snapshot.url;
+        notice.savedAt = snapshot.savedAt;
+        bridge.setOutboundPolicy(EVENT_SESSION_RESTORED, WebViewBridge.Priority.HIGH, false);
+        bridge.callH5(EVENT_SESSION_RESTORED, notice, BridgeSessionStore_Restored_BridgeCodec.INSTANCE);
+        for (Map.Entry<String, JSONObject> state : snapshot.states.entrySet()) {
+            bridge.getStateSync().update(state.getKey(), state.getValue());
+        }
+        for (OutboundMessageQueue.Message message : snapshot.messages) {
+            bridge.restoreOutbound(message.eventType, message.dataJson, message.priority, message.mergeKey);
+        }
+        Log.d(TAG, "Restored session (" + reason + "): " + snapshot.states.size() + " states, "
+                + snapshot.messages.size() + " messages");
+    }
+
+    private boolean isExcluded(String eventType) {
+        for (String route : excludedRoutes) {
+            if (route.equals(eventType) || (route.endsWith(".*")
+                    && eventType.startsWith(route.substring(0, route.length() - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private File fileOf(String sessionId) {
+        return new File(dir, sessionId + SUFFIX);
+    }
+
+    private void write(String sessionId, Snapshot snapshot) {
+        File file = fileOf(sessionId);
+        File temp = new File(dir, sessionId + SUFFIX + ".tmp");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(buildTime);
+                writeString(out, environment());
+                out.writeLong(snapshot.savedAt);
+                writeString(out, snapshot.url);
+                out.writeInt(snapshot.messages.size());
+                for (OutboundMessageQueue.Message message : snapshot.messages) {
+                    writeString(out, message.eventType);
+                    writeString(out, message.dataJson);
+                    out.writeByte(message.priority);
+                    writeString(out, message.mergeKey);
+                }
+                out.writeInt(snapshot.states.size());
+                for (Map.Entry<String, JSONObject> state : snapshot.states.entrySet()) {
+                    writeString(out, state.getKey());
+                    writeString(out, state.getValue().toString());
+                }
+                byte[] webViewState = marshall(snapshot.webViewState);
+                out.writeInt(webViewState.length);
+                out.write(webViewState);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save session", e);
+            temp.delete();
+        }
+    }
+
+    private Snapshot read(String sessionId) {
+        File file = fileOf(sessionId);
+        if (!file.isFile()) {
+            return null;
+        }
+        // Every length read is checked against the file size, so a corrupt file cannot trigger a huge allocation
+        long limit = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != buildTime
+                    || !environment().equals(readString(in, limit))) {
+                // WebView state written by another app build, system build or WebView version may not unmarshall
+                Log.w(TAG, "Discarding session of another build");
+                return null;
+            }
+            long savedAt = in.readLong();
+            if (System.currentTimeMillis() - savedAt > maxAgeMs) {
+                Log.d(TAG, "Discarding session saved at " + savedAt);
+                return null;
+            }
+            String url = readString(in, limit);
+            int messageCount = readLength(in, limit);
+            ArrayList<OutboundMessageQueue.Message> messages = new ArrayList<>();
+            for (int i = 0; i < messageCount; i++) {
+                String eventType = readString(in, limit);
+                String dataJson = readString(in, limit);
+                int priority = in.readByte();
+                if (priority < OutboundMessageQueue.PRIORITY_HIGH || priority > OutboundMessageQueue.PRIORITY_LOW) {
+                    throw new IOException("Invalid priority " + priority);
+                }
+                messages.add(new OutboundMessageQueue.Message(eventType, dataJson, priority, readString(in, limit)));
+            }
+            int stateCount = readLength(in, limit);
+            Map<String, JSONObject> states = new LinkedHashMap<>();
+            for (int i = 0; i < stateCount; i++) {
+                String key = readString(in, limit);
+                states.put(key, new JSONObject(readString(in, limit)));
+            }
+            byte[] webViewState = new byte[readLength(in, limit)];
+            in.readFully(webViewState);
+            return new Snapshot(url, savedAt, unmarshall(webViewState), messages, states);
+        } catch (IOException | JSONException | RuntimeException e) {
+            Log.w(TAG, "Cannot read session, starting fresh", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return Identity of the device build and the WebView implementation, on the executor thread
+     */
+    private String environment() {
+        if (environment == null) {
+            PackageInfo webView = WebViewCompat.getCurrentWebViewPackage(appContext);
+            environment = Build.FINGERPRINT + ' '
+                    + (webView != null ? webView.packageName + '/' + webView.versionName : "unknown");
+        }
+        return environment;
+    }
+
+    private void prune() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - maxAgeMs;
+        for (File file : files) {
+            if (file.lastModified() < oldest && !file.delete()) {
+                Log.w(TAG, "Cannot delete " + file);
+            }
+        }
+    }
+
+    private static byte[] marshall(Bundle bundle) {
+        if (bundle == null) {
+            return new byte[0];
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(bundle);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static Bundle unmarshall(byte[] bytes) {
+        if (bytes.length == 0) {
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(BridgeSessionStore.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param limit Largest valid length, the file size
+     */
+    private static String readString(DataInputStream in, long limit) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > limit) {
+            throw new IOException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a count or byte length
+     * @param limit Largest valid value, the file size
+     */
+    private static int readLength(DataInputStream in, long limit) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > limit) {
+            throw new IOException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Notice sent to H5 ahead of the restored journal
+     */
+    @BridgeMessage
+    static final class Restored {
+        String reason;
+        String url;
+        long savedAt;
+    }
+}
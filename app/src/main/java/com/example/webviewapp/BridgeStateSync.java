@@ -0,0 +1,345 @@
+package com.example.webviewapp;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delta-encoded sync of native state objects to H5
+ * Each state key keeps the snapshot H5 last acknowledged. A change is sent as a list of JSON Patch
+ * operations (RFC 6902 add, replace and remove; arrays are replaced whole) against that snapshot, so
+ * neither side re-serializes or re-parses the unchanged parts of a large object. Only one update per key
+ * is in flight: changes made meanwhile are folded into the next patch once H5 acknowledges.
+ * The full object is sent after a page load, or when H5 reports that its version does not match.
+ *
+ * Protocol:
+ * state.sync   {key, version, state}                 request, full snapshot
+ * state.sync   {key, version, baseVersion, ops}      request, patch against baseVersion
+ *              H5 answers with an rpcResponse, or with error code version_mismatch if it does not hold baseVersion
+ * state.resync {key}                                 H5 asks for the full snapshot of a key, of every key without one
+ */
+public final class BridgeStateSync {
+
+    public static final String EVENT_STATE_SYNC = "state.sync";
+    public static final String EVENT_STATE_RESYNC = "state.resync";
+
+    public static final String ERROR_VERSION_MISMATCH = "version_mismatch";
+
+    private final WebViewBridge bridge;
+    private final ConcurrentHashMap<String, State> states = new ConcurrentHashMap<>();
+    // Incremented on every page load, acknowledgements sent by a previous page are ignored
+    private volatile int pageGeneration;
+
+    BridgeStateSync(WebViewBridge bridge) {
+        this.bridge = bridge;
+    }
+
+    /**
+     * Publish the new value of a state object, from any thread
+     * Nothing is sent if the value equals what H5 already holds. While the page is loading or delivery is
+     * throttled only the latest value is kept, it is sent once the page is ready and visible
+     * @param key State key, such as "session"
+     * @param state New value; kept as the snapshot, so it must not be modified afterwards
+     */
+    public void update(String key, JSONObject state) {
+        State entry = states.get(key);
+        if (entry == null) {
+            entry = states.computeIfAbsent(key, State::new);
+        }
+        synchronized (entry) {
+            entry.latest = state;
+            entry.dirty = true;
+            sendIfNeeded(entry);
+        }
+    }
+
+    /**
+     * @return Latest value published for a key, null if none
+     */
+    public JSONObject get(String key) {
+        State entry = states.get(key);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.latest;
+        }
+    }
+
+    /**
+     * Copy the latest value of every key
+     * @param out Map to fill, keyed by state key
+     */
+    void snapshot(Map<String, JSONObject> out) {
+        for (State entry : states.values()) {
+            synchronized (entry) {
+                if (entry.latest != null) {
+                    out.put(entry.key, entry.latest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop syncing a key, H5 keeps its last value
+     */
+    public void remove(String key) {
+        states.remove(key);
+    }
+
+    /**
+     * Send the full snapshot of a key on its next sync, or of every key when the key is null
+     */
+    public void resync(String key) {
+        if (key == null) {
+            for (State entry : states.values()) {
+                resync(entry);
+            }
+            return;
+        }
+        State entry = states.get(key);
+        if (entry != null) {
+            resync(entry);
+        }
+    }
+
+    private void resync(State entry) {
+        synchronized (entry) {
+            entry.acked = null;
+            // An acknowledgement already on its way must not restore the snapshot H5 asked to replace
+            entry.resyncRequested = entry.inFlight;
+            sendIfNeeded(entry);
+        }
+    }
+
+    /**
+     * A new page started loading: it holds no state, every key is sent in full once it is ready
+     */
+    void onPageStarted() {
+        pageGeneration++;
+        for (State entry : states.values()) {
+            synchronized (entry) {
+                entry.acked = null;
+                entry.inFlight = false;
+                entry.resyncRequested = false;
+            }
+        }
+    }
+
+    /**
+     * The page can receive messages again, after loading or throttling: send every key it does not hold yet
+     */
+    void onPageReady() {
+        for (State entry : states.values()) {
+            synchronized (entry) {
+                sendIfNeeded(entry);
+            }
+        }
+    }
+
+    /**
+     * Forget every key, the bridge is being reused for another page
+     */
+    void clear() {
+        pageGeneration++;
+        states.clear();
+    }
+
+    /**
+     * Send the latest value as a full snapshot or a patch, must hold the entry lock
+     */
+    private void sendIfNeeded(State entry) {
+        if (entry.inFlight || entry.latest == null || !bridge.isPageReady() || bridge.isThrottled()
+                || (entry.acked != null && !entry.dirty)) {
+            return;
+        }
+        long sentVersion = entry.version + 1;
+        StringBuilder data = new StringBuilder(128);
+        data.append("{\"key\":");
+        JsLiteralEncoder.appendString(data, entry.key);
+        data.append(",\"version\":").append(sentVersion);
+        if (entry.acked == null) {
+            data.append(",\"state\":").append(entry.latest.toString());
+        } else {
+            data.append(",\"baseVersion\":").append(entry.ackedVersion).append(",\"ops\":[");
+            int mark = data.length();
+            appendDiff(data, new StringBuilder(), entry.acked, entry.latest);
+            if (data.length() == mark) {
+                // Changed back to what H5 already holds
+                entry.acked = entry.latest;
+                entry.dirty = false;
+                return;
+            }
+            data.append(']');
+        }
+        data.append('}');
+
+        JSONObject sent = entry.latest;
+        int generation = pageGeneration;
+        entry.version = sentVersion;
+        entry.dirty = false;
+        entry.inFlight = true;
+        bridge.callH5RawForResult(EVENT_STATE_SYNC, data.toString(), 0, new WebViewBridge.ResultCallback() {
+            @Override
+            public void onResult(BridgeEnvelope response) {
+                synchronized (entry) {
+                    if (generation != pageGeneration || !entry.inFlight) {
+                        return;
+                    }
+                    entry.inFlight = false;
+                    if (entry.resyncRequested) {
+                        entry.resyncRequested = false;
+                    } else {
+                        entry.acked = sent;
+                        entry.ackedVersion = sentVersion;
+                    }
+                    sendIfNeeded(entry);
+                }
+            }
+
+            @Override
+            public void onError(String code, String message) {
+                synchronized (entry) {
+                    if (generation != pageGeneration || !entry.inFlight) {
+                        return;
+                    }
+                    entry.inFlight = false;
+                    entry.resyncRequested = false;
+                    // H5 state is unknown, the next sync is a full snapshot
+                    entry.acked = null;
+                    if (ERROR_VERSION_MISMATCH.equals(code)) {
+                        sendIfNeeded(entry);
+                    }
+                    // Other failures wait for the next update or resync, so a page without a handler is not flooded
+                }
+            }
+        });
+    }
+
+    /**
+     * Append the patch operations turning one object into another, comma-separated
+     * @param out Operations buffer
+     * @param path JSON Pointer of the objects, restored before returning
+     */
+    private static void appendDiff(StringBuilder out, StringBuilder path, JSONObject from, JSONObject to) {
+        int pathLength = path.length();
+        Iterator<String> keys = from.keys();
+        while (keys.hasNext()) {
+            String name = keys.next();
+            if (!to.has(name)) {
+                appendPointer(path, name);
+                appendOp(out, "remove", path, null);
+                path.setLength(pathLength);
+            }
+        }
+        keys = to.keys();
+        while (keys.hasNext()) {
+            String name = keys.next();
+            Object value = to.opt(name);
+            Object previous = from.opt(name);
+            appendPointer(path, name);
+            if (previous == null) {
+                appendOp(out, "add", path, value);
+            } else if (previous instanceof JSONObject && value instanceof JSONObject) {
+                appendDiff(out, path, (JSONObject) previous, (JSONObject) value);
+            } else if (!jsonEquals(previous, value)) {
+                appendOp(out, "replace", path, value);
+            }
+            path.setLength(pathLength);
+        }
+    }
+
+    private static void appendPointer(StringBuilder path, String name) {
+        path.append('/');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '~') {
+                path.append("~0");
+            } else if (c == '/') {
+                path.append("~1");
+            } else {
+                path.append(c);
+            }
+        }
+    }
+
+    private static void appendOp(StringBuilder out, String op, StringBuilder path, Object value) {
+        if (out.charAt(out.length() - 1) != '[') {
+            out.append(',');
+        }
+        out.append("{\"op\":\"").append(op).append("\",\"path\":");
+        JsLiteralEncoder.appendString(out, path.toString());
+        if (value != null) {
+            out.append(",\"value\":");
+            if (value instanceof String) {
+                JsLiteralEncoder.appendString(out, (String) value);
+            } else {
+                out.append(value);
+            }
+        }
+        out.append('}');
+    }
+
+    private static boolean jsonEquals(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            if ((a instanceof Double || a instanceof Float) || (b instanceof Double || b instanceof Float)) {
+                return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+            }
+            return ((Number) a).longValue() == ((Number) b).longValue();
+        }
+        if (a instanceof JSONObject && b instanceof JSONObject) {
+            JSONObject objectA = (JSONObject) a;
+            JSONObject objectB = (JSONObject) b;
+            if (objectA.length() != objectB.length()) {
+                return false;
+            }
+            Iterator<String> keys = objectA.keys();
+            while (keys.hasNext()) {
+                String name = keys.next();
+                Object valueB = objectB.opt(name);
+                if (valueB == null || !jsonEquals(objectA.opt(name), valueB)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof JSONArray && b instanceof JSONArray) {
+            JSONArray arrayA = (JSONArray) a;
+            JSONArray arrayB = (JSONArray) b;
+            if (arrayA.length() != arrayB.length()) {
+                return false;
+            }
+            for (int i = 0; i < arrayA.length(); i++) {
+                if (!jsonEquals(arrayA.opt(i), arrayB.opt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+
+    /**
+     * Sync state of one key, guarded by its own lock
+     */
+    private static final class State {
+        final String key;
+        JSONObject latest;
+        // latest changed since it was last sent
+        boolean dirty;
+        // Last version sent, versions keep increasing across page loads
+        long version;
+        // Snapshot H5 acknowledged, null when H5 holds no known version and needs the full object
+        JSONObject acked;
+        long ackedVersion;
+        boolean inFlight;
+        boolean resyncRequested;
+
+        State(String key) {
+            this.key = key;
+        }
+    }
+}
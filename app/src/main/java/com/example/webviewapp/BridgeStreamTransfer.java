@@ -0,0 +1,609 @@
+package com.example.webviewapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chunked, back-pressured transfer of large payloads between native and H5
+ * A payload is split into base64 chunks tagged with a stream ID and a sequence number. The receiver
+ * acknowledges every chunk it has consumed and each acknowledgement grants the sender one more chunk,
+ * so at most a window of chunks is in flight and neither heap ever holds the whole payload.
+ *
+ * Protocol, identical in both directions:
+ * stream.open   {streamId, name, mimeType, size, window}   sender announces a stream
+ * stream.chunk  {streamId, seq, last, data}                 base64 chunk, seq starts at 0
+ * stream.ack    {streamId, seq, credit}                     receiver consumed seq and grants credit chunks (default 1)
+ *                                                         the initial window is granted once, by stream.open or its result
+ * stream.cancel {streamId, reason}                          either side aborts the stream
+ */
+public class BridgeStreamTransfer {
+    private static final String TAG = "BridgeStreamTransfer";
+
+    public static final String EVENT_STREAM_OPEN = "stream.open";
+    public static final String EVENT_STREAM_CHUNK = "stream.chunk";
+    public static final String EVENT_STREAM_ACK = "stream.ack";
+    public static final String EVENT_STREAM_CANCEL = "stream.cancel";
+
+    private static final String STREAM_ROUTE = "stream.*";
+    private static final String STREAM_LANE = "stream";
+
+    // 48 KB raw is 64 KB of base64 per chunk
+    public static final int DEFAULT_CHUNK_SIZE = 48 * 1024;
+    public static final int DEFAULT_WINDOW = 4;
+    public static final long DEFAULT_MAX_INCOMING_BYTES = 64L * 1024 * 1024;
+    // Received files left behind longer than this, by a crash or a listener that kept them, are deleted
+    private static final long STALE_FILE_AGE_MS = 24L * 60 * 60 * 1000;
+
+    /**
+     * Progress of a native-to-H5 stream
+     */
+    public interface SendListener {
+        void onProgress(String streamId, long bytesSent, long totalBytes);
+
+        void onComplete(String streamId);
+
+        void onError(String streamId, String reason);
+    }
+
+    /**
+     * Receives H5-to-native streams, called on the stream lane
+     */
+    public interface ReceiveListener {
+        /**
+         * @param file File holding the received payload, owned by the listener from now on; delete it once
+         *             consumed, or move it out of the cache directory to keep it for more than a day
+         */
+        void onStreamReceived(String streamId, File file, String name, String mimeType);
+
+        void onStreamFailed(String streamId, String reason);
+    }
+
+    private final WebViewBridge bridge;
+    private final ContentResolver contentResolver;
+    private final File receiveDir;
+    private final Executor ioExecutor;
+    private final AtomicLong nextStreamId = new AtomicLong();
+    private final ConcurrentHashMap<String, OutgoingStream> outgoing = new ConcurrentHashMap<>();
+    // Only touched on the stream lane
+    private final HashMap<String, IncomingStream> incoming = new HashMap<>();
+
+    private volatile ReceiveListener receiveListener;
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+    private volatile int window = DEFAULT_WINDOW;
+    private volatile long maxIncomingBytes = DEFAULT_MAX_INCOMING_BYTES;
+
+    public BridgeStreamTransfer(Context context, WebViewBridge bridge) {
+        this.bridge = bridge;
+        this.contentResolver = context.getContentResolver();
+        this.receiveDir = new File(context.getCacheDir(), "bridge-streams");
+        this.ioExecutor = BridgeIoExecutor.shared();
+    }
+
+    /**
+     * Register the stream.* handlers on the bridge
+     * All stream events share one serial lane so opens, chunks and cancels are processed in order.
+     * Received files older than a day are deleted in the background
+     */
+    public void install() {
+        ioExecutor.execute(this::pruneReceiveDir);
+        BridgeDispatcher dispatcher = bridge.getDispatcher();
+        dispatcher.setSharedLane(EVENT_STREAM_OPEN, STREAM_LANE);
+        dispatcher.setSharedLane(EVENT_STREAM_CHUNK, STREAM_LANE);
+        dispatcher.setSharedLane(EVENT_STREAM_ACK, STREAM_LANE);
+        dispatcher.setSharedLane(EVENT_STREAM_CANCEL, STREAM_LANE);
+        bridge.registerHandler(STREAM_ROUTE, this::onStreamEvent);
+        // Chunks and acks are too chatty to log one by one
+        bridge.getLogger().setSampleRate(EVENT_STREAM_CHUNK, 1.0 / 16);
+        bridge.getLogger().setSampleRate(EVENT_STREAM_ACK, 1.0 / 16);
+    }
+
+    public void setReceiveListener(ReceiveListener listener) {
+        receiveListener = listener;
+    }
+
+    /**
+     * @param bytes Raw bytes per chunk for native-to-H5 streams
+     */
+    public void setChunkSize(int bytes) {
+        chunkSize = bytes;
+    }
+
+    /**
+     * @param chunks Chunks a sender may have in flight before the first acknowledgement
+     */
+    public void setWindow(int chunks) {
+        window = chunks;
+    }
+
+    /**
+     * @param bytes Largest H5-to-native stream accepted
+     */
+    public void setMaxIncomingBytes(long bytes) {
+        maxIncomingBytes = bytes;
+    }
+
+    /**
+     * Stream content to H5, read incrementally from the ContentResolver
+     * @param uri Content to send
+     * @param mimeType MIME type announced to H5, null to ask the ContentResolver
+     * @param listener Progress listener, may be null
+     * @return Stream ID
+     */
+    public String send(Uri uri, String mimeType, SendListener listener) {
+        String streamId = "ns" + nextStreamId.incrementAndGet();
+        ioExecutor.execute(() -> {
+            String name = uri.getLastPathSegment();
+            long size = -1;
+            try (Cursor cursor = contentResolver.query(uri,
+                    new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE}, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    if (!cursor.isNull(0)) {
+                        name = cursor.getString(0);
+                    }
+                    if (!cursor.isNull(1)) {
+                        size = cursor.getLong(1);
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Cannot query metadata of " + uri, e);
+            }
+            String type = mimeType != null ? mimeType : contentResolver.getType(uri);
+            InputStream in;
+            try {
+                in = contentResolver.openInputStream(uri);
+                if (in == null) {
+                    throw new IOException("No content for " + uri);
+                }
+            } catch (IOException | SecurityException e) {
+                Log.e(TAG, "Cannot open " + uri, e);
+                if (listener != null) {
+                    listener.onError(streamId, e.getMessage());
+                }
+                return;
+            }
+            start(new OutgoingStream(streamId, in, size, listener), name, type);
+        });
+        return streamId;
+    }
+
+    /**
+     * Stream an input stream to H5, read incrementally on a background thread
+     * @param in Content to send, closed when the stream ends
+     * @param size Size in bytes, -1 if unknown
+     * @param name Name announced to H5, may be null
+     * @param mimeType MIME type announced to H5, may be null
+     * @param listener Progress listener, may be null
+     * @return Stream ID
+     */
+    public String send(InputStream in, long size, String name, String mimeType, SendListener listener) {
+        String streamId = "ns" + nextStreamId.incrementAndGet();
+        ioExecutor.execute(() -> start(new OutgoingStream(streamId, in, size, listener), name, mimeType));
+        return streamId;
+    }
+
+    /**
+     * Abort a native-to-H5 stream
+     * @param streamId Stream ID returned by send
+     */
+    public void cancel(String streamId) {
+        OutgoingStream stream = outgoing.get(streamId);
+        if (stream != null) {
+            stream.fail("cancelled", true);
+        }
+    }
+
+    /**
+     * Abort every stream in both directions, e.g. when the page goes away
+     */
+    public void cancelAll() {
+        for (OutgoingStream stream : outgoing.values()) {
+            stream.fail("cancelled", true);
+        }
+        bridge.getDispatcher().dispatch(EVENT_STREAM_CANCEL, () -> {
+            for (IncomingStream stream : incoming.values()) {
+                stream.discard();
+                notifyFailed(stream.id, "cancelled");
+            }
+            incoming.clear();
+        });
+    }
+
+    private void start(OutgoingStream stream, String name, String mimeType) {
+        int initialWindow = window;
+        outgoing.put(stream.id, stream);
+        try {
+            JSONObject open = new JSONObject();
+            open.put("streamId", stream.id);
+            open.put("name", name);
+            open.put("mimeType", mimeType);
+            open.put("size", stream.size);
+            open.put("window", initialWindow);
+            bridge.callH5(EVENT_STREAM_OPEN, open);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to construct stream open message", e);
+        }
+        stream.grant(initialWindow);
+    }
+
+    private void onStreamEvent(BridgeEnvelope event, BridgeResponder responder) throws JSONException {
+        JSONObject data = event.getData();
+        String streamId = data.optString("streamId", null);
+        if (streamId == null) {
+            responder.reject("invalid_stream", "streamId is required");
+            return;
+        }
+        switch (event.getEventType()) {
+            case EVENT_STREAM_OPEN:
+                onOpen(streamId, data, responder);
+                break;
+            case EVENT_STREAM_CHUNK:
+                onChunk(streamId, data);
+                responder.resolve(null);
+                break;
+            case EVENT_STREAM_ACK:
+                OutgoingStream stream = outgoing.get(streamId);
+                int seq = data.optInt("seq", -1);
+                // The initial window was granted at open, an ack before the first chunk adds nothing
+                if (stream != null && seq >= 0) {
+                    stream.onAck(seq, data.optInt("credit", 1));
+                }
+                responder.resolve(null);
+                break;
+            case EVENT_STREAM_CANCEL:
+                onCancel(streamId, data.optString("reason", "cancelled"));
+                responder.resolve(null);
+                break;
+            default:
+                responder.reject(WebViewBridge.ERROR_UNHANDLED, "Unknown stream event " + event.getEventType());
+                break;
+        }
+    }
+
+    private void onOpen(String streamId, JSONObject data, BridgeResponder responder) {
+        long size = data.optLong("size", -1);
+        if (incoming.containsKey(streamId)) {
+            responder.reject("invalid_stream", "Stream already open: " + streamId);
+            return;
+        }
+        if (size > maxIncomingBytes) {
+            sendCancel(streamId, "too_large");
+            responder.reject("too_large", "Stream exceeds " + maxIncomingBytes + " bytes");
+            return;
+        }
+        IncomingStream stream;
+        try {
+            if (!receiveDir.isDirectory() && !receiveDir.mkdirs()) {
+                throw new IOException("Cannot create " + receiveDir);
+            }
+            File file = File.createTempFile("in-", ".part", receiveDir);
+            stream = new IncomingStream(streamId, data.optString("name", null),
+                    data.optString("mimeType", null), file);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot create file for stream " + streamId, e);
+            sendCancel(streamId, "io_error");
+            responder.reject("io_error", e.getMessage());
+            return;
+        }
+        incoming.put(streamId, stream);
+        // The result is the only grant of the initial window, H5 must not count an ack on top of it
+        int initialWindow = window;
+        JSONObject result = new JSONObject();
+        try {
+            result.put("window", initialWindow);
+        } catch (JSONException ignored) {
+            // Cannot happen for a finite int
+        }
+        responder.resolve(result);
+    }
+
+    private void onChunk(String streamId, JSONObject data) {
+        IncomingStream stream = incoming.get(streamId);
+        if (stream == null) {
+            Log.w(TAG, "Chunk for unknown stream: " + streamId);
+            return;
+        }
+        int seq = data.optInt("seq", -1);
+        String failure = null;
+        if (seq != stream.nextSeq) {
+            failure = "out_of_order";
+        } else {
+            try {
+                byte[] bytes = Base64.decode(data.optString("data", ""), Base64.DEFAULT);
+                stream.received += bytes.length;
+                if (stream.received > maxIncomingBytes) {
+                    failure = "too_large";
+                } else {
+                    stream.out.write(bytes);
+                    stream.nextSeq++;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, "Failed to write chunk " + seq + " of stream " + streamId, e);
+                failure = "io_error";
+            }
+        }
+        if (failure != null) {
+            incoming.remove(streamId);
+            stream.discard();
+            sendCancel(streamId, failure);
+            notifyFailed(streamId, failure);
+            return;
+        }
+
+        boolean last = data.optBoolean("last", false);
+        // Acknowledge only after the chunk is on disk, which is what paces the sender
+        sendAck(streamId, seq, last ? 0 : 1);
+        if (last) {
+            incoming.remove(streamId);
+            try {
+                stream.out.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close stream " + streamId, e);
+            }
+            ReceiveListener listener = receiveListener;
+            if (listener != null) {
+                listener.onStreamReceived(streamId, stream.file, stream.name, stream.mimeType);
+            } else if (!stream.file.delete()) {
+                Log.w(TAG, "Failed to delete unclaimed stream file " + stream.file);
+            }
+        }
+    }
+
+    private void onCancel(String streamId, String reason) {
+        OutgoingStream out = outgoing.get(streamId);
+        if (out != null) {
+            out.fail(reason, false);
+        }
+        IncomingStream in = incoming.remove(streamId);
+        if (in != null) {
+            in.discard();
+            notifyFailed(streamId, reason);
+        }
+    }
+
+    /**
+     * Delete received files nobody cleaned up, such as partial files of a process that died mid-stream
+     * Recent files are kept, they may belong to a stream still in progress on another page
+     */
+    private void pruneReceiveDir() {
+        File[] files = receiveDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - STALE_FILE_AGE_MS;
+        int deleted = 0;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && file.delete()) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            Log.d(TAG, "Deleted " + deleted + " stale stream files");
+        }
+    }
+
+    private void notifyFailed(String streamId, String reason) {
+        ReceiveListener listener = receiveListener;
+        if (listener != null) {
+            listener.onStreamFailed(streamId, reason);
+        }
+    }
+
+    private void sendAck(String streamId, int seq, int credit) {
+        StringBuilder sb = new StringBuilder(48);
+        sb.append("{\"streamId\":");
+        JsLiteralEncoder.appendString(sb, streamId);
+        sb.append(",\"seq\":").append(seq).append(",\"credit\":").append(credit).append('}');
+        bridge.callH5Raw(EVENT_STREAM_ACK, sb.toString());
+    }
+
+    private void sendCancel(String streamId, String reason) {
+        StringBuilder sb = new StringBuilder(48);
+        sb.append("{\"streamId\":");
+        JsLiteralEncoder.appendString(sb, streamId);
+        sb.append(",\"reason\":");
+        JsLiteralEncoder.appendString(sb, reason);
+        bridge.callH5Raw(EVENT_STREAM_CANCEL, sb.append('}').toString());
+    }
+
+    /**
+     * Native-to-H5 stream
+     * Chunks are read and sent on the IO executor only while the receiver has granted credit
+     */
+    private final class OutgoingStream implements Runnable {
+        final String id;
+        final long size;
+        private final InputStream in;
+        private final SendListener listener;
+        private final byte[] buffer;
+        private int credit;
+        private boolean pumping;
+        private boolean done;
+        private int nextSeq;
+        private int lastSeq = -1;
+        private long sent;
+
+        OutgoingStream(String id, InputStream in, long size, SendListener listener) {
+            this.id = id;
+            this.in = in;
+            this.size = size;
+            this.listener = listener;
+            this.buffer = new byte[chunkSize];
+        }
+
+        void grant(int chunks) {
+            synchronized (this) {
+                credit += chunks;
+                if (pumping || done || credit <= 0 || lastSeq >= 0) {
+                    return;
+                }
+                pumping = true;
+            }
+            ioExecutor.execute(this);
+        }
+
+        void onAck(int seq, int chunks) {
+            boolean complete;
+            synchronized (this) {
+                complete = !done && lastSeq >= 0 && seq == lastSeq;
+                if (complete) {
+                    done = true;
+                }
+            }
+            if (complete) {
+                outgoing.remove(id, this);
+                closeQuietly();
+                if (listener != null) {
+                    listener.onComplete(id);
+                }
+                return;
+            }
+            grant(chunks);
+        }
+
+        void fail(String reason, boolean notifyPeer) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            outgoing.remove(id, this);
+            if (notifyPeer) {
+                sendCancel(id, reason);
+            }
+            // A running pump closes the input itself once it sees the stream is done
+            synchronized (this) {
+                if (!pumping) {
+                    closeQuietly();
+                }
+            }
+            if (listener != null) {
+                listener.onError(id, reason);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (this) {
+                    if (done) {
+                        pumping = false;
+                        closeQuietly();
+                        return;
+                    }
+                    if (credit <= 0 || lastSeq >= 0) {
+                        pumping = false;
+                        return;
+                    }
+                    credit--;
+                }
+                int length;
+                boolean last;
+                try {
+                    length = fill();
+                    last = length < buffer.length || (size >= 0 && sent + length >= size);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to read stream " + id, e);
+                    synchronized (this) {
+                        pumping = false;
+                    }
+                    fail("io_error", true);
+                    return;
+                }
+                sendChunk(length, last);
+            }
+        }
+
+        private int fill() throws IOException {
+            int total = 0;
+            while (total < buffer.length) {
+                int read = in.read(buffer, total, buffer.length - total);
+                if (read < 0) {
+                    break;
+                }
+                total += read;
+            }
+            return total;
+        }
+
+        private void sendChunk(int length, boolean last) {
+            int seq;
+            synchronized (this) {
+                seq = nextSeq++;
+                if (last) {
+                    lastSeq = seq;
+                }
+            }
+            String encoded = Base64.encodeToString(buffer, 0, length, Base64.NO_WRAP);
+            StringBuilder sb = new StringBuilder(encoded.length() + id.length() + 64);
+            sb.append("{\"streamId\":");
+            JsLiteralEncoder.appendString(sb, id);
+            sb.append(",\"seq\":").append(seq)
+                    .append(",\"last\":").append(last)
+                    .append(",\"data\":\"").append(encoded).append("\"}");
+            bridge.callH5Raw(EVENT_STREAM_CHUNK, sb.toString());
+            sent += length;
+            if (listener != null) {
+                listener.onProgress(id, sent, size);
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * H5-to-native stream being written to disk, only touched on the stream lane
+     */
+    private static final class IncomingStream {
+        final String id;
+        final String name;
+        final String mimeType;
+        final File file;
+        final OutputStream out;
+        int nextSeq;
+        long received;
+
+        IncomingStream(String id, String name, String mimeType, File file) throws IOException {
+            this.id = id;
+            this.name = name;
+            this.mimeType = mimeType;
+            this.file = file;
+            this.out = new FileOutputStream(file);
+        }
+
+        void discard() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // Deleted below anyway
+            }
+            if (!file.delete()) {
+                Log.w(TAG, "Failed to delete partial stream file " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.webviewapp;
+
+import android.util.Log;
+import android.webkit.WebView;
+
+/**
+ * Transport delivering batches with evaluateJavascript
+ * Always available; the batch is a script calling window.onCallH5Batch, or window.onCallH5Message per message
+ */
+class JavascriptTransport implements BridgeTransport {
+    // Batch delivery script, falls back to per-message onCallH5Message for pages without onCallH5Batch
+    private static final String BATCH_PREFIX = "(function(m){var b=window.onCallH5Batch;"
+            + "if(typeof b==='function'){b(m);return;}"
+            + "var f=window.onCallH5Message;if(typeof f==='function'){for(var i=0;i<m.length;i++){f(m[i]);}}})([";
+    private static final String BATCH_SUFFIX = "])";
+
+    // Batches whose result callback has not arrived yet before the transport reports itself busy
+    private static final int MAX_IN_FLIGHT = 2;
+
+    private final WebView webView;
+    private final BridgeMetrics metrics;
+    private final BridgeLogger logger;
+    // Main thread only: send and the result callbacks both run on it
+    private int inFlight;
+    // Callbacks of scripts sent to a previous page may never arrive, they are ignored once a new page starts
+    private int generation;
+    private Runnable idleListener;
+
+    JavascriptTransport(WebView webView, BridgeMetrics metrics, BridgeLogger logger) {
+        this.webView = webView;
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    /**
+     * @param listener Runs on the main thread whenever a result callback ends a busy period
+     */
+    void setIdleListener(Runnable listener) {
+        idleListener = listener;
+    }
+
+    /**
+     * Forget the batches sent to the previous page, called when a new page starts loading
+     */
+    void resetInFlight() {
+        inFlight = 0;
+        generation++;
+    }
+
+    @Override
+    public String getName() {
+        return "evaluateJavascript";
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public boolean isBusy() {
+        return inFlight >= MAX_IN_FLIGHT;
+    }
+
+    @Override
+    public void beginBatch(StringBuilder out) {
+        out.append(BATCH_PREFIX);
+    }
+
+    @Override
+    public void endBatch(StringBuilder out) {
+        out.append(BATCH_SUFFIX);
+    }
+
+    @Override
+    public void send(String batch, int count) {
+        long sentAt = System.nanoTime();
+        inFlight++;
+        int sentGeneration = generation;
+        webView.evaluateJavascript(batch, result -> {
+            metrics.recordEvaluateRoundTrip(System.nanoTime() - sentAt);
+            if (logger.isLoggable(Log.DEBUG)) {
+                logger.d("H5 return result for batch of " + count + ": " + result);
+            }
+            if (sentGeneration != generation) {
+                return;
+            }
+            if (inFlight-- == MAX_IN_FLIGHT && idleListener != null) {
+                idleListener.run();
+            }
+        });
+    }
+}
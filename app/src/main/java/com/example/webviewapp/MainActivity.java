@@ -10,6 +10,10 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
@@ -29,6 +33,14 @@ public class MainActivity extends AppCompatActivity {
     
     // Default AiToken value
     private static final String DEFAULT_AI_TOKEN = "YOUR_AI_TOKEN";
+    
+    // Quiet period after the last keystroke before the typed URL is prefetched
+    private static final long PREFETCH_DEBOUNCE_MS = 800;
+    
+    // Downloads the page's assets into the WebView asset cache ahead of the click
+    private AssetPrefetcher assetPrefetcher;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable prefetchTypedUrl = this::prefetchCurrentUrl;
 
     // Permissions for Android 13 (API 33) and above
     private final String[] permissionsForAndroid13 = {
@@ -71,6 +83,24 @@ public class MainActivity extends AppCompatActivity {
         editTextAiToken = findViewById(R.id.editTextUrl);
         buttonGo = findViewById(R.id.buttonGo);
 
+        assetPrefetcher = new AssetPrefetcher(AssetCache.getDefault(this));
+        editTextBaseUrl.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                handler.removeCallbacks(prefetchTypedUrl);
+                handler.postDelayed(prefetchTypedUrl, PREFETCH_DEBOUNCE_MS);
+            }
+        });
+        prefetchCurrentUrl();
+
         buttonGo.setOnClickListener(v -> {
             String baseUrl = editTextBaseUrl.getText().toString().trim();
             String aiToken = editTextAiToken.getText().toString().trim();
@@ -86,16 +116,51 @@ public class MainActivity extends AppCompatActivity {
             // Build the complete URL
             String fullUrl = validBaseUrl + "?AiToken=" + aiToken;
             
+            // The page is opening, finish its prefetch at full speed
+            handler.removeCallbacks(prefetchTypedUrl);
+            assetPrefetcher.prefetch(validBaseUrl);
+            assetPrefetcher.setBandwidthLimit(0);
+            
             // Launch WebView activity and pass the URL
             Intent intent = new Intent(MainActivity.this, WebViewActivity.class);
             intent.putExtra("url", fullUrl);
             startActivity(intent);
         });
 
+        // Create a WebView while the user is on this screen so the page opens without Chromium start-up cost
+        WebViewPool.get(this).prewarm(1);
+
         // Request necessary permissions
         checkAndRequestPermissions();
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        assetPrefetcher.setBandwidthLimit(AssetPrefetcher.DEFAULT_BYTES_PER_SECOND);
+    }
+
+    @Override
+    protected void onDestroy() {
+        handler.removeCallbacks(prefetchTypedUrl);
+        assetPrefetcher.cancel();
+        super.onDestroy();
+    }
+
+    /**
+     * Prefetch the assets of the base URL in the input, or of the default one while the input is empty
+     * Invalid URLs are skipped silently, the toast is left to the click
+     */
+    private void prefetchCurrentUrl() {
+        String baseUrl = editTextBaseUrl.getText().toString().trim();
+        if (baseUrl.isEmpty()) {
+            baseUrl = DEFAULT_BASE_URL;
+        } else if (!isValidUrl(baseUrl)) {
+            return;
+        }
+        assetPrefetcher.prefetch(baseUrl);
+    }
+
     private void checkAndRequestPermissions() {
         // Choose different permission sets based on Android version
         String[] permissions;
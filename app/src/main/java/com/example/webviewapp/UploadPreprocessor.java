@@ -0,0 +1,538 @@
+package com.example.webviewapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+import android.webkit.ValueCallback;
+import android.webkit.WebChromeClient;
+
+import androidx.core.content.FileProvider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shrinks files picked for a WebView file input before the page sees them
+ * Images larger than the limit of their MIME type are decoded with subsampling, rotated upright, scaled
+ * down and recompressed on a small worker pool, then handed to the page as FileProvider URIs of files in
+ * an LRU-evicted cache directory. The accept types of the file input decide the output format: photos are
+ * transcoded to JPEG only if the page accepts it. Anything that cannot be shrunk, or would not get smaller,
+ * is passed through unchanged, so the page always receives a file it asked for
+ */
+public final class UploadPreprocessor {
+    private static final String TAG = "UploadPreprocessor";
+
+    public static final long DEFAULT_MAX_CACHE_BYTES = 100L * 1024 * 1024;
+    public static final int DEFAULT_MAX_DIMENSION = 2048;
+    public static final int DEFAULT_QUALITY = 85;
+
+    private static final String CACHE_DIR = "uploads";
+    private static final String AUTHORITY_SUFFIX = ".fileprovider";
+    private static final String MIME_JPEG = "image/jpeg";
+    private static final String MIME_PNG = "image/png";
+    // Images already this small are passed through unless they must be rotated or transcoded
+    private static final long SMALL_IMAGE_BYTES = 300 * 1024;
+
+    // Formats BitmapFactory decodes; HEIF only from Android 9
+    private static final Set<String> DECODABLE = new HashSet<>(Arrays.asList(
+            MIME_JPEG, MIME_PNG, "image/webp", "image/bmp", "image/heic", "image/heif"));
+
+    private static volatile UploadPreprocessor defaultPreprocessor;
+
+    /**
+     * Size and quality limit of one MIME type
+     */
+    public static final class Limit {
+        final int maxDimension;
+        final int quality;
+
+        /**
+         * @param maxDimension Longest edge in pixels
+         * @param quality JPEG quality, 0-100
+         */
+        public Limit(int maxDimension, int quality) {
+            this.maxDimension = maxDimension;
+            this.quality = quality;
+        }
+    }
+
+    private final Context context;
+    private final File cacheDir;
+    private final String authority;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Limit> limits = new HashMap<>();
+
+    // LRU index of processed files by cache key, guarded by this
+    private final LinkedHashMap<String, CacheEntry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private boolean indexLoaded;
+    private volatile long maxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
+
+    /**
+     * @return Process-wide preprocessor, sharing one worker pool and cache directory
+     */
+    public static UploadPreprocessor getDefault(Context context) {
+        UploadPreprocessor preprocessor = defaultPreprocessor;
+        if (preprocessor == null) {
+            synchronized (UploadPreprocessor.class) {
+                preprocessor = defaultPreprocessor;
+                if (preprocessor == null) {
+                    defaultPreprocessor = preprocessor = new UploadPreprocessor(context);
+                }
+            }
+        }
+        return preprocessor;
+    }
+
+    public UploadPreprocessor(Context context) {
+        this.context = context.getApplicationContext();
+        this.cacheDir = new File(this.context.getCacheDir(), CACHE_DIR);
+        this.authority = this.context.getPackageName() + AUTHORITY_SUFFIX;
+        // Each decode holds a large bitmap, so parallelism stays low whatever the core count
+        int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "upload-preprocessor");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        limits.put("image/*", new Limit(DEFAULT_MAX_DIMENSION, DEFAULT_QUALITY));
+    }
+
+    /**
+     * Declare the limit of a MIME type; exact types win over type/* patterns
+     * @param mimePattern MIME type or pattern such as image/*
+     * @param limit Limit, null to pass files of this type through
+     */
+    public void setLimit(String mimePattern, Limit limit) {
+        synchronized (limits) {
+            if (limit == null) {
+                limits.remove(mimePattern.toLowerCase(Locale.ROOT));
+            } else {
+                limits.put(mimePattern.toLowerCase(Locale.ROOT), limit);
+            }
+        }
+    }
+
+    /**
+     * @param bytes Size of the processed file cache, least recently used files are deleted above it
+     */
+    public void setMaxCacheBytes(long bytes) {
+        maxCacheBytes = bytes;
+        executor.execute(() -> {
+            synchronized (this) {
+                trimTo(bytes, null);
+            }
+        });
+    }
+
+    /**
+     * Process the files picked for a file input and pass the results to its callback
+     * Files are processed in parallel and delivered together, in the original order, on the main thread
+     * @param uris Picked files, null or empty if the chooser was cancelled
+     * @param params Parameters of the file input, their accept types decide the output formats
+     * @param callback File input callback
+     */
+    public void process(Uri[] uris, WebChromeClient.FileChooserParams params, ValueCallback<Uri[]> callback) {
+        if (uris == null || uris.length == 0) {
+            callback.onReceiveValue(uris);
+            return;
+        }
+        AcceptTypes accept = new AcceptTypes(params != null ? params.getAcceptTypes() : null);
+        Uri[] results = uris.clone();
+        AtomicInteger remaining = new AtomicInteger(uris.length);
+        for (int i = 0; i < uris.length; i++) {
+            int position = i;
+            executor.execute(() -> {
+                try {
+                    results[position] = prepare(uris[position], accept);
+                } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                    Log.w(TAG, "Passing " + uris[position] + " through unprocessed", e);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        mainHandler.post(() -> callback.onReceiveValue(results));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return URI of a processed copy, or the original URI if it is passed through
+     */
+    private Uri prepare(Uri uri, AcceptTypes accept) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        String mimeType = resolver.getType(uri);
+        if (mimeType == null) {
+            return uri;
+        }
+        mimeType = mimeType.toLowerCase(Locale.ROOT);
+        Limit limit = limitFor(mimeType);
+        if (limit == null || !DECODABLE.contains(mimeType)) {
+            return uri;
+        }
+        // Keep PNG for transparency, everything else becomes JPEG, if the page accepts that format
+        String outputType = MIME_PNG.equals(mimeType) ? MIME_PNG : MIME_JPEG;
+        if (!accept.accepts(outputType)) {
+            return uri;
+        }
+
+        String name = null;
+        long size = -1;
+        try (Cursor cursor = resolver.query(uri,
+                new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                name = cursor.isNull(0) ? null : cursor.getString(0);
+                size = cursor.isNull(1) ? -1 : cursor.getLong(1);
+            }
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(resolver, uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return uri;
+        }
+        int orientation = ExifInterface.ORIENTATION_NORMAL;
+        if (MIME_JPEG.equals(mimeType)) {
+            try (InputStream in = open(resolver, uri)) {
+                orientation = new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                        ExifInterface.ORIENTATION_NORMAL);
+            }
+        }
+        int longest = Math.max(bounds.outWidth, bounds.outHeight);
+        boolean upright = orientation == ExifInterface.ORIENTATION_NORMAL
+                || orientation == ExifInterface.ORIENTATION_UNDEFINED;
+        if (longest <= limit.maxDimension && upright && mimeType.equals(outputType)
+                && size >= 0 && size <= SMALL_IMAGE_BYTES) {
+            return uri;
+        }
+
+        String key = cacheKey(uri, size, limit, outputType);
+        File cached = lookup(key);
+        if (cached != null) {
+            return FileProvider.getUriForFile(context, authority, cached);
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        // Subsample by powers of two while the result stays at least the target size
+        while (longest / (options.inSampleSize * 2) >= limit.maxDimension) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap decoded;
+        try (InputStream in = open(resolver, uri)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            return uri;
+        }
+        Bitmap output = transform(decoded, orientation, limit.maxDimension);
+
+        File dir = new File(cacheDir, key);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            output.recycle();
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, outputName(name, outputType));
+        File temp = new File(dir, file.getName() + ".part");
+        boolean written;
+        try (OutputStream out = new FileOutputStream(temp)) {
+            written = output.compress(MIME_PNG.equals(outputType) ? Bitmap.CompressFormat.PNG
+                    : Bitmap.CompressFormat.JPEG, limit.quality, out);
+        } finally {
+            output.recycle();
+        }
+        // A recompressed file that is not smaller only helps if it had to be rotated or transcoded
+        if (!written || (upright && mimeType.equals(outputType) && size >= 0 && temp.length() >= size)) {
+            deleteTree(dir);
+            return uri;
+        }
+        if (!temp.renameTo(file)) {
+            deleteTree(dir);
+            throw new IOException("Cannot move " + temp + " into place");
+        }
+        Log.d(TAG, "Prepared " + uri + ": " + bounds.outWidth + "x" + bounds.outHeight + ", " + size
+                + " bytes -> " + file.length() + " bytes " + outputType);
+        store(key, file);
+        return FileProvider.getUriForFile(context, authority, file);
+    }
+
+    private Limit limitFor(String mimeType) {
+        synchronized (limits) {
+            Limit limit = limits.get(mimeType);
+            if (limit == null) {
+                int slash = mimeType.indexOf('/');
+                limit = slash > 0 ? limits.get(mimeType.substring(0, slash) + "/*") : null;
+            }
+            return limit;
+        }
+    }
+
+    /**
+     * Rotate a decoded image upright and scale its longest edge down to the limit
+     */
+    private static Bitmap transform(Bitmap source, int orientation, int maxDimension) {
+        Matrix matrix = new Matrix();
+        float scale = Math.min(1f, (float) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        matrix.setScale(scale, scale);
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(270);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(270);
+                matrix.postScale(-1, 1);
+                break;
+            default:
+                break;
+        }
+        if (matrix.isIdentity()) {
+            return source;
+        }
+        Bitmap result = Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+        if (result != source) {
+            source.recycle();
+        }
+        return result;
+    }
+
+    private static InputStream open(ContentResolver resolver, Uri uri) throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new IOException("No content for " + uri);
+        }
+        return in;
+    }
+
+    private static String outputName(String name, String outputType) {
+        String base = name != null ? name : "upload";
+        int dot = base.lastIndexOf('.');
+        if (dot > 0) {
+            base = base.substring(0, dot);
+        }
+        base = base.replaceAll("[^\\w.-]", "_");
+        return base + (MIME_PNG.equals(outputType) ? ".png" : ".jpg");
+    }
+
+    private static String cacheKey(Uri uri, long size, Limit limit, String outputType) {
+        String source = uri + "|" + size + "|" + limit.maxDimension + "|" + limit.quality + "|" + outputType;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Cache index
+
+    private synchronized File lookup(String key) {
+        loadIndex();
+        CacheEntry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.file.isFile()) {
+            index.remove(key);
+            cachedBytes -= entry.bytes;
+            return null;
+        }
+        // Keeps the order across restarts, the index is rebuilt from modification times
+        entry.file.setLastModified(System.currentTimeMillis());
+        return entry.file;
+    }
+
+    private synchronized void store(String key, File file) {
+        loadIndex();
+        CacheEntry entry = new CacheEntry(file);
+        CacheEntry previous = index.put(key, entry);
+        if (previous != null) {
+            cachedBytes -= previous.bytes;
+        }
+        cachedBytes += entry.bytes;
+        trimTo(maxCacheBytes, key);
+    }
+
+    /**
+     * Delete least recently used files until the cache fits, never the entry just stored
+     */
+    private void trimTo(long maxBytes, String keep) {
+        loadIndex();
+        Iterator<Map.Entry<String, CacheEntry>> it = index.entrySet().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, CacheEntry> entry = it.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            cachedBytes -= entry.getValue().bytes;
+            deleteTree(entry.getValue().file.getParentFile());
+            it.remove();
+        }
+    }
+
+    /**
+     * Rebuild the index from the cache directory, least recently used first
+     */
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        indexLoaded = true;
+        File[] dirs = cacheDir.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        Arrays.sort(dirs, (a, b) -> Long.compare(newest(a), newest(b)));
+        for (File dir : dirs) {
+            File file = null;
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File candidate : files) {
+                    if (!candidate.getName().endsWith(".part")) {
+                        file = candidate;
+                    }
+                }
+            }
+            if (file == null) {
+                // Leftover of an interrupted write
+                deleteTree(dir);
+                continue;
+            }
+            CacheEntry entry = new CacheEntry(file);
+            index.put(dir.getName(), entry);
+            cachedBytes += entry.bytes;
+        }
+    }
+
+    private static long newest(File dir) {
+        long newest = dir.lastModified();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                newest = Math.max(newest, file.lastModified());
+            }
+        }
+        return newest;
+    }
+
+    private static void deleteTree(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Cannot delete " + file);
+                }
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            Log.w(TAG, "Cannot delete " + dir);
+        }
+    }
+
+    private static final class CacheEntry {
+        final File file;
+        final long bytes;
+
+        CacheEntry(File file) {
+            this.file = file;
+            this.bytes = file.length();
+        }
+    }
+
+    /**
+     * MIME types accepted by a file input, from its accept attribute
+     */
+    private static final class AcceptTypes {
+        private final Set<String> types = new HashSet<>();
+        private boolean any;
+
+        AcceptTypes(String[] acceptTypes) {
+            if (acceptTypes != null) {
+                for (String entry : acceptTypes) {
+                    // WebView passes the attribute split on commas, some versions as one string
+                    for (String part : entry.split(",")) {
+                        add(part.trim().toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            any |= types.isEmpty();
+        }
+
+        private void add(String type) {
+            if (type.isEmpty()) {
+                return;
+            }
+            if (type.startsWith(".")) {
+                String mapped = MimeTypeMap.getSingleton().getMimeTypeFromExtension(type.substring(1));
+                if (mapped != null) {
+                    types.add(mapped);
+                }
+                return;
+            }
+            if ("*/*".equals(type)) {
+                any = true;
+            }
+            types.add(type);
+        }
+
+        boolean accepts(String mimeType) {
+            if (any || types.contains(mimeType)) {
+                return true;
+            }
+            int slash = mimeType.indexOf('/');
+            return types.contains(mimeType.substring(0, slash) + "/*");
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.webviewapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Navigation routing table consulted by shouldOverrideUrlLoading
+ * Decides whether a URL stays in the WebView, is handed to another app or is blocked. Rules are compiled
+ * into a trie of reversed host labels ("com" -> "example" -> "www") whose nodes hold path-segment tries,
+ * so a lookup walks the URL once: the most specific host wins, then the longest path prefix within it.
+ * Host rules may be exact ("example.com"), cover every subdomain ("*.example.com") or every host ("*").
+ * URLs no host rule matches fall back to the action of their scheme, then to the default action.
+ *
+ * Config format:
+ * {"default": "external",
+ *  "schemes": {"https": "load", "tel": "external"},
+ *  "rules": [{"host": "*.example.com", "path": "/download", "action": "external"}]}
+ */
+public final class UrlRouter {
+
+    /**
+     * Routing decision
+     */
+    public enum Action {
+        /** Let the WebView continue the navigation itself */
+        LOAD,
+        /** Cancel the navigation and hand the URL to another app: tel:, mailto:, intent: and app deep links */
+        EXTERNAL,
+        /** Cancel the navigation */
+        BLOCK
+    }
+
+    private final HostNode hosts = new HostNode();
+    private final HashMap<String, Action> schemeActions = new HashMap<>();
+    private Action defaultAction = Action.EXTERNAL;
+
+    /**
+     * Compile a routing table from its JSON config
+     * @throws JSONException if the config is malformed or names an unknown action
+     */
+    public static UrlRouter fromJson(JSONObject config) throws JSONException {
+        UrlRouter router = new UrlRouter();
+        if (config.has("default")) {
+            router.setDefaultAction(parseAction(config.getString("default")));
+        }
+        JSONObject schemes = config.optJSONObject("schemes");
+        if (schemes != null) {
+            Iterator<String> names = schemes.keys();
+            while (names.hasNext()) {
+                String scheme = names.next();
+                router.setSchemeAction(scheme, parseAction(schemes.getString(scheme)));
+            }
+        }
+        JSONArray rules = config.optJSONArray("rules");
+        if (rules != null) {
+            for (int i = 0; i < rules.length(); i++) {
+                JSONObject rule = rules.getJSONObject(i);
+                router.addRule(rule.getString("host"), rule.optString("path", "/"), parseAction(rule.getString("action")));
+            }
+        }
+        return router;
+    }
+
+    /**
+     * Compile a routing table from a JSON config stream, e.g. a raw resource
+     */
+    public static UrlRouter fromStream(InputStream in) throws IOException, JSONException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return fromJson(new JSONObject(out.toString("UTF-8")));
+        }
+    }
+
+    /**
+     * @param action Action of URLs no host or scheme rule covers, EXTERNAL unless changed
+     */
+    public void setDefaultAction(Action action) {
+        defaultAction = action;
+    }
+
+    /**
+     * @param scheme URL scheme such as "tel", case-insensitive
+     * @param action Action of URLs with this scheme that no host rule matches
+     */
+    public void setSchemeAction(String scheme, Action action) {
+        schemeActions.put(scheme.toLowerCase(Locale.US), action);
+    }
+
+    /**
+     * Add a host and path prefix rule, replacing any rule for the same host and path
+     * @param host "example.com", "*.example.com" for its subdomains or "*" for every host
+     * @param pathPrefix Path prefix matched on whole segments, "/" for the whole host
+     * @param action Action of matching URLs
+     */
+    public void addRule(String host, String pathPrefix, Action action) {
+        host = host.toLowerCase(Locale.US);
+        boolean subdomains = false;
+        if ("*".equals(host)) {
+            host = "";
+            subdomains = true;
+        } else if (host.startsWith("*.")) {
+            host = host.substring(2);
+            subdomains = true;
+        }
+        HostNode node = hosts;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            node = node.child(host.substring(dot + 1, end));
+            end = dot < 0 ? 0 : dot;
+        }
+        PathNode paths;
+        if (subdomains) {
+            if (node.subdomainPaths == null) {
+                node.subdomainPaths = new PathNode();
+            }
+            paths = node.subdomainPaths;
+        } else {
+            if (node.paths == null) {
+                node.paths = new PathNode();
+            }
+            paths = node.paths;
+        }
+        int start = 0;
+        int length = pathPrefix.length();
+        while (start < length) {
+            int slash = pathPrefix.indexOf('/', start);
+            int segmentEnd = slash < 0 ? length : slash;
+            if (segmentEnd > start) {
+                paths = paths.child(pathPrefix.substring(start, segmentEnd));
+            }
+            start = segmentEnd + 1;
+        }
+        paths.action = action;
+    }
+
+    /**
+     * Route a URL
+     * @param url Absolute URL
+     * @return Action to take
+     */
+    public Action route(String url) {
+        int colon = url.indexOf(':');
+        if (colon <= 0) {
+            return defaultAction;
+        }
+        String scheme = url.substring(0, colon).toLowerCase(Locale.US);
+        Action schemeAction = schemeActions.get(scheme);
+        Action fallback = schemeAction != null ? schemeAction : defaultAction;
+        if (!url.startsWith("//", colon + 1)) {
+            // Opaque URLs such as tel: and mailto: have no host
+            return fallback;
+        }
+
+        // Authority ends at the first '/', '?' or '#'; user info and port are stripped from the host
+        int authorityStart = colon + 3;
+        int authorityEnd = url.length();
+        for (int i = authorityStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                authorityEnd = i;
+                break;
+            }
+        }
+        int hostStart = url.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) {
+            hostStart = authorityStart;
+        }
+        int hostEnd = authorityEnd;
+        int portColon = url.lastIndexOf(':', authorityEnd - 1);
+        // A colon inside an IPv6 literal is not a port separator
+        if (portColon >= hostStart && url.lastIndexOf(']', authorityEnd - 1) < portColon) {
+            hostEnd = portColon;
+        }
+
+        // Walk host labels from the top-level domain down, collecting path tries from least to most specific
+        ArrayList<PathNode> candidates = new ArrayList<>(4);
+        HostNode node = hosts;
+        int end = hostEnd;
+        while (node != null) {
+            if (end <= hostStart) {
+                if (node.paths != null) {
+                    candidates.add(node.paths);
+                }
+                break;
+            }
+            if (node.subdomainPaths != null) {
+                candidates.add(node.subdomainPaths);
+            }
+            int dot = url.lastIndexOf('.', end - 1);
+            int labelStart = dot < hostStart ? hostStart : dot + 1;
+            node = node.find(url.substring(labelStart, end).toLowerCase(Locale.US));
+            end = labelStart - 1;
+        }
+
+        int pathEnd = url.length();
+        for (int i = authorityEnd; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                pathEnd = i;
+                break;
+            }
+        }
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Action action = candidates.get(i).match(url, authorityEnd, pathEnd);
+            if (action != null) {
+                return action;
+            }
+        }
+        return fallback;
+    }
+
+    private static Action parseAction(String name) throws JSONException {
+        try {
+            return Action.valueOf(name.toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            throw new JSONException("Unknown route action: " + name);
+        }
+    }
+
+    /**
+     * Host label node, children keyed by the next label toward the subdomains
+     */
+    private static final class HostNode {
+        private HashMap<String, HostNode> children;
+        // Rules for exactly this host, and for every host below it
+        PathNode paths;
+        PathNode subdomainPaths;
+
+        HostNode child(String label) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            HostNode child = children.get(label);
+            if (child == null) {
+                child = new HostNode();
+                children.put(label, child);
+            }
+            return child;
+        }
+
+        HostNode find(String label) {
+            return children != null ? children.get(label) : null;
+        }
+    }
+
+    /**
+     * Path segment node, holds the action of the prefix ending here if a rule declared one
+     */
+    private static final class PathNode {
+        private HashMap<String, PathNode> children;
+        Action action;
+
+        PathNode child(String segment) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            PathNode child = children.get(segment);
+            if (child == null) {
+                child = new PathNode();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        /**
+         * @return Action of the longest rule prefix of the path url[start, end), null if none matches
+         */
+        Action match(String url, int start, int end) {
+            PathNode node = this;
+            Action matched = action;
+            int position = start;
+            while (position < end && node.children != null) {
+                if (url.charAt(position) == '/') {
+                    position++;
+                    continue;
+                }
+                int slash = url.indexOf('/', position);
+                int segmentEnd = slash < 0 || slash > end ? end : slash;
+                node = node.children.get(url.substring(position, segmentEnd));
+                if (node == null) {
+                    break;
+                }
+                if (node.action != null) {
+                    matched = node.action;
+                }
+                position = segmentEnd;
+            }
+            return matched;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.webviewapp;
+
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.webkit.JavaScriptReplyProxy;
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import java.util.Set;
+
+/**
+ * Transport built on WebViewCompat.addWebMessageListener
+ * Injects a agentWebBridgePort object into the page. H5 posts envelopes with agentWebBridgePort.postMessage,
+ * native answers through the reply proxy of the page's latest message with a JSON array of envelopes.
+ * Avoids the JavaBridge binder hop and script parsing of evaluateJavascript per message
+ */
+class WebMessageTransport implements BridgeTransport {
+    private static final String TAG = "WebMessageTransport";
+
+    static final String JS_OBJECT_NAME = "agentWebBridgePort";
+
+    /**
+     * Receives H5 messages arriving over the port, on the main thread
+     */
+    interface Receiver {
+        void onMessage(String jsonMessage);
+    }
+
+    private final WebView webView;
+    private volatile JavaScriptReplyProxy replyProxy;
+    private boolean installed;
+
+    WebMessageTransport(WebView webView) {
+        this.webView = webView;
+    }
+
+    /**
+     * @return true if the installed WebView supports web message listeners
+     */
+    static boolean isSupported() {
+        return WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_LISTENER);
+    }
+
+    /**
+     * Inject the port object into pages matching the origin rules, must run on the main thread before loading
+     * @param allowedOriginRules Origin rules as accepted by addWebMessageListener, "*" for any origin
+     * @param receiver Receiver of H5 messages
+     */
+    void install(Set<String> allowedOriginRules, Receiver receiver) {
+        WebViewCompat.addWebMessageListener(webView, JS_OBJECT_NAME, allowedOriginRules,
+                (WebView view, WebMessageCompat message, Uri sourceOrigin, boolean isMainFrame,
+                 JavaScriptReplyProxy proxy) -> {
+                    if (!isMainFrame) {
+                        return;
+                    }
+                    if (replyProxy != proxy) {
+                        Log.d(TAG, "Port connected from " + sourceOrigin);
+                        replyProxy = proxy;
+                    }
+                    String data = message.getData();
+                    if (data != null) {
+                        receiver.onMessage(data);
+                    }
+                });
+        installed = true;
+    }
+
+    void uninstall() {
+        if (installed) {
+            WebViewCompat.removeWebMessageListener(webView, JS_OBJECT_NAME);
+            installed = false;
+        }
+        replyProxy = null;
+    }
+
+    /**
+     * Forget the reply proxy of the current page, called when the page navigates away
+     */
+    void disconnect() {
+        replyProxy = null;
+    }
+
+    @Override
+    public String getName() {
+        return "webMessage";
+    }
+
+    @Override
+    public boolean isConnected() {
+        return replyProxy != null;
+    }
+
+    @Override
+    public void beginBatch(StringBuilder out) {
+        out.append('[');
+    }
+
+    @Override
+    public void endBatch(StringBuilder out) {
+        out.append(']');
+    }
+
+    @Override
+    public void send(String batch, int count) {
+        JavaScriptReplyProxy proxy = replyProxy;
+        if (proxy != null) {
+            proxy.postMessage(batch);
+        }
+    }
+}
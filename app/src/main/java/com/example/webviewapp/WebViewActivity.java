@@ -5,45 +5,102 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import android.Manifest;
-import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.ActivityNotFoundException;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.ViewGroup;
 import android.webkit.PermissionRequest;
+import android.webkit.RenderProcessGoneDetail;
 import android.webkit.ValueCallback;
 import android.webkit.WebChromeClient;
-import android.webkit.WebSettings;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
 import android.widget.Toast;
 
 import org.json.JSONException;
-import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
 
 public class WebViewActivity extends AppCompatActivity {
 
     private WebView webView;
+    private WebViewPool.PooledWebView pooledWebView;
     private ValueCallback<Uri[]> filePathCallback;
+    private WebChromeClient.FileChooserParams fileChooserParams;
     private static final int REQUEST_FILE_CHOOSER = 101;
+    
+    // Boolean extra, false hands picked files to the page unprocessed
+    public static final String EXTRA_PREPROCESS_UPLOADS = "preprocessUploads";
     private static final String TAG = "WebViewActivity";
     
+    // Longest wait for H5 to acknowledge the close announcement
+    private static final long CLOSE_ACK_TIMEOUT_MS = 1000;
+    
+    // Saved instance state key of the session id, the snapshot itself is kept on disk
+    private static final String STATE_SESSION_ID = "sessionId";
+    
+    // A renderer lost again this soon after a rebuild is not rebuilt, the page is closed instead
+    private static final long RENDERER_RESTART_WINDOW_MS = 10000;
+    
+    // Set once the close announcement is sent, repeated close clicks are ignored
+    private boolean closing;
+    
     // Store the pending permission request
     private PermissionRequest pendingPermissionRequest;
     
     // WebView communication bridge
     private WebViewBridge webViewBridge;
+    
+    // Chunked transfer of large payloads over the bridge
+    private BridgeStreamTransfer streamTransfer;
+    
+    // Native microphone capture streamed to H5
+    private BridgeAudioCapture audioCapture;
+    
+    // Set while the microphone permission prompt was opened for a native capture session
+    private boolean audioCapturePermissionPending;
+    
+    // Local copies of the page's static assets
+    private AssetCache assetCache;
+    
+    // Pauses the WebView and throttles the bridge while the activity is in the background
+    private final WebViewLifecycleController lifecycleController = new WebViewLifecycleController();
+    
+    // Navigation rules from res/raw/url_routes.json, compiled once per process
+    private static UrlRouter urlRouter;
+    
+    // URL this activity was started with
+    private String startUrl;
+    
+    // Snapshots of the page session, restored after process death or a lost renderer
+    private BridgeSessionStore sessionStore;
+    private String sessionId;
+    // Set while a saved session is being read, so an empty WebView does not overwrite it
+    private boolean restorePending;
+    
+    // Back/forward state as of the last history update, the only copy left once the renderer is gone
+    private Bundle lastWebViewState;
+    private String lastUrl;
+    private long lastRebuildAt = -RENDERER_RESTART_WINDOW_MS;
 
-    @SuppressLint("SetJavaScriptEnabled")
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_webview);
 
-        webView = findViewById(R.id.webView);
-
         // Get URL passed from MainActivity
         String url = getIntent().getStringExtra("url");
         if (url == null || url.isEmpty()) {
@@ -52,35 +109,117 @@ public class WebViewActivity extends AppCompatActivity {
             return;
         }
 
-        // Configure WebView settings
-        WebSettings webSettings = webView.getSettings();
-        webSettings.setJavaScriptEnabled(true); // Enable JavaScript
-        webSettings.setDomStorageEnabled(true); // Enable DOM Storage API
-        webSettings.setAllowFileAccess(true); // Allow file access
-        webSettings.setAllowContentAccess(true); // Allow content URL access
-        webSettings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW); // Allow mixed content
-        webSettings.setMediaPlaybackRequiresUserGesture(false); // No user gesture required to play media
-        
-        // Additional settings for audio recording
-        webSettings.setAllowFileAccessFromFileURLs(true); // Allow file URL to access files
-        webSettings.setAllowUniversalAccessFromFileURLs(true); // Allow universal access
-        webSettings.setDatabaseEnabled(true); // Enable database
-        webSettings.setCacheMode(WebSettings.LOAD_DEFAULT); // Set cache mode
-        
-        // Set User-Agent, some H5 pages require specific User-Agent to work properly
-        String userAgent = webSettings.getUserAgentString();
-        webSettings.setUserAgentString(userAgent + " WebViewApp/1.0");
-        
-        Log.d(TAG, "WebView settings configured");
+        startUrl = url;
+
+        // Live media is worthless once the session that produced it is gone
+        sessionStore = BridgeSessionStore.getDefault(this);
+        sessionStore.excludeFromJournal("audio.*");
+        sessionStore.excludeFromJournal("stream.*");
+        String savedSessionId = savedInstanceState != null ? savedInstanceState.getString(STATE_SESSION_ID) : null;
+        sessionId = savedSessionId != null ? savedSessionId : BridgeSessionStore.newSessionId();
+
+        // Serve static assets of the page's origin from disk, the manifest next to the page drops stale ones
+        assetCache = AssetCache.getDefault(this);
+        try {
+            assetCache.addPrefix(AssetCache.originPrefixOf(url));
+            assetCache.refreshManifest(AssetCache.manifestUrlFor(url));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Not caching assets of " + url, e);
+        }
+
+        attachWebView();
+
+        if (savedSessionId == null) {
+            // Load URL
+            webView.loadUrl(url);
+            return;
+        }
+        // Recreated from saved state, usually after the process was killed in the background
+        restorePending = true;
+        sessionStore.load(sessionId, snapshot -> {
+            restorePending = false;
+            if (isDestroyed() || pooledWebView == null) {
+                return;
+            }
+            if (snapshot != null) {
+                restoreSession(snapshot, BridgeSessionStore.REASON_RECREATED);
+            } else {
+                webView.loadUrl(url);
+            }
+        });
+    }
+
+    /**
+     * Take a WebView from the pool, attach it with a bridge and clients, nothing is loaded yet
+     */
+    private void attachWebView() {
+        // Take an already configured WebView from the pool, settings are applied when it is created
+        pooledWebView = WebViewPool.get(this).acquire(this);
+        webView = pooledWebView.getWebView();
+        FrameLayout container = findViewById(R.id.webViewContainer);
+        container.addView(webView, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
 
         // Initialize WebView communication bridge
         initWebViewBridge();
+        lifecycleController.attach(webView, webViewBridge);
 
-        // Set WebViewClient to prevent navigation to external browser
+        // Set WebViewClient to keep navigation in the WebView, routed by the compiled URL rules
+        UrlRouter router = getUrlRouter();
         webView.setWebViewClient(new WebViewClient() {
             @Override
-            public boolean shouldOverrideUrlLoading(WebView view, String url) {
-                view.loadUrl(url);
+            public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+                String target = request.getUrl().toString();
+                switch (router.route(target)) {
+                    case LOAD:
+                        // The WebView continues the original navigation, keeping POST bodies and redirects
+                        return false;
+                    case EXTERNAL:
+                        // Frames cannot launch other apps without a user gesture
+                        if (request.isForMainFrame() || request.hasGesture()) {
+                            openExternally(target);
+                        }
+                        return true;
+                    case BLOCK:
+                    default:
+                        Log.w(TAG, "Blocked navigation to " + target);
+                        return true;
+                }
+            }
+
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                return assetCache.intercept(request);
+            }
+
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                super.onPageStarted(view, url, favicon);
+                webViewBridge.onPageStarted();
+                lifecycleController.onPageStarted();
+                streamTransfer.cancelAll();
+                audioCapture.stop();
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                super.onPageFinished(view, url);
+                webViewBridge.onPageFinished();
+            }
+
+            @Override
+            public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+                super.doUpdateVisitedHistory(view, url, isReload);
+                lastWebViewState = saveWebViewState();
+                lastUrl = url;
+            }
+
+            @Override
+            @TargetApi(Build.VERSION_CODES.O)
+            public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+                // The system also kills renderers to reclaim memory, both are rebuilt the same way
+                Log.w(TAG, "Renderer " + (detail.didCrash() ? "crashed" : "killed") + ", rebuilding the page");
+                rebuildWebView();
                 return true;
             }
         });
@@ -91,6 +230,7 @@ public class WebViewActivity extends AppCompatActivity {
             @Override
             public boolean onShowFileChooser(WebView webView, ValueCallback<Uri[]> filePathCallback, FileChooserParams fileChooserParams) {
                 WebViewActivity.this.filePathCallback = filePathCallback;
+                WebViewActivity.this.fileChooserParams = fileChooserParams;
                 
                 // Create file selection Intent
                 Intent intent = fileChooserParams.createIntent();
@@ -145,9 +285,6 @@ public class WebViewActivity extends AppCompatActivity {
                 });
             }
         });
-
-        // Load URL
-        webView.loadUrl(url);
     }
 
     @Override
@@ -155,7 +292,12 @@ public class WebViewActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         
         if (requestCode == 200) { // Audio recording permission request
-            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            boolean granted = grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED;
+            if (audioCapturePermissionPending) {
+                audioCapturePermissionPending = false;
+                audioCapture.onPermissionResult(granted);
+            }
+            if (granted) {
                 Log.d(TAG, "User granted audio recording permission");
                 // If there is a pending WebView permission request, it can now be granted
                 if (pendingPermissionRequest != null) {
@@ -199,16 +341,71 @@ public class WebViewActivity extends AppCompatActivity {
                     }
                 }
                 
-                filePathCallback.onReceiveValue(results);
+                // Large photos are scaled down in the background before the page reads them
+                if (getIntent().getBooleanExtra(EXTRA_PREPROCESS_UPLOADS, true)) {
+                    UploadPreprocessor.getDefault(this).process(results, fileChooserParams, filePathCallback);
+                } else {
+                    filePathCallback.onReceiveValue(results);
+                }
                 filePathCallback = null;
+                fileChooserParams = null;
             }
         }
     }
 
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        lifecycleController.onStart();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        lifecycleController.onResume();
+    }
+
+    @Override
+    protected void onPause() {
+        lifecycleController.onPause();
+        super.onPause();
+    }
+
+    @Override
+    protected void onStop() {
+        lifecycleController.onStop();
+        super.onStop();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (sessionId == null) {
+            return;
+        }
+        // Only the id goes into the Bundle, a snapshot can exceed the Binder transaction limit
+        outState.putString(STATE_SESSION_ID, sessionId);
+        if (pooledWebView != null && !restorePending) {
+            sessionStore.save(sessionId, sessionStore.capture(saveWebViewState(), webView.getUrl(), webViewBridge));
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (pooledWebView != null) {
+            // Reset and keep the WebView for the next page instead of destroying it
+            detachWebView(false);
+        }
+        if (isFinishing() && sessionStore != null) {
+            sessionStore.delete(sessionId);
+        }
+        super.onDestroy();
+    }
+
     @Override
     public void onBackPressed() {
-        if (webView.canGoBack()) {
+        if (webView != null && webView.canGoBack()) {
             webView.goBack();
         } else {
             super.onBackPressed();
@@ -216,61 +413,214 @@ public class WebViewActivity extends AppCompatActivity {
     }
     
     /**
-     * Initialize WebView communication bridge
+     * Stop the page's native work and hand its WebView back to the pool
+     * @param discard true to destroy the WebView instead, when its renderer is gone
      */
-    private void initWebViewBridge() {
-        webViewBridge = new WebViewBridge(this, webView, new WebViewBridge.BridgeCallback() {
+    private void detachWebView(boolean discard) {
+        streamTransfer.cancelAll();
+        audioCapture.release();
+        if (filePathCallback != null) {
+            filePathCallback.onReceiveValue(null);
+            filePathCallback = null;
+            fileChooserParams = null;
+        }
+        pendingPermissionRequest = null;
+        // A WebView going back to the pool must not stay paused for the next page
+        lifecycleController.detach(!discard);
+        if (discard) {
+            WebViewPool.get(this).discard(pooledWebView);
+        } else {
+            WebViewPool.get(this).release(pooledWebView);
+        }
+        pooledWebView = null;
+        webView = null;
+    }
 
-            @Override
-            public void onClick(JSONObject data) {
-                Log.d(TAG, "H5 click event request, data: " + data.toString());
-                String value = data.optString("value");
+    /**
+     * Replace a WebView whose renderer process is gone, resuming its session in a fresh one
+     * The bridge journal still lives in memory; the back/forward state is the copy taken at the last history update
+     */
+    private void rebuildWebView() {
+        BridgeSessionStore.Snapshot snapshot = sessionStore.capture(lastWebViewState, lastUrl, webViewBridge);
+        detachWebView(true);
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastRebuildAt < RENDERER_RESTART_WINDOW_MS) {
+            Log.e(TAG, "Renderer lost again right after a rebuild, closing the page");
+            Toast.makeText(this, "The page stopped working", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+        lastRebuildAt = now;
+        // Idle WebViews shared the lost renderer, the replacement is created fresh
+        WebViewPool.get(this).clear();
+        attachWebView();
+        restoreSession(snapshot, BridgeSessionStore.REASON_RENDERER_GONE);
+    }
 
-                if (TextUtils.equals(value, "close")){
-                    closeWeb(data);
-                }
-            }
+    /**
+     * Queue the bridge journal of a snapshot, then bring back the WebView history or load its URL
+     */
+    private void restoreSession(BridgeSessionStore.Snapshot snapshot, String reason) {
+        sessionStore.restore(snapshot, webViewBridge, reason);
+        Bundle state = snapshot.getWebViewState();
+        if (state == null || webView.restoreState(state) == null) {
+            webView.loadUrl(snapshot.getUrl() != null ? snapshot.getUrl() : startUrl);
+        }
+    }
 
+    /**
+     * @return Back/forward state of the WebView, null if it has no history
+     */
+    private Bundle saveWebViewState() {
+        Bundle state = new Bundle();
+        return webView.saveState(state) != null ? state : null;
+    }
+
+    /**
+     * Initialize WebView communication bridge
+     */
+    private void initWebViewBridge() {
+        // Handlers are registered per event type, unregistered types are rejected with a structured error to H5
+        // The pooled bridge already has its JavaScript interfaces registered
+        webViewBridge = pooledWebView.getBridge();
+        
+        // Typed handlers declared with @BridgeHandler, payloads are decoded by the generated codecs
+        WebViewActivity_BridgeHandlers.register(webViewBridge, this);
+        
+        webViewBridge.registerHandler(WebViewBridge.EVENT_MESSAGE, (event, responder) -> {
+            Log.d(TAG, "H5 message event request, " + event.getRawDataLength() + " chars");
+            responder.resolve(null);
+        });
+        
+        // Click events drive UI such as closing the page, message events stay off the main thread
+        webViewBridge.setThreadAffinity(WebViewBridge.EVENT_CLICK, BridgeDispatcher.ThreadAffinity.MAIN);
+        webViewBridge.setThreadAffinity(WebViewBridge.EVENT_MESSAGE, BridgeDispatcher.ThreadAffinity.SERIAL);
+        
+        // Large payloads from H5 arrive as chunked streams written straight to the cache directory
+        streamTransfer = new BridgeStreamTransfer(this, webViewBridge);
+        streamTransfer.setReceiveListener(new BridgeStreamTransfer.ReceiveListener() {
             @Override
-            public void onMessage(JSONObject data) {
-                Log.d(TAG, "H5 message event request, data: " + data.toString());
+            public void onStreamReceived(String streamId, File file, String name, String mimeType) {
+                Log.d(TAG, "H5 stream received: " + streamId + ", " + name + " (" + mimeType + "), "
+                        + file.length() + " bytes at " + file);
+                // Nothing consumes the payload in this demo, the file would otherwise fill the cache directory
+                if (!file.delete()) {
+                    Log.w(TAG, "Failed to delete stream file " + file);
+                }
             }
 
-
             @Override
-            public void onUnhandledEvent(String eventType, JSONObject data) {
-                Log.w(TAG, "Unhandled event type: " + eventType + ", data: " + data.toString());
-                runOnUiThread(() -> {
-                    Toast.makeText(WebViewActivity.this, "Unsupported feature: " + eventType, Toast.LENGTH_SHORT).show();
-                });
+            public void onStreamFailed(String streamId, String reason) {
+                Log.w(TAG, "H5 stream failed: " + streamId + ", reason: " + reason);
             }
         });
+        streamTransfer.install();
         
-        // Register JavaScript interface
-        webViewBridge.registerJSInterface();
+        // Native voice capture, started and stopped by H5 with audio.start and audio.stop
+        audioCapture = new BridgeAudioCapture(this, webViewBridge);
+        audioCapture.setPermissionRequester(() -> runOnUiThread(() -> {
+            audioCapturePermissionPending = true;
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECORD_AUDIO}, 200);
+        }));
+        audioCapture.install();
         
         Log.d(TAG, "WebView communication bridge initialization completed");
     }
 
-    public void closeWeb(JSONObject data) {
-        runOnUiThread(() -> {
-            // Can notify H5 about imminent closure
-            JSONObject willCloseData = new JSONObject();
+    private UrlRouter getUrlRouter() {
+        if (urlRouter == null) {
             try {
-                willCloseData.put("value", data.optString("value"));
-                willCloseData.put("reason", "user_request");
-                willCloseData.put("delay", 1000);
-                willCloseData.put("timestamp", System.currentTimeMillis());
-            } catch (JSONException e) {
-                Log.e(TAG, "Failed to construct willClose data", e);
+                urlRouter = UrlRouter.fromStream(getResources().openRawResource(R.raw.url_routes));
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Invalid URL routes, loading every URL in the WebView", e);
+                urlRouter = new UrlRouter();
+                urlRouter.setDefaultAction(UrlRouter.Action.LOAD);
             }
+        }
+        return urlRouter;
+    }
 
-            webViewBridge.callH5(WebViewBridge.EVENT_CLICK, willCloseData);
+    /**
+     * Hand a URL to the app registered for it: dialer, mail, store or an intent: deep link
+     * Intent URLs without a matching app fall back to their browser_fallback_url
+     */
+    private void openExternally(String url) {
+        Intent intent;
+        try {
+            if (url.startsWith("intent:")) {
+                intent = Intent.parseUri(url, Intent.URI_INTENT_SCHEME);
+                // Pages may only start browsable activities, never a specific component
+                intent.addCategory(Intent.CATEGORY_BROWSABLE);
+                intent.setComponent(null);
+                intent.setSelector(null);
+            } else {
+                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+            }
+        } catch (URISyntaxException e) {
+            Log.w(TAG, "Malformed intent URL: " + url);
+            return;
+        }
+        try {
+            startActivity(intent);
+        } catch (ActivityNotFoundException | SecurityException e) {
+            String fallbackUrl = intent.getStringExtra("browser_fallback_url");
+            if (fallbackUrl != null && getUrlRouter().route(fallbackUrl) == UrlRouter.Action.LOAD) {
+                webView.loadUrl(fallbackUrl);
+            } else {
+                Toast.makeText(this, "No app can open this link", Toast.LENGTH_SHORT).show();
+            }
+        }
+    }
+
+    @BridgeHandler(WebViewBridge.EVENT_CLICK)
+    void onH5Click(ClickEvent click) {
+        Log.d(TAG, "H5 click event request, value: " + click.value);
+        if (TextUtils.equals(click.value, "close")) {
+            closeWeb(click.value);
+        }
+    }
 
-            // Delayed Activity closure
-            webView.postDelayed(() -> {
-                finish();
-            }, 1000);
+    public void closeWeb(String value) {
+        runOnUiThread(() -> {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            
+            // Notify H5 about imminent closure, it acknowledges once its state is flushed
+            CloseNotice notice = new CloseNotice();
+            notice.value = value;
+            notice.reason = "user_request";
+            // Longest time native waits for the acknowledgement
+            notice.delay = CLOSE_ACK_TIMEOUT_MS;
+            notice.timestamp = System.currentTimeMillis();
+
+            // Close as soon as H5 acknowledges, pages that do not answer are closed after the timeout
+            webViewBridge.announceClose(WebViewBridge.EVENT_CLICK, notice, WebViewActivity_CloseNotice_BridgeCodec.INSTANCE,
+                    CLOSE_ACK_TIMEOUT_MS, () -> {
+                if (!isFinishing() && !isDestroyed()) {
+                    finish();
+                }
+            });
         });
     }
+
+    /**
+     * Click event sent by H5
+     */
+    @BridgeMessage
+    static final class ClickEvent {
+        String value;
+    }
+
+    /**
+     * Close announcement sent to H5 before the page is closed
+     */
+    @BridgeMessage
+    static final class CloseNotice {
+        String value;
+        String reason;
+        long delay;
+        long timestamp;
+    }
 }
@@ -1,7 +1,10 @@
 package com.example.webviewapp;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.webkit.JavascriptInterface;
 import android.webkit.WebView;
@@ -9,6 +12,13 @@ import android.webkit.WebView;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * WebView and H5 page communication bridge class
  * Implements a bidirectional communication protocol, supporting H5 calling native and native calling H5
@@ -22,51 +32,870 @@ public class WebViewBridge {
     
     // Event type constants - Native calling H5
 //    public static final String EVENT_WILL_CLOSE = "willClose";
+    // Structured rejection of an H5 message no handler is registered for
+    public static final String EVENT_BRIDGE_ERROR = "bridgeError";
+    
+    // Event type constants - H5 opening the WebMessage port without sending anything else
+    public static final String EVENT_CONNECT = "bridgeConnect";
+    
+    // Event type constants - H5 announcing that its message handlers are installed
+    public static final String EVENT_READY = "bridgeReady";
+    
+    // Event type constants - Both directions, answer to a request carrying the same callId
+    public static final String EVENT_RPC_RESPONSE = "rpcResponse";
+    
+    // Error codes of failed requests
+    public static final String ERROR_TIMEOUT = "timeout";
+    public static final String ERROR_CANCELLED = "cancelled";
+    public static final String ERROR_UNHANDLED = "unhandled_event";
+    public static final String ERROR_HANDLER_FAILED = "handler_error";
+    
+    public static final long DEFAULT_CALL_TIMEOUT_MS = 10000;
+    public static final long DEFAULT_CLOSE_TIMEOUT_MS = 1000;
+    
+    // Timings recorded by the close handshake: acknowledged closes and closes that hit the timeout
+    public static final String TIMING_CLOSE_ACK = "close.ack";
+    public static final String TIMING_CLOSE_TIMEOUT = "close.timeout";
+    
+    // Shared timer for pending call timeouts, 50 ms resolution
+    private static final HashedTimerWheel CALL_TIMER = new HashedTimerWheel(50, 512, "bridge-call-timer");
+    
+    // Checks whether the page has installed a message handler, for pages that never send bridgeReady
+    private static final String READY_PROBE = "typeof window.onCallH5Batch==='function'"
+            + "||typeof window.onCallH5Message==='function'";
+    
+    // Low priority messages delivered per batch, the rest follow on later frames
+    private static final int LOW_PRIORITY_BATCH_LIMIT = 32;
+    
+    /**
+     * Delivery class of a native-to-H5 event type
+     */
+    public enum Priority {
+        /** Sent at once, ahead of everything queued and even while the page is still consuming earlier batches */
+        HIGH,
+        /** Sent on the next frame, held while the page is still consuming earlier batches */
+        NORMAL,
+        /** Sent on frames with nothing else pending, a bounded number per batch */
+        LOW
+    }
+    
+    /**
+     * What to discard when the outbound buffer is full, typically during a long page load
+     * Only messages of event types declared droppable with {@link #setOutboundPolicy(String, Priority, boolean, boolean)}
+     * are discarded; when none is queued the buffer grows past its capacity
+     */
+    public enum OverflowPolicy {
+        /** Drop the oldest queued droppable message */
+        DROP_OLDEST,
+        /** Drop the queued message with the same event type as the new one, the oldest droppable if there is none */
+        COALESCE_BY_KEY
+    }
+    
+    /**
+     * What happens to a native-to-H5 event type while delivery is throttled, see {@link #setThrottled}
+     * High priority messages, requests and responses are always delivered
+     */
+    public enum BackgroundPolicy {
+        /** Held and delivered in posting order once throttling ends */
+        BUFFER,
+        /** Held, keeping only the latest undelivered message of the event type */
+        COALESCE,
+        /** Discarded, for values that are stale by the time the page is visible again */
+        DROP
+    }
+    
+    /**
+     * Transport selection made at {@link #registerJSInterface()} time
+     */
+    public enum TransportMode {
+        /** Use the WebMessage port when the WebView supports it, evaluateJavascript otherwise */
+        AUTO,
+        /** Always use addJavascriptInterface and evaluateJavascript */
+        JAVASCRIPT
+    }
     
     private final Context context;
     private final WebView webView;
-    private final BridgeCallback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final BridgeDispatcher dispatcher;
+    private final BridgeHandlerRegistry<EventHandler> registry = new BridgeHandlerRegistry<>();
+    private final BridgeMetrics metrics = new BridgeMetrics();
+    private final BridgeLogger logger;
+    
+    // Transports, the WebMessage port is used for native-to-H5 traffic once the page has connected to it
+    private final JavascriptTransport javascriptTransport;
+    private WebMessageTransport webMessageTransport;
+    private TransportMode transportMode = TransportMode.AUTO;
+    private Set<String> allowedOriginRules = Collections.singleton("*");
+    
+    // Messages waiting for the next frame, delivered to H5 in a single evaluateJavascript call
+    private final OutboundMessageQueue outboundQueue = new OutboundMessageQueue(this::onDiscard);
+    private final OutboundBatcher outboundBatcher = new OutboundBatcher(outboundQueue, metrics);
+    private final ConcurrentHashMap<String, OutboundPolicy> outboundPolicies = new ConcurrentHashMap<>();
+    private final BridgeStateSync stateSync = new BridgeStateSync(this);
+    private final ConcurrentHashMap<String, BackgroundPolicy> backgroundPolicies = new ConcurrentHashMap<>();
+    
+    // Set while the page is in the background, only urgent messages are delivered
+    private volatile boolean throttled;
+    
+    // Messages are held in the queue until the current page can receive them
+    private volatile boolean pageReady;
+    // Incremented on every navigation on the main thread, so readiness signals of a previous page are ignored
+    // Read by H5 messages arriving on the JavaBridge thread
+    private volatile int pageGeneration;
+    private final AtomicBoolean frameFlushScheduled = new AtomicBoolean(false);
+    private final Runnable frameFlush = () -> {
+        frameFlushScheduled.set(false);
+        flush();
+    };
+    private final Runnable immediateFlush = this::flush;
     
+    // Request/response state
+    private final ConcurrentHashMap<String, BridgeCall> pendingCalls = new ConcurrentHashMap<>();
+    private final AtomicLong nextCallId = new AtomicLong();
+    
+    /**
+     * @param callback Legacy callback handling click and message events and receiving unhandled events,
+     *                 null to route everything through {@link #registerHandler}
+     */
     public WebViewBridge(Context context, WebView webView, BridgeCallback callback) {
+        this(context, webView, callback, null);
+    }
+    
+    /**
+     * @param callback Legacy callback, may be null
+     * @param dispatcher Dispatch layer deciding which thread each event type runs on,
+     *                   null for a dispatcher backed by the main thread and the shared background pool
+     */
+    public WebViewBridge(Context context, WebView webView, BridgeCallback callback, BridgeDispatcher dispatcher) {
         this.context = context;
         this.webView = webView;
-        this.callback = callback;
+        // Message payloads reach logcat only in debuggable builds, release builds keep the ring buffer
+        boolean debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        this.logger = new BridgeLogger(TAG, debuggable ? Log.DEBUG : Log.WARN);
+        this.javascriptTransport = new JavascriptTransport(webView, metrics, logger);
+        javascriptTransport.setIdleListener(() -> {
+            if (!outboundQueue.isEmpty()) {
+                scheduleFrameFlush();
+            }
+        });
+        // Errors must not wait behind chatty status updates
+        setOutboundPolicy(EVENT_BRIDGE_ERROR, Priority.HIGH, false);
+        if (dispatcher == null) {
+            dispatcher = new BridgeDispatcher(mainHandler::post, null);
+        }
+        this.dispatcher = dispatcher;
+        if (callback != null) {
+            registerLegacyCallback(callback);
+        }
+    }
+    
+    /**
+     * Route click and message events to the legacy callback, unhandled events are rejected and then reported to it
+     * Requests it handles are answered with an empty result once the callback returns
+     */
+    private void registerLegacyCallback(BridgeCallback callback) {
+        registerHandler(EVENT_CLICK, (event, responder) -> {
+            callback.onClick(event.getData());
+            responder.resolve(null);
+        });
+        registerHandler(EVENT_MESSAGE, (event, responder) -> {
+            callback.onMessage(event.getData());
+            responder.resolve(null);
+        });
+        registerHandler(BridgeHandlerRegistry.WILDCARD, (event, responder) -> {
+            logger.w("Unhandled event type: " + event.getEventType());
+            reject(event);
+            callback.onUnhandledEnvelope(event);
+        });
+    }
+    
+    /**
+     * Register the handler of an event type, replacing any previous one
+     * Routes are an exact event type, a namespace wildcard such as "media.*" or "*" for everything else.
+     * Events without a route are rejected with an unhandled_event error sent back to H5
+     * @param route Event type or wildcard route
+     * @param handler Event handler, runs on the thread declared for the event type
+     */
+    public void registerHandler(String route, EventHandler handler) {
+        registry.register(route, handler);
+    }
+    
+    /**
+     * Remove a route registered with {@link #registerHandler}
+     * @param route Event type or wildcard route
+     */
+    public void unregisterHandler(String route) {
+        registry.unregister(route);
+    }
+    
+    /**
+     * Declare which thread handles an event type
+     * Event types without a declaration run on their own serial lane
+     * @param eventType Event type
+     * @param affinity Thread affinity
+     */
+    public void setThreadAffinity(String eventType, BridgeDispatcher.ThreadAffinity affinity) {
+        dispatcher.setAffinity(eventType, affinity);
+    }
+    
+    public BridgeDispatcher getDispatcher() {
+        return dispatcher;
+    }
+    
+    /**
+     * @return Message counts, sizes, codec time, queue wait and round-trip statistics of this bridge
+     */
+    public BridgeMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * @return Logging layer of this bridge: level, payload truncation, sampling and the recent message ring buffer
+     */
+    public BridgeLogger getLogger() {
+        return logger;
+    }
+    
+    /**
+     * @return Delta-encoded state channel of this bridge
+     */
+    public BridgeStateSync getStateSync() {
+        return stateSync;
+    }
+    
+    /**
+     * Publish a state object to H5, only the fields that changed since H5 last acknowledged it are sent
+     * @param key State key
+     * @param state New value, must not be modified afterwards
+     * @see BridgeStateSync
+     */
+    public void syncState(String key, JSONObject state) {
+        stateSync.update(key, state);
+    }
+    
+    /**
+     * Write the current metrics to logcat
+     * @return The metrics dump
+     */
+    public String dumpMetrics() {
+        String dump = metrics.dump();
+        Log.i(TAG, dump);
+        return dump;
+    }
+    
+    /**
+     * Choose the transports installed by {@link #registerJSInterface()}, AUTO unless changed
+     * @param mode Transport mode
+     */
+    public void setTransportMode(TransportMode mode) {
+        transportMode = mode;
+    }
+    
+    /**
+     * Restrict the origins allowed to use the WebMessage port, any origin unless changed
+     * @param rules Origin rules as accepted by WebViewCompat.addWebMessageListener
+     */
+    public void setAllowedOriginRules(Set<String> rules) {
+        allowedOriginRules = rules;
     }
     
     /**
      * Register JavaScript interface
-     * Injects agentWebBridge object into WebView
+     * Injects agentWebBridge object into WebView, plus the agentWebBridgePort object when the transport mode
+     * allows it and the WebView supports web message listeners. Must run on the main thread before loading
      */
     public void registerJSInterface() {
         webView.addJavascriptInterface(new JSBridge(), "agentWebBridge");
         Log.d(TAG, "JavaScript interface registered: agentWebBridge");
+        
+        if (transportMode == TransportMode.AUTO && WebMessageTransport.isSupported()) {
+            webMessageTransport = new WebMessageTransport(webView);
+            webMessageTransport.install(allowedOriginRules, this::receive);
+            Log.d(TAG, "WebMessage transport registered: " + WebMessageTransport.JS_OBJECT_NAME);
+        } else {
+            Log.d(TAG, "WebMessage transport unavailable, using evaluateJavascript");
+        }
+    }
+    
+    /**
+     * Notify the bridge that the WebView started loading a new page
+     * The WebMessage port of the previous page is dropped until the new page connects
+     */
+    public void onPageStarted() {
+        pageReady = false;
+        pageGeneration++;
+        javascriptTransport.resetInFlight();
+        stateSync.onPageStarted();
+        if (webMessageTransport != null) {
+            webMessageTransport.disconnect();
+        }
+    }
+    
+    /**
+     * Notify the bridge that the WebView finished loading the page
+     * Pages that never send bridgeReady are considered ready once they have defined onCallH5Batch or
+     * onCallH5Message; others keep buffering until their bridgeReady or port connection arrives
+     */
+    public void onPageFinished() {
+        if (pageReady) {
+            return;
+        }
+        int generation = pageGeneration;
+        webView.evaluateJavascript(READY_PROBE, result -> {
+            if (generation == pageGeneration && "true".equals(result)) {
+                markPageReady("message handler defined");
+            }
+        });
+    }
+    
+    /**
+     * @return true if messages are delivered as they are sent, false while they are buffered for a loading page
+     */
+    public boolean isPageReady() {
+        return pageReady;
+    }
+    
+    /**
+     * Bound the outbound buffer, {@link OverflowPolicy#DROP_OLDEST} with 512 messages unless changed
+     * @param capacity Messages held before the policy applies
+     * @param policy What to discard when the buffer is full
+     */
+    public void setOutboundBuffer(int capacity, OverflowPolicy policy) {
+        outboundQueue.setOverflowPolicy(capacity, policy == OverflowPolicy.COALESCE_BY_KEY);
+    }
+    
+    /**
+     * Declare how an event type is scheduled, NORMAL without coalescing unless changed
+     * With coalescing, a message replaces the queued message of the same event type that has not been delivered
+     * yet, so a consumer that falls behind only receives the latest value of a progress or state stream.
+     * Requests expecting a result are never coalesced
+     * @param eventType Native-to-H5 event type, or {@link #EVENT_RPC_RESPONSE} for answers to H5 requests
+     * @param priority Delivery class
+     * @param coalesce true to keep only the latest undelivered message of the event type
+     */
+    public void setOutboundPolicy(String eventType, Priority priority, boolean coalesce) {
+        setOutboundPolicy(eventType, priority, coalesce, false);
+    }
+    
+    /**
+     * Declare how an event type is scheduled, and whether it may be discarded when the outbound buffer is full
+     * Only opt in event types whose messages stand alone and may be lost, such as frames of a media stream;
+     * none is droppable unless declared
+     * @param droppable true to let the overflow policy discard its undelivered messages
+     * @see #setOutboundPolicy(String, Priority, boolean)
+     */
+    public void setOutboundPolicy(String eventType, Priority priority, boolean coalesce, boolean droppable) {
+        // Priority ordinals match the lanes of the outbound queue
+        outboundPolicies.put(eventType, new OutboundPolicy(priority.ordinal(), coalesce, droppable));
+    }
+    
+    /**
+     * Declare what happens to an event type while delivery is throttled, BUFFER unless changed
+     * @param eventType Native-to-H5 event type
+     * @param policy Handling of its normal and low priority messages
+     */
+    public void setBackgroundPolicy(String eventType, BackgroundPolicy policy) {
+        backgroundPolicies.put(eventType, policy);
     }
     
+    /**
+     * Throttle delivery while the page is in the background, must run on the main thread
+     * High priority messages, requests and responses are still delivered. Other messages are held, merged
+     * or dropped according to {@link #setBackgroundPolicy} and synced state waits; everything held is
+     * delivered in one batch when throttling ends
+     * @param throttled true while the page is not visible
+     */
+    public void setThrottled(boolean throttled) {
+        if (this.throttled == throttled) {
+            return;
+        }
+        this.throttled = throttled;
+        logger.d(throttled ? "Delivery throttled" : "Delivery resumed");
+        if (!throttled) {
+            flushNow();
+            stateSync.onPageReady();
+        }
+    }
+    
+    /**
+     * @return true while only urgent messages are delivered, see {@link #setThrottled}
+     */
+    public boolean isThrottled() {
+        return throttled;
+    }
+    
+    /**
+     * Deliver everything buffered while the page was loading in one batch, must run on the main thread
+     */
+    private void markPageReady(String reason) {
+        if (pageReady) {
+            return;
+        }
+        pageReady = true;
+        logger.d("Page ready (" + reason + ")");
+        flushNow();
+        stateSync.onPageReady();
+    }
+    
+    private void onDiscard(OutboundMessageQueue.Message discarded, boolean merged) {
+        metrics.addQueueDepth(-1);
+        if (merged) {
+            metrics.recordMerged(discarded.eventType);
+        } else {
+            metrics.recordDropped(discarded.eventType);
+            logger.w("Outbound buffer full, dropped " + discarded.eventType);
+        }
+    }
+    
+    /**
+     * Drop all page-specific state so the bridge can serve a new page, must run on the main thread
+     * Handlers and thread affinities are removed, pending calls fail with {@link #ERROR_CANCELLED},
+     * undelivered messages and synced state are discarded, throttling ends and the WebMessage port is disconnected.
+     * The JavaScript interfaces stay registered
+     */
+    public void reset() {
+        registry.clear();
+        dispatcher.clearAffinities();
+        stateSync.clear();
+        for (BridgeCall call : pendingCalls.values()) {
+            failCall(call, ERROR_CANCELLED, "Bridge reset");
+        }
+        ArrayList<OutboundMessageQueue.Message> dropped = new ArrayList<>();
+        metrics.addQueueDepth(-outboundQueue.drainTo(dropped, OutboundMessageQueue.PRIORITY_LOW, Integer.MAX_VALUE));
+        pageReady = false;
+        throttled = false;
+        pageGeneration++;
+        javascriptTransport.resetInFlight();
+        if (webMessageTransport != null) {
+            webMessageTransport.disconnect();
+        }
+    }
+    
+    /**
+     * Copy the undelivered messages for the session journal, highest priority first
+     * Requests and responses are left out, their callIds mean nothing to the page of another session
+     * @param out List to append to
+     */
+    void snapshotOutbound(ArrayList<OutboundMessageQueue.Message> out) {
+        int start = out.size();
+        outboundQueue.snapshot(out);
+        for (int i = out.size() - 1; i >= start; i--) {
+            if (out.get(i).callId != null) {
+                out.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Queue a message taken from the session journal, delivered once the page is ready
+     */
+    void restoreOutbound(String eventType, String dataJson, int priority, String mergeKey) {
+        OutboundPolicy policy = outboundPolicies.get(eventType);
+        post(eventType, dataJson, priority, mergeKey, policy != null && policy.droppable);
+    }
+
     /**
      * Native calls H5 method
+     * Messages are queued and delivered together with every other message posted during the same frame,
+     * scheduled by the policy declared with {@link #setOutboundPolicy}; while the page is loading they are
+     * buffered and delivered in one batch once it is ready
      * @param eventType Event type
      * @param data JSON data object
      */
     public void callH5(String eventType, JSONObject data) {
-        try {
-            JSONObject message = new JSONObject();
-            message.put("eventType", eventType);
-            message.put("data", data != null ? data : new JSONObject());
-            
-            String jsonString = message.toString();
-            // Escape single quotes
-            String escapedJson = jsonString.replace("'", "\\'").replace("\"", "\\\"");
-            String jsCode = "javascript:window.onCallH5Message('" + escapedJson + "')";
-            
-            Log.d(TAG, "Calling H5 method: " + eventType + ", data: " + jsonString);
-            
-            webView.post(() -> {
-                webView.evaluateJavascript(jsCode, result -> {
-                    Log.d(TAG, "H5 return result: " + result);
+        callH5Raw(eventType, data != null ? data.toString() : null);
+    }
+    
+    /**
+     * Native calls H5 method with a typed message
+     * The message is written by its codec straight into JSON text, without building a JSONObject
+     * @param eventType Event type
+     * @param message Message, null for an empty object
+     * @param codec Codec of the message type, usually generated from a {@link BridgeMessage} class
+     */
+    public <T> void callH5(String eventType, T message, BridgeCodec<T> codec) {
+        callH5Raw(eventType, toJson(message, codec));
+    }
+    
+    /**
+     * Native calls H5 method with an already serialized data object
+     * Skips building a JSONObject; the string is copied once into the outgoing script
+     * @param eventType Event type
+     * @param dataJson Serialized JSON object or "null", null for an empty object
+     * @throws IllegalArgumentException if dataJson is anything else, it would be spliced into the script as code
+     */
+    public void callH5Raw(String eventType, String dataJson) {
+        requireJsonObject(eventType, dataJson);
+        OutboundPolicy policy = outboundPolicies.get(eventType);
+        if (policy == null) {
+            post(eventType, dataJson, OutboundMessageQueue.PRIORITY_NORMAL, null, false);
+        } else {
+            post(eventType, dataJson, policy.priority, policy.coalesce ? eventType : null, policy.droppable);
+        }
+    }
+    
+    /**
+     * Native calls H5 method, replacing the undelivered message with the same event type and key
+     * For streams of values where only the latest matters, such as the progress of one upload among several
+     * @param eventType Event type
+     * @param coalesceKey Key of the value within the event type, such as an upload id
+     * @param data JSON data object
+     */
+    public void callH5Coalesced(String eventType, String coalesceKey, JSONObject data) {
+        OutboundPolicy policy = outboundPolicies.get(eventType);
+        post(eventType, data != null ? data.toString() : null,
+                policy != null ? policy.priority : OutboundMessageQueue.PRIORITY_NORMAL, eventType + '#' + coalesceKey,
+                policy != null && policy.droppable);
+    }
+    
+    /**
+     * Native calls H5 method without waiting for the next frame
+     * Use for latency-critical events such as the close notification; the message is sent with
+     * {@link Priority#HIGH}, together with other high priority messages already queued
+     * @param eventType Event type
+     * @param data JSON data object
+     */
+    public void callH5Now(String eventType, JSONObject data) {
+        post(eventType, data != null ? data.toString() : null, OutboundMessageQueue.PRIORITY_HIGH, null, false);
+    }
+    
+    /**
+     * Native calls H5 method and awaits its answer
+     * H5 answers with an rpcResponse message carrying the same callId
+     * @param eventType Event type
+     * @param data JSON data object
+     * @param timeoutMs Time to wait for the answer, 0 or less for {@link #DEFAULT_CALL_TIMEOUT_MS}
+     * @param callback Receives the response or the error, on the thread declared for rpcResponse
+     * @return Handle of the pending call
+     */
+    public BridgeCall callH5ForResult(String eventType, JSONObject data, long timeoutMs, ResultCallback callback) {
+        return callH5RawForResult(eventType, data != null ? data.toString() : null, timeoutMs, callback);
+    }
+    
+    /**
+     * Native calls H5 method with an already serialized data object and awaits its answer
+     * @see #callH5ForResult(String, JSONObject, long, ResultCallback)
+     */
+    public BridgeCall callH5RawForResult(String eventType, String dataJson, long timeoutMs, ResultCallback callback) {
+        requireJsonObject(eventType, dataJson);
+        return request(eventType, dataJson, timeoutMs, priorityOf(eventType), callback);
+    }
+    
+    private BridgeCall request(String eventType, String dataJson, long timeoutMs, int priority,
+                               ResultCallback callback) {
+        String callId = "n" + nextCallId.incrementAndGet();
+        BridgeCall call = new BridgeCall(this, callId, eventType, callback);
+        pendingCalls.put(callId, call);
+        long timeout = timeoutMs > 0 ? timeoutMs : DEFAULT_CALL_TIMEOUT_MS;
+        call.timeout = CALL_TIMER.schedule(
+                () -> failCall(call, ERROR_TIMEOUT, "No response within " + timeout + " ms"), timeout);
+        
+        logger.message(BridgeMetrics.Direction.OUTBOUND, eventType, dataJson);
+        offer(new OutboundMessageQueue.Message(eventType, callId, dataJson, null, priority));
+        return call;
+    }
+    
+    /**
+     * Close handshake: announce an imminent close and proceed as soon as H5 has flushed its state
+     * The announcement is a high priority request sent immediately; H5 acknowledges it with an rpcResponse once it is ready.
+     * Pages that never answer are closed after the timeout. Wait times are recorded as the
+     * {@link #TIMING_CLOSE_ACK} and {@link #TIMING_CLOSE_TIMEOUT} timings
+     * @param eventType Event type of the announcement
+     * @param data JSON data object
+     * @param timeoutMs Longest wait for the acknowledgement, 0 or less for {@link #DEFAULT_CLOSE_TIMEOUT_MS}
+     * @param onReady Runs once on the main thread, after the acknowledgement, an error or the timeout
+     * @return Handle of the pending announcement, cancelling it runs onReady right away
+     */
+    public BridgeCall announceClose(String eventType, JSONObject data, long timeoutMs, Runnable onReady) {
+        return announceCloseRaw(eventType, data != null ? data.toString() : null, timeoutMs, onReady);
+    }
+    
+    /**
+     * Close handshake with a typed announcement, see {@link #announceClose(String, JSONObject, long, Runnable)}
+     * @param message Announcement, null for an empty object
+     * @param codec Codec of the announcement type
+     */
+    public <T> BridgeCall announceClose(String eventType, T message, BridgeCodec<T> codec, long timeoutMs,
+                                        Runnable onReady) {
+        return announceCloseRaw(eventType, toJson(message, codec), timeoutMs, onReady);
+    }
+    
+    private BridgeCall announceCloseRaw(String eventType, String dataJson, long timeoutMs, Runnable onReady) {
+        long start = System.nanoTime();
+        AtomicBoolean ready = new AtomicBoolean(false);
+        BridgeCall call = request(eventType, dataJson,
+                timeoutMs > 0 ? timeoutMs : DEFAULT_CLOSE_TIMEOUT_MS, OutboundMessageQueue.PRIORITY_HIGH,
+                new ResultCallback() {
+                    @Override
+                    public void onResult(BridgeEnvelope response) {
+                        metrics.recordTiming(TIMING_CLOSE_ACK, System.nanoTime() - start);
+                        proceed();
+                    }
+
+                    @Override
+                    public void onError(String code, String message) {
+                        if (ERROR_TIMEOUT.equals(code)) {
+                            metrics.recordTiming(TIMING_CLOSE_TIMEOUT, System.nanoTime() - start);
+                        } else {
+                            logger.w("Close announcement failed: " + code + ", " + message);
+                        }
+                        proceed();
+                    }
+
+                    private void proceed() {
+                        if (ready.compareAndSet(false, true)) {
+                            mainHandler.post(onReady);
+                        }
+                    }
                 });
-            });
+        return call;
+    }
+    
+    /**
+     * Queue the answer to an H5 request
+     * Every answer goes through here, so raw results and errors are checked in one place
+     * @throws IllegalArgumentException if the result or error is not a serialized JSON object; H5 then
+     *                                  receives a handler_error instead, so it is not left waiting
+     */
+    void sendResponse(String callId, String resultJson, String errorJson) {
+        if ((resultJson != null && !JsLiteralEncoder.isJsonObject(resultJson))
+                || (errorJson != null && !JsLiteralEncoder.isJsonObject(errorJson))) {
+            offer(new OutboundMessageQueue.Message(EVENT_RPC_RESPONSE, callId, null,
+                    JsLiteralEncoder.errorJson(ERROR_HANDLER_FAILED, "Invalid response"), priorityOf(EVENT_RPC_RESPONSE)));
+            throw new IllegalArgumentException("Response to " + callId + " is not a serialized JSON object");
+        }
+        logger.message(BridgeMetrics.Direction.OUTBOUND, EVENT_RPC_RESPONSE, errorJson != null ? errorJson : resultJson);
+        offer(new OutboundMessageQueue.Message(EVENT_RPC_RESPONSE, callId, resultJson, errorJson,
+                priorityOf(EVENT_RPC_RESPONSE)));
+    }
+    
+    /**
+     * Cheap rejection path for events without a handler, the payload is never parsed
+     * Requests are answered with an unhandled_event error, other events produce a bridgeError message
+     */
+    private void reject(BridgeEnvelope event) {
+        String message = "No handler for " + event.getEventType();
+        if (event.getCallId() != null) {
+            sendResponse(event.getCallId(), null, JsLiteralEncoder.errorJson(ERROR_UNHANDLED, message));
+            return;
+        }
+        StringBuilder error = new StringBuilder(64);
+        error.append("{\"code\":");
+        JsLiteralEncoder.appendString(error, ERROR_UNHANDLED);
+        error.append(",\"eventType\":");
+        JsLiteralEncoder.appendString(error, event.getEventType());
+        error.append(",\"message\":");
+        JsLiteralEncoder.appendString(error, message);
+        callH5Raw(EVENT_BRIDGE_ERROR, error.append('}').toString());
+    }
+    
+    /**
+     * Complete a pending call with an H5 response
+     */
+    private void completeCall(BridgeEnvelope response) {
+        BridgeCall call = pendingCalls.remove(response.getCallId());
+        if (call == null || !call.markDone()) {
+            logger.w("Dropping response for unknown or expired call: " + response.getCallId());
+            return;
+        }
+        dispatcher.dispatch(EVENT_RPC_RESPONSE, () -> {
+            if (response.hasError()) {
+                call.callback.onError(response.getErrorCode(), response.getErrorMessage());
+            } else {
+                call.callback.onResult(response);
+            }
+        });
+    }
+    
+    /**
+     * Complete a pending call with an error
+     * @return false if the call had already completed
+     */
+    boolean failCall(BridgeCall call, String code, String message) {
+        if (!call.markDone()) {
+            return false;
+        }
+        pendingCalls.remove(call.getCallId(), call);
+        logger.w("Call " + call.getCallId() + " (" + call.getEventType() + ") failed: " + code);
+        dispatcher.dispatch(EVENT_RPC_RESPONSE, () -> call.callback.onError(code, message));
+        return true;
+    }
+    
+    /**
+     * Deliver all queued messages to H5 immediately instead of on the next frame
+     */
+    public void flushNow() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            flush();
+        } else {
+            webView.post(immediateFlush);
+        }
+    }
+    
+    /**
+     * Append a serialized message to the outbound queue, the envelope itself is built at flush time
+     */
+    private void post(String eventType, String dataJson, int priority, String mergeKey, boolean droppable) {
+        if (throttled && priority != OutboundMessageQueue.PRIORITY_HIGH) {
+            BackgroundPolicy policy = backgroundPolicies.get(eventType);
+            if (policy == BackgroundPolicy.DROP) {
+                metrics.recordDropped(eventType);
+                return;
+            }
+            if (policy == BackgroundPolicy.COALESCE && mergeKey == null) {
+                mergeKey = eventType;
+            }
+        }
+        logger.message(BridgeMetrics.Direction.OUTBOUND, eventType, dataJson);
+        offer(new OutboundMessageQueue.Message(eventType, dataJson, priority, mergeKey, droppable));
+    }
+    
+    /**
+     * Queue a message and schedule its delivery: high priority right away, the others on the next frame
+     */
+    private void offer(OutboundMessageQueue.Message message) {
+        metrics.addQueueDepth(1);
+        boolean wasEmpty = outboundQueue.offer(message);
+        if (message.priority == OutboundMessageQueue.PRIORITY_HIGH) {
+            flushNow();
+        } else if (wasEmpty || (throttled && message.callId != null)) {
+            // While throttled the queue holds messages that are not delivered, requests must not wait behind them
+            scheduleFrameFlush();
+        }
+    }
+    
+    private static void requireJsonObject(String eventType, String dataJson) {
+        if (dataJson != null && !JsLiteralEncoder.isJsonObject(dataJson)) {
+            throw new IllegalArgumentException("Data of " + eventType + " is not a serialized JSON object");
+        }
+    }
+    
+    private int priorityOf(String eventType) {
+        OutboundPolicy policy = outboundPolicies.get(eventType);
+        return policy != null ? policy.priority : OutboundMessageQueue.PRIORITY_NORMAL;
+    }
+    
+    private void scheduleFrameFlush() {
+        if (frameFlushScheduled.compareAndSet(false, true)) {
+            webView.postOnAnimation(frameFlush);
+        }
+    }
+    
+    /**
+     * Deliver queued messages to H5 as one batch, highest priority first, must run on the main thread
+     * Does nothing until the page is ready. Uses the WebMessage port once the page has connected to it,
+     * evaluateJavascript otherwise. While the transport is busy only high priority messages are sent,
+     * the rest wait for it to become idle. While throttled, requests and responses are sent as well
+     */
+    private void flush() {
+        if (!pageReady) {
+            // Kept in the queue, delivered in one batch once the page is ready
+            return;
+        }
+        BridgeTransport transport = webMessageTransport != null && webMessageTransport.isConnected()
+                ? webMessageTransport : javascriptTransport;
+        if (outboundBatcher.flush(transport, LOW_PRIORITY_BATCH_LIMIT, throttled) == 0) {
+            return;
+        }
+        // Low priority leftovers go out on the next frame, held messages once the transport reports idle
+        if (!transport.isBusy() && !outboundQueue.isEmpty()) {
+            scheduleFrameFlush();
+        }
+    }
+    
+    /**
+     * Entry point of every H5 message, whichever transport it arrived on
+     * @param jsonMessage Message text
+     */
+    private void receive(String jsonMessage) {
+        long decodeStart = System.nanoTime();
+        BridgeEnvelope envelope;
+        try {
+            // Only eventType is read here, the data payload is parsed by whoever consumes it
+            envelope = BridgeEnvelopeDecoder.decode(jsonMessage);
         } catch (JSONException e) {
-            Log.e(TAG, "Failed to construct H5 call message", e);
+            logger.message(BridgeMetrics.Direction.INBOUND, "(malformed)", jsonMessage);
+            logger.e("Error parsing H5 message", e);
+            return;
+        }
+        String eventType = envelope.getEventType();
+        logger.message(BridgeMetrics.Direction.INBOUND, eventType, jsonMessage);
+        long dispatchedAt = System.nanoTime();
+        metrics.recordMessage(BridgeMetrics.Direction.INBOUND, eventType, jsonMessage.length(), dispatchedAt - decodeStart);
+        if (EVENT_RPC_RESPONSE.equals(eventType)) {
+            completeCall(envelope);
+            return;
+        }
+        if (EVENT_CONNECT.equals(eventType) || EVENT_READY.equals(eventType)) {
+            // Port handshake or readiness announcement: the page is listening. Tagged with the page current on
+            // arrival, so a signal of the previous page handled after the next navigation started is dropped
+            int generation = pageGeneration;
+            mainHandler.post(() -> {
+                if (generation == pageGeneration) {
+                    markPageReady(eventType);
+                }
+            });
+            return;
+        }
+        if (BridgeStateSync.EVENT_STATE_RESYNC.equals(eventType)) {
+            try {
+                JSONObject data = envelope.getData();
+                stateSync.resync(data != null && data.has("key") ? data.getString("key") : null);
+            } catch (JSONException e) {
+                logger.e("Malformed state resync request", e);
+            }
+            return;
+        }
+        
+        EventHandler handler = registry.find(eventType);
+        if (handler == null) {
+            logger.w("No handler registered, rejecting event: " + eventType);
+            reject(envelope);
+            return;
+        }
+        
+        // Handler work runs on the thread declared for the event type, never on the receiving thread
+        BridgeResponder responder = new BridgeResponder(this, envelope.getCallId());
+        dispatcher.dispatch(eventType, () -> {
+            metrics.recordQueueWait(BridgeMetrics.Direction.INBOUND, eventType, System.nanoTime() - dispatchedAt);
+            handle(handler, envelope, responder);
+        });
+    }
+    
+    private void handle(EventHandler handler, BridgeEnvelope envelope, BridgeResponder responder) {
+        try {
+            handler.onEvent(envelope, responder);
+        } catch (JSONException | RuntimeException e) {
+            logger.e("Event handler failed, event type: " + envelope.getEventType(), e);
+            responder.reject(ERROR_HANDLER_FAILED, e.getMessage());
+        }
+    }
+    
+    /**
+     * @return Message written by its codec, null for a null message
+     */
+    static <T> String toJson(T message, BridgeCodec<T> codec) {
+        if (message == null) {
+            return null;
+        }
+        StringBuilder out = new StringBuilder(64);
+        codec.write(out, message);
+        return out.toString();
+    }
+    
+    /**
+     * Scheduling declared for an outbound event type
+     */
+    private static final class OutboundPolicy {
+        final int priority;
+        final boolean coalesce;
+        final boolean droppable;
+        
+        OutboundPolicy(int priority, boolean coalesce, boolean droppable) {
+            this.priority = priority;
+            this.coalesce = coalesce;
+            this.droppable = droppable;
         }
     }
     
@@ -77,42 +906,43 @@ public class WebViewBridge {
     public class JSBridge {
         @JavascriptInterface
         public void callNative(String jsonMessage) {
-            Log.d(TAG, "H5 calling native: " + jsonMessage);
-            
-            try {
-                JSONObject jsonObject = new JSONObject(jsonMessage);
-                String eventType = jsonObject.getString("eventType");
-                JSONObject data = jsonObject.optJSONObject("data");
-                if (data == null) {
-                    data = new JSONObject();
-                }
-                
-                // Dispatch handling based on event type
-                switch (eventType) {
-                    case EVENT_CLICK:
-                        if (callback != null) {
-                            callback.onClick(data);
-                        }
-                        break;
-                    case EVENT_MESSAGE:
-                        if (callback != null) {
-                            callback.onMessage(data);
-                        }
-                        break;
-                        
-                    default:
-                        Log.w(TAG, "Unhandled event type: " + eventType);
-                        if (callback != null) {
-                            callback.onUnhandledEvent(eventType, data);
-                        }
-                        break;
-                }
-            } catch (JSONException e) {
-                Log.e(TAG, "Error parsing H5 message", e);
-            }
+            receive(jsonMessage);
         }
     }
     
+    /**
+     * Handler of one H5 event type or route
+     */
+    public interface EventHandler {
+
+        /**
+         * Handle an event; requests may be answered later from any thread
+         * @param event Event envelope, data is parsed on demand
+         * @param responder Reply channel, replies are ignored for events without a callId
+         * @throws JSONException if the event data cannot be read; requests are answered with handler_error
+         */
+        void onEvent(BridgeEnvelope event, BridgeResponder responder) throws JSONException;
+    }
+    
+    /**
+     * Receives the outcome of a native-to-H5 request
+     */
+    public interface ResultCallback {
+
+        /**
+         * H5 answered with a result
+         * @param response Response envelope, data is parsed on demand
+         */
+        void onResult(BridgeEnvelope response);
+
+        /**
+         * H5 answered with an error, or the call timed out or was cancelled
+         * @param code Error code, such as {@link WebViewBridge#ERROR_TIMEOUT}
+         * @param message Error description, may be null
+         */
+        void onError(String code, String message);
+    }
+    
     /**
      * Bridge callback interface
      * Defines event handling methods that the native side needs to implement
@@ -126,6 +956,17 @@ public class WebViewBridge {
          */
         void onUnhandledEvent(String eventType, JSONObject data);
 
+        /**
+         * Handle unknown event type without forcing the data payload to be parsed
+         * Override to inspect {@link BridgeEnvelope#getRawData()} or drop the event cheaply,
+         * the default implementation parses the payload and forwards to {@link #onUnhandledEvent}
+         * @param envelope Decoded message envelope
+         * @throws JSONException if the payload is not valid JSON
+         */
+        default void onUnhandledEnvelope(BridgeEnvelope envelope) throws JSONException {
+            onUnhandledEvent(envelope.getEventType(), envelope.getData());
+        }
+
         /**
          * Click event
          * @param data Additional data
@@ -0,0 +1,193 @@
+package com.example.webviewapp;
+
+import android.util.Log;
+import android.webkit.WebView;
+
+/**
+ * Ties a WebView and its bridge to the lifecycle of the activity hosting them
+ * Once the host is stopped the WebView is paused and the bridge throttled to urgent messages; when every
+ * host is stopped, the JavaScript timers of all WebViews in the process are paused as well. All of it is
+ * undone when a host is started again, and timers also resume once no host is left, so a WebView handed
+ * back to the pool can finish recycling. Pausing on stop rather than on pause keeps a page in a visible but
+ * unfocused multi-window activity running. The page is told about every change and can throttle itself.
+ * Every method must be called on the main thread
+ *
+ * Protocol:
+ * page.visibility {state, timestamp}   native to H5, high priority; state is visible, inactive or hidden
+ *                                      also answers a request from H5 with the current state
+ */
+public final class WebViewLifecycleController {
+    private static final String TAG = "WebViewLifecycle";
+
+    public static final String EVENT_VISIBILITY = "page.visibility";
+
+    // Focused and visible
+    public static final String STATE_VISIBLE = "visible";
+    // Visible but not focused, such as behind a dialog or in another multi-window pane
+    public static final String STATE_INACTIVE = "inactive";
+    // Not visible, timers are paused and only urgent messages are delivered
+    public static final String STATE_HIDDEN = "hidden";
+
+    // Hosts with a WebView attached, and those of them between onStart and onStop
+    // WebView timers are process-wide: they are paused while hosts exist and none is started
+    private static int attachedHosts;
+    private static int startedHosts;
+    private static boolean timersPaused;
+
+    private WebView webView;
+    private WebViewBridge bridge;
+    private boolean started;
+    private boolean resumed;
+    // Also read by the visibility request handler, on the thread of its event type
+    private volatile String state = STATE_HIDDEN;
+
+    /**
+     * Take over a WebView, applying the current lifecycle state to it
+     * @param webView WebView of the page
+     * @param bridge Bridge attached to the WebView
+     */
+    public void attach(WebView webView, WebViewBridge bridge) {
+        this.webView = webView;
+        this.bridge = bridge;
+        attachedHosts++;
+        if (started) {
+            startedHosts++;
+        }
+        bridge.setOutboundPolicy(EVENT_VISIBILITY, WebViewBridge.Priority.HIGH, true);
+        bridge.registerHandler(EVENT_VISIBILITY, (event, responder) ->
+                responder.resolve(visibility(), WebViewLifecycleController_Visibility_BridgeCodec.INSTANCE));
+        if (!started) {
+            webView.onPause();
+            bridge.setThrottled(true);
+        }
+        updateTimers(webView);
+        notifyPage();
+    }
+
+    /**
+     * Release the WebView, resumed so it can be pooled for another page
+     * The bridge stays throttled, held messages are discarded when the pool resets it
+     * @param reusable false if the WebView is about to be destroyed, such as after its renderer is gone;
+     *                 it is left untouched
+     */
+    public void detach(boolean reusable) {
+        if (webView == null) {
+            return;
+        }
+        attachedHosts--;
+        if (started) {
+            startedHosts--;
+        }
+        bridge.unregisterHandler(EVENT_VISIBILITY);
+        if (reusable) {
+            if (!started) {
+                webView.onResume();
+            }
+            updateTimers(webView);
+        }
+        webView = null;
+        bridge = null;
+    }
+
+    public void onStart() {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (webView != null) {
+            startedHosts++;
+            webView.onResume();
+            bridge.setThrottled(false);
+            updateTimers(webView);
+        }
+        update();
+    }
+
+    public void onResume() {
+        resumed = true;
+        update();
+    }
+
+    public void onPause() {
+        resumed = false;
+        update();
+    }
+
+    public void onStop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        // Sent at high priority before throttling, so the page hears it right away
+        update();
+        if (webView != null) {
+            startedHosts--;
+            bridge.setThrottled(true);
+            webView.onPause();
+            updateTimers(webView);
+        }
+    }
+
+    /**
+     * A new page started loading, it learns the current state once it is ready
+     */
+    public void onPageStarted() {
+        notifyPage();
+    }
+
+    /**
+     * @return Current state: {@link #STATE_VISIBLE}, {@link #STATE_INACTIVE} or {@link #STATE_HIDDEN}
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Pause or resume the timers of every WebView in the process, through any WebView still usable
+     */
+    private static void updateTimers(WebView webView) {
+        boolean pause = attachedHosts > 0 && startedHosts == 0;
+        if (pause == timersPaused) {
+            return;
+        }
+        timersPaused = pause;
+        if (pause) {
+            webView.pauseTimers();
+        } else {
+            webView.resumeTimers();
+        }
+        Log.d(TAG, pause ? "WebView timers paused" : "WebView timers resumed");
+    }
+
+    private void update() {
+        String current = !started ? STATE_HIDDEN : resumed ? STATE_VISIBLE : STATE_INACTIVE;
+        if (current.equals(state)) {
+            return;
+        }
+        state = current;
+        Log.d(TAG, "Page " + current);
+        notifyPage();
+    }
+
+    private void notifyPage() {
+        if (bridge != null) {
+            bridge.callH5(EVENT_VISIBILITY, visibility(), WebViewLifecycleController_Visibility_BridgeCodec.INSTANCE);
+        }
+    }
+
+    private Visibility visibility() {
+        Visibility visibility = new Visibility();
+        visibility.state = state;
+        visibility.timestamp = System.currentTimeMillis();
+        return visibility;
+    }
+
+    /**
+     * Visibility state sent to H5
+     */
+    @BridgeMessage
+    static final class Visibility {
+        String state;
+        long timestamp;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.webviewapp;
+
+import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of pre-configured WebViews with a bridge already attached
+ * WebViews are created while the main thread is idle, so Chromium initialization and settings setup
+ * happen before the user opens a page. Released WebViews are reset and kept for the next page
+ * instead of being destroyed; the pool is bounded and gives its WebViews up under memory pressure.
+ * Every method must be called on the main thread
+ */
+public final class WebViewPool implements ComponentCallbacks2 {
+    private static final String TAG = "WebViewPool";
+
+    private static final int DEFAULT_MAX_SIZE = 2;
+    private static final String BLANK_URL = "about:blank";
+
+    @SuppressLint("StaticFieldLeak") // Holds the application context only
+    private static WebViewPool instance;
+
+    private final Context appContext;
+    private final ArrayDeque<PooledWebView> idle = new ArrayDeque<>();
+    private int maxSize = DEFAULT_MAX_SIZE;
+    // Creations waiting for an idle pass, and released WebViews still loading about:blank
+    private int warming;
+    private int recycling;
+
+    /**
+     * A pooled WebView and the bridge attached to it
+     */
+    public static final class PooledWebView {
+        private final WebView webView;
+        private final WebViewBridge bridge;
+        private final MutableContextWrapper context;
+
+        PooledWebView(WebView webView, WebViewBridge bridge, MutableContextWrapper context) {
+            this.webView = webView;
+            this.bridge = bridge;
+            this.context = context;
+        }
+
+        public WebView getWebView() {
+            return webView;
+        }
+
+        /**
+         * @return Bridge with its JavaScript interfaces registered and no handlers
+         */
+        public WebViewBridge getBridge() {
+            return bridge;
+        }
+    }
+
+    private WebViewPool(Context context) {
+        this.appContext = context.getApplicationContext();
+        appContext.registerComponentCallbacks(this);
+        // Every bridge is created through the pool, which exists once per process
+        BridgeLogger.installCrashDump();
+    }
+
+    public static WebViewPool get(Context context) {
+        if (instance == null) {
+            instance = new WebViewPool(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @param size Largest number of idle WebViews kept, 0 to disable pooling
+     */
+    public void setMaxSize(int size) {
+        maxSize = size;
+        trimTo(size);
+    }
+
+    /**
+     * Fill the pool up to the given number of idle WebViews while the main thread is idle
+     * The WebView provider is loaded on a background thread first, so the main thread only pays for
+     * creating the views themselves
+     * @param count Idle WebViews wanted, capped at the maximum pool size
+     */
+    public void prewarm(int count) {
+        int wanted = Math.min(count, maxSize) - idle.size() - warming - recycling;
+        if (wanted <= 0) {
+            return;
+        }
+        warming += wanted;
+        BridgeIoExecutor.shared().execute(() -> {
+            // Loads and initializes the WebView provider off the main thread
+            WebSettings.getDefaultUserAgent(appContext);
+            new Handler(Looper.getMainLooper()).post(() -> Looper.myQueue().addIdleHandler(new WarmUp(wanted)));
+        });
+    }
+
+    /**
+     * Take a WebView for a page, creating one if none is idle
+     * @param context Activity hosting the WebView
+     * @return Pooled WebView, hand it back with {@link #release(PooledWebView)}
+     */
+    public PooledWebView acquire(Context context) {
+        PooledWebView pooled = idle.poll();
+        if (pooled == null) {
+            Log.d(TAG, "Pool empty, creating WebView");
+            pooled = create();
+        }
+        pooled.context.setBaseContext(context);
+        return pooled;
+    }
+
+    /**
+     * Hand a WebView back once its page is done
+     * The WebView is detached, its bridge reset and its history cleared; it is destroyed instead
+     * if the pool is full
+     * @param pooled WebView previously returned by {@link #acquire(Context)}
+     */
+    public void release(PooledWebView pooled) {
+        WebView webView = pooled.webView;
+        if (webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+        pooled.bridge.reset();
+        webView.stopLoading();
+        webView.setWebChromeClient(null);
+        pooled.context.setBaseContext(appContext);
+        if (idle.size() + recycling >= maxSize) {
+            webView.setWebViewClient(new WebViewClient());
+            webView.destroy();
+            return;
+        }
+        recycling++;
+        // The WebView re-enters the pool once about:blank has replaced the page and the history is cleared
+        webView.setWebViewClient(new PoolClient(pooled, true));
+        webView.loadUrl(BLANK_URL);
+    }
+
+    /**
+     * Destroy a WebView that cannot be reused, such as one whose renderer process is gone
+     * @param pooled WebView previously returned by {@link #acquire(Context)}
+     */
+    public void discard(PooledWebView pooled) {
+        WebView webView = pooled.webView;
+        if (webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+        pooled.bridge.reset();
+        webView.setWebChromeClient(null);
+        webView.setWebViewClient(new WebViewClient());
+        pooled.context.setBaseContext(appContext);
+        webView.destroy();
+    }
+
+    /**
+     * Destroy every idle WebView
+     */
+    public void clear() {
+        trimTo(0);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimTo(0);
+        } else if (level == TRIM_MEMORY_RUNNING_LOW) {
+            trimTo(1);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimTo(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void trimTo(int size) {
+        while (idle.size() > size) {
+            idle.poll().webView.destroy();
+        }
+    }
+
+    private PooledWebView create() {
+        MutableContextWrapper context = new MutableContextWrapper(appContext);
+        WebView webView = new WebView(context);
+        configure(webView);
+        WebViewBridge bridge = new WebViewBridge(context, webView, null);
+        bridge.registerJSInterface();
+        PooledWebView pooled = new PooledWebView(webView, bridge, context);
+        webView.setWebViewClient(new PoolClient(pooled, false));
+        return pooled;
+    }
+
+    /**
+     * Client of the WebViews the pool holds: returns recycled WebViews to the pool, and drops WebViews whose
+     * renderer process is gone instead of letting the default client terminate the app
+     */
+    private final class PoolClient extends WebViewClient {
+        private final PooledWebView pooled;
+        // Waiting for about:blank before entering the pool
+        private boolean recycling;
+
+        PoolClient(PooledWebView pooled, boolean recycling) {
+            this.pooled = pooled;
+            this.recycling = recycling;
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            if (!recycling || !BLANK_URL.equals(url)) {
+                return;
+            }
+            recycling = false;
+            WebViewPool.this.recycling--;
+            view.clearHistory();
+            if (idle.size() < maxSize) {
+                idle.add(pooled);
+            } else {
+                view.destroy();
+            }
+        }
+
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            if (recycling) {
+                recycling = false;
+                WebViewPool.this.recycling--;
+            } else if (!idle.remove(pooled)) {
+                // Already destroyed by a trim
+                return true;
+            }
+            Log.w(TAG, "Renderer gone, dropping pooled WebView");
+            view.destroy();
+            return true;
+        }
+    }
+
+    /**
+     * Creates one WebView per idle pass, so no frame is delayed by more than one creation
+     */
+    private final class WarmUp implements MessageQueue.IdleHandler {
+        private int remaining;
+
+        WarmUp(int count) {
+            this.remaining = count;
+        }
+
+        @Override
+        public boolean queueIdle() {
+            remaining--;
+            warming--;
+            if (idle.size() + recycling < maxSize) {
+                idle.add(create());
+                Log.d(TAG, "Pre-warmed WebView, idle: " + idle.size());
+            }
+            return remaining > 0;
+        }
+    }
+
+    @SuppressLint("SetJavaScriptEnabled")
+    private static void configure(WebView webView) {
+        WebSettings webSettings = webView.getSettings();
+        webSettings.setJavaScriptEnabled(true); // Enable JavaScript
+        webSettings.setDomStorageEnabled(true); // Enable DOM Storage API
+        webSettings.setAllowFileAccess(true); // Allow file access
+        webSettings.setAllowContentAccess(true); // Allow content URL access
+        webSettings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW); // Allow mixed content
+        webSettings.setMediaPlaybackRequiresUserGesture(false); // No user gesture required to play media
+
+        // Additional settings for audio recording
+        webSettings.setAllowFileAccessFromFileURLs(true); // Allow file URL to access files
+        webSettings.setAllowUniversalAccessFromFileURLs(true); // Allow universal access
+        webSettings.setDatabaseEnabled(true); // Enable database
+        webSettings.setCacheMode(WebSettings.LOAD_DEFAULT); // Set cache mode
+
+        // Set User-Agent, some H5 pages require specific User-Agent to work properly
+        String userAgent = webSettings.getUserAgentString();
+        webSettings.setUserAgentString(userAgent + " WebViewApp/1.0");
+    }
+}
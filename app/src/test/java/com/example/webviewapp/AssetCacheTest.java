@@ -0,0 +1,243 @@
+package com.example.webviewapp;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AssetCache download, revalidation and pass-through against a scripted origin
+ */
+public class AssetCacheTest {
+
+    private static final String URL = "https://example.com/static/app.js";
+    private static final byte[] CONTENT = "console.log('app');".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeOrigin origin;
+    private AssetCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        origin = new FakeOrigin();
+        cache = newCache(AssetCache.DEFAULT_MAX_BYTES);
+    }
+
+    @Test
+    public void missIsDownloadedAndStored() throws Exception {
+        origin.add(response(200, true, true, null, 60000, CONTENT));
+
+        AssetCache.CachedAsset asset = cache.load(URL, Collections.emptyMap());
+
+        assertNotNull(asset);
+        assertEquals(sha256(CONTENT), asset.getHash());
+        assertEquals(CONTENT.length, asset.getSize());
+        assertArrayEquals(CONTENT, read(asset.open()));
+        assertEquals(1, cache.getMissCount());
+
+        // Fresh, served without asking the origin again
+        assertNotNull(cache.load(URL, Collections.emptyMap()));
+        assertEquals(1, origin.requests.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void staleEntryIsKeptOnNotModified() throws Exception {
+        origin.add(response(200, true, true, "\"v1\"", 0, CONTENT));
+        AssetCache.CachedAsset stored = cache.load(URL, Collections.emptyMap());
+        assertNotNull(stored);
+        assertNull("Stored without lifetime, revalidated on every use", cache.get(URL));
+
+        origin.add(response(304, true, true, null, 60000, new byte[0]));
+        AssetCache.CachedAsset revalidated = cache.load(URL, Collections.emptyMap());
+
+        assertNotNull(revalidated);
+        assertEquals("\"v1\"", origin.requests.get(1).get("If-None-Match"));
+        assertEquals(stored.getHash(), revalidated.getHash());
+        assertArrayEquals(CONTENT, read(revalidated.open()));
+        assertNotNull("Fresh again after the 304", cache.get(URL));
+    }
+
+    @Test
+    public void contentNotMatchingTheManifestIsServedButNotStored() throws Exception {
+        JSONObject assets = new JSONObject().put("static/app.js", sha256("other".getBytes(StandardCharsets.UTF_8)));
+        cache.applyManifest("https://example.com/asset-manifest.json",
+                new JSONObject().put("version", "1").put("assets", assets));
+        origin.add(response(200, true, true, null, 60000, CONTENT));
+
+        AssetCache.PassThrough passThrough = new AssetCache.PassThrough();
+        assertNull(cache.load(URL, Collections.emptyMap(), null, passThrough));
+
+        assertNotNull(passThrough.body);
+        assertArrayEquals(CONTENT, read(passThrough.body));
+        assertNull(cache.get(URL));
+        assertEquals(0, cache.getSizeBytes());
+        assertNoTempFiles();
+    }
+
+    @Test
+    public void privateResponseIsPassedThrough() throws Exception {
+        origin.add(response(200, true, false, null, 60000, CONTENT));
+
+        AssetCache.PassThrough passThrough = new AssetCache.PassThrough();
+        assertNull(cache.load(URL, Collections.emptyMap(), null, passThrough));
+
+        assertEquals(200, passThrough.response.status);
+        assertArrayEquals(CONTENT, read(passThrough.body));
+        assertNull(cache.get(URL));
+        assertEquals(1, origin.requests.size());
+    }
+
+    @Test
+    public void uncacheableResponseIsPassedThrough() throws Exception {
+        origin.add(response(200, false, true, null, 60000, CONTENT));
+
+        AssetCache.PassThrough passThrough = new AssetCache.PassThrough();
+        assertNull(cache.load(URL, Collections.emptyMap(), null, passThrough));
+
+        assertArrayEquals(CONTENT, read(passThrough.body));
+        assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void errorResponseIsPassedThroughButRedirectIsNot() throws Exception {
+        byte[] notFound = "missing".getBytes(StandardCharsets.UTF_8);
+        origin.add(response(404, true, true, null, 0, notFound));
+        AssetCache.PassThrough passThrough = new AssetCache.PassThrough();
+        assertNull(cache.load(URL, Collections.emptyMap(), null, passThrough));
+        assertEquals(404, passThrough.response.status);
+        assertArrayEquals(notFound, read(passThrough.body));
+
+        origin.add(response(302, true, true, null, 0, new byte[0]));
+        passThrough = new AssetCache.PassThrough();
+        assertNull(cache.load(URL, Collections.emptyMap(), null, passThrough));
+        assertNull("WebResourceResponse cannot carry a redirect", passThrough.body);
+    }
+
+    @Test
+    public void oversizedResponseIsPassedThroughWhole() throws Exception {
+        cache = newCache(64);
+        byte[] large = new byte[100_000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        origin.add(response(200, true, true, null, 60000, large));
+
+        AssetCache.PassThrough passThrough = new AssetCache.PassThrough();
+        assertNull(cache.load(URL, Collections.emptyMap(), null, passThrough));
+
+        assertArrayEquals(large, read(passThrough.body));
+        assertNull(cache.get(URL));
+        assertNoTempFiles();
+    }
+
+    @Test
+    public void discardedResponseIsClosed() {
+        TrackingInputStream body = new TrackingInputStream(CONTENT);
+        origin.add(new AssetCache.OriginResponse(200, "text/javascript", null, null, false, true, null, null, 0, body));
+
+        assertNull(cache.load(URL, Collections.emptyMap()));
+
+        assertTrue(body.closed);
+    }
+
+    private AssetCache newCache(long maxBytes) throws IOException {
+        AssetCache cache = new AssetCache(folder.newFolder(), maxBytes);
+        cache.addPrefix("https://example.com/static/");
+        cache.setOrigin(origin);
+        return cache;
+    }
+
+    private void assertNoTempFiles() {
+        File[] dirs = folder.getRoot().listFiles();
+        for (File dir : dirs) {
+            File[] objects = new File(dir, "objects").listFiles();
+            assertEquals(0, objects != null ? objects.length : 0);
+        }
+    }
+
+    private static AssetCache.OriginResponse response(int status, boolean cacheable, boolean shared, String etag,
+                                                      long maxAgeMs, byte[] body) {
+        return new AssetCache.OriginResponse(status, "text/javascript", "utf-8", null, cacheable, shared, etag,
+                null, maxAgeMs, new ByteArrayInputStream(body));
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Origin answering with queued responses, recording the request headers
+     */
+    private static final class FakeOrigin implements AssetCache.Origin {
+        final ArrayDeque<AssetCache.OriginResponse> responses = new ArrayDeque<>();
+        final List<Map<String, String>> requests = new ArrayList<>();
+
+        void add(AssetCache.OriginResponse response) {
+            responses.add(response);
+        }
+
+        @Override
+        public AssetCache.OriginResponse fetch(String url, Map<String, String> headers) throws IOException {
+            requests.add(new HashMap<>(headers));
+            AssetCache.OriginResponse response = responses.poll();
+            if (response == null) {
+                throw new IOException("Unexpected request for " + url);
+            }
+            return response;
+        }
+    }
+
+    private static final class TrackingInputStream extends ByteArrayInputStream {
+        boolean closed;
+
+        TrackingInputStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,618 @@
+package com.example.webviewapp;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates reflection-free codecs for {@code @BridgeMessage} classes and registration code for
+ * {@code @BridgeHandler} methods
+ * For a message class Foo it writes Foo_BridgeCodec, which reads fields straight from a BridgeJsonReader and
+ * writes them into a StringBuilder. For a class declaring handlers it writes Foo_BridgeHandlers.register,
+ * which registers each method on a WebViewBridge with its payload decoded by the matching codec.
+ * Unsupported field types, inaccessible members and malformed handler signatures fail the build
+ */
+@SupportedAnnotationTypes({BridgeCodegenProcessor.MESSAGE, BridgeCodegenProcessor.HANDLER,
+        BridgeCodegenProcessor.FIELD})
+public final class BridgeCodegenProcessor extends AbstractProcessor {
+
+    static final String PACKAGE = "com.example.webviewapp";
+    static final String MESSAGE = PACKAGE + ".BridgeMessage";
+    static final String HANDLER = PACKAGE + ".BridgeHandler";
+    // Read while generating codecs; claimed so it is not reported as unprocessed
+    static final String FIELD = PACKAGE + ".BridgeField";
+    private static final String RESPONDER = PACKAGE + ".BridgeResponder";
+    private static final String BRIDGE = PACKAGE + ".WebViewBridge";
+    private static final String JSON_EXCEPTION = "org.json.JSONException";
+
+    private static final String CODEC_SUFFIX = "_BridgeCodec";
+    private static final String HANDLERS_SUFFIX = "_BridgeHandlers";
+
+    private Messager messager;
+    private boolean failed;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        messager = processingEnv.getMessager();
+        TypeElement messageAnnotation = processingEnv.getElementUtils().getTypeElement(MESSAGE);
+        TypeElement handlerAnnotation = processingEnv.getElementUtils().getTypeElement(HANDLER);
+        if (messageAnnotation != null) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(messageAnnotation)) {
+                generateCodec((TypeElement) element);
+            }
+        }
+        if (handlerAnnotation != null) {
+            Map<TypeElement, List<ExecutableElement>> handlers = new LinkedHashMap<>();
+            for (Element element : roundEnv.getElementsAnnotatedWith(handlerAnnotation)) {
+                TypeElement owner = (TypeElement) element.getEnclosingElement();
+                handlers.computeIfAbsent(owner, key -> new ArrayList<>()).add((ExecutableElement) element);
+            }
+            for (Map.Entry<TypeElement, List<ExecutableElement>> entry : handlers.entrySet()) {
+                generateHandlers(entry.getKey(), entry.getValue());
+            }
+        }
+        return true;
+    }
+
+    // Codecs
+
+    private void generateCodec(TypeElement type) {
+        failed = false;
+        checkInstantiable(type);
+        List<VariableElement> fields = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                error(field, "Message fields must not be private or final");
+                continue;
+            }
+            if (!names.add(jsonName(field))) {
+                error(field, "Duplicate JSON member \"" + jsonName(field) + "\"");
+            }
+            checkFieldType(field, field.asType());
+            fields.add(field);
+        }
+        if (failed) {
+            return;
+        }
+
+        String typeName = type.getQualifiedName().toString();
+        String codecName = generatedName(type, CODEC_SUFFIX);
+        StringBuilder src = new StringBuilder(2048);
+        header(src, type);
+        src.append("/**\n * Reads and writes {@link ").append(typeName).append("} as JSON, generated by BridgeCodegenProcessor\n */\n");
+        src.append(visibility(type)).append("final class ").append(codecName)
+                .append(" implements ").append(PACKAGE).append(".BridgeCodec<").append(typeName).append("> {\n\n");
+        src.append("    public static final ").append(codecName).append(" INSTANCE = new ").append(codecName).append("();\n\n");
+        src.append("    private ").append(codecName).append("() {\n    }\n\n");
+
+        src.append("    public static ").append(typeName).append(" fromJson(String json) throws ").append(JSON_EXCEPTION).append(" {\n");
+        src.append("        ").append(PACKAGE).append(".BridgeJsonReader reader = new ").append(PACKAGE)
+                .append(".BridgeJsonReader(json);\n");
+        src.append("        ").append(typeName).append(" value = INSTANCE.read(reader);\n");
+        // The whole text is one message, anything after it is malformed input
+        src.append("        reader.endInput();\n");
+        src.append("        return value;\n    }\n\n");
+        src.append("    public static String toJson(").append(typeName).append(" value) {\n");
+        src.append("        StringBuilder out = new StringBuilder();\n");
+        src.append("        INSTANCE.write(out, value);\n");
+        src.append("        return out.toString();\n    }\n\n");
+
+        // read
+        src.append("    @Override\n    public ").append(typeName).append(" read(").append(PACKAGE)
+                .append(".BridgeJsonReader reader) throws ").append(JSON_EXCEPTION).append(" {\n");
+        src.append("        if (reader.nextNull()) {\n            return null;\n        }\n");
+        src.append("        ").append(typeName).append(" value = new ").append(typeName).append("();\n");
+        for (int i = 0; i < fields.size(); i++) {
+            if (isRequired(fields.get(i))) {
+                src.append("        boolean seen").append(i).append(" = false;\n");
+            }
+        }
+        src.append("        reader.beginObject();\n");
+        src.append("        while (reader.hasNext()) {\n");
+        src.append("            switch (reader.nextName()) {\n");
+        int[] counter = {0};
+        for (int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            src.append("                case ").append(javaLiteral(jsonName(field))).append(":\n");
+            appendRead(src, "                    ", field.asType(), "value." + field.getSimpleName() + " = ", ";", counter);
+            if (isRequired(field)) {
+                src.append("                    seen").append(i).append(" = true;\n");
+            }
+            src.append("                    break;\n");
+        }
+        src.append("                default:\n                    reader.skipValue();\n                    break;\n");
+        src.append("            }\n        }\n");
+        src.append("        reader.endObject();\n");
+        for (int i = 0; i < fields.size(); i++) {
+            if (isRequired(fields.get(i))) {
+                src.append("        if (!seen").append(i).append(") {\n            throw new ").append(JSON_EXCEPTION)
+                        .append("(").append(javaLiteral("Missing required member \"" + jsonName(fields.get(i))
+                        + "\" of " + type.getSimpleName())).append(");\n        }\n");
+            }
+        }
+        src.append("        return value;\n    }\n\n");
+
+        // write
+        src.append("    @Override\n    public void write(StringBuilder out, ").append(typeName).append(" value) {\n");
+        src.append("        if (value == null) {\n            out.append(\"null\");\n            return;\n        }\n");
+        for (int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            String member = (i == 0 ? "{" : ",") + jsonLiteral(jsonName(field)) + ":";
+            src.append("        out.append(").append(javaLiteral(member)).append(");\n");
+            appendWrite(src, "        ", field.asType(), "value." + field.getSimpleName(), counter);
+        }
+        src.append("        out.append(").append(fields.isEmpty() ? "\"{}\"" : "'}'").append(");\n    }\n}\n");
+
+        write(type, codecName, src);
+    }
+
+    /**
+     * Append statements reading one value into prefix + expression + suffix
+     */
+    private void appendRead(StringBuilder src, String indent, TypeMirror type, String prefix, String suffix, int[] counter) {
+        TypeMirror element = listElement(type);
+        if (element == null) {
+            src.append(indent).append(prefix).append(readExpression(type)).append(suffix).append('\n');
+            return;
+        }
+        String list = "list" + counter[0]++;
+        src.append(indent).append("if (reader.nextNull()) {\n");
+        src.append(indent).append("    ").append(prefix).append("null").append(suffix).append('\n');
+        src.append(indent).append("} else {\n");
+        src.append(indent).append("    java.util.ArrayList<").append(boxed(element)).append("> ").append(list)
+                .append(" = new java.util.ArrayList<>();\n");
+        src.append(indent).append("    reader.beginArray();\n");
+        src.append(indent).append("    while (reader.hasNext()) {\n");
+        appendRead(src, indent + "        ", element, list + ".add(", ");", counter);
+        src.append(indent).append("    }\n");
+        src.append(indent).append("    reader.endArray();\n");
+        src.append(indent).append("    ").append(prefix).append(list).append(suffix).append('\n');
+        src.append(indent).append("}\n");
+    }
+
+    private String readExpression(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "reader.nextBoolean()";
+            case INT:
+                return "reader.nextInt()";
+            case LONG:
+                return "reader.nextLong()";
+            case FLOAT:
+                return "(float) reader.nextDouble()";
+            case DOUBLE:
+                return "reader.nextDouble()";
+            default:
+                break;
+        }
+        String name = erasure(type);
+        if (isMessage(type)) {
+            return codecReference(type) + ".INSTANCE.read(reader)";
+        }
+        String scalar;
+        switch (name) {
+            case "java.lang.String":
+                scalar = "reader.nextString()";
+                break;
+            case "java.lang.Boolean":
+                scalar = "reader.nextBoolean()";
+                break;
+            case "java.lang.Integer":
+                scalar = "reader.nextInt()";
+                break;
+            case "java.lang.Long":
+                scalar = "reader.nextLong()";
+                break;
+            case "java.lang.Float":
+                scalar = "(float) reader.nextDouble()";
+                break;
+            case "java.lang.Double":
+                scalar = "reader.nextDouble()";
+                break;
+            default:
+                scalar = "reader.nextEnum(" + name + ".class)";
+                break;
+        }
+        return "reader.nextNull() ? null : " + scalar;
+    }
+
+    private void appendWrite(StringBuilder src, String indent, TypeMirror type, String value, int[] counter) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case INT:
+            case LONG:
+                src.append(indent).append("out.append(").append(value).append(");\n");
+                return;
+            case FLOAT:
+            case DOUBLE:
+                src.append(indent).append(PACKAGE).append(".BridgeJsonWriter.appendDouble(out, ").append(value).append(");\n");
+                return;
+            default:
+                break;
+        }
+        TypeMirror element = listElement(type);
+        if (element != null) {
+            int id = counter[0]++;
+            src.append(indent).append("if (").append(value).append(" == null) {\n");
+            src.append(indent).append("    out.append(\"null\");\n");
+            src.append(indent).append("} else {\n");
+            src.append(indent).append("    out.append('[');\n");
+            src.append(indent).append("    boolean first").append(id).append(" = true;\n");
+            src.append(indent).append("    for (").append(boxed(element)).append(" item").append(id).append(" : ")
+                    .append(value).append(") {\n");
+            src.append(indent).append("        if (!first").append(id).append(") {\n");
+            src.append(indent).append("            out.append(',');\n");
+            src.append(indent).append("        }\n");
+            src.append(indent).append("        first").append(id).append(" = false;\n");
+            appendWrite(src, indent + "        ", element, "item" + id, counter);
+            src.append(indent).append("    }\n");
+            src.append(indent).append("    out.append(']');\n");
+            src.append(indent).append("}\n");
+            return;
+        }
+        if (isMessage(type)) {
+            src.append(indent).append(codecReference(type)).append(".INSTANCE.write(out, ").append(value).append(");\n");
+            return;
+        }
+        String name = erasure(type);
+        switch (name) {
+            case "java.lang.String":
+                src.append(indent).append(PACKAGE).append(".BridgeJsonWriter.appendString(out, ").append(value).append(");\n");
+                return;
+            case "java.lang.Float":
+            case "java.lang.Double":
+                src.append(indent).append("if (").append(value).append(" == null) {\n");
+                src.append(indent).append("    out.append(\"null\");\n");
+                src.append(indent).append("} else {\n");
+                src.append(indent).append("    ").append(PACKAGE).append(".BridgeJsonWriter.appendDouble(out, ")
+                        .append(value).append(");\n");
+                src.append(indent).append("}\n");
+                return;
+            case "java.lang.Boolean":
+            case "java.lang.Integer":
+            case "java.lang.Long":
+                // StringBuilder.append(Object) writes "null" for a null wrapper
+                src.append(indent).append("out.append((Object) ").append(value).append(");\n");
+                return;
+            default:
+                src.append(indent).append(PACKAGE).append(".BridgeJsonWriter.appendEnum(out, ").append(value).append(");\n");
+        }
+    }
+
+    private void checkFieldType(Element field, TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return;
+            case DECLARED:
+                break;
+            default:
+                error(field, "Unsupported message field type " + type);
+                return;
+        }
+        TypeMirror element = listElement(type);
+        if (element != null) {
+            if (element.getKind() == TypeKind.WILDCARD) {
+                error(field, "List fields need a concrete element type: " + type);
+            } else {
+                checkFieldType(field, element);
+            }
+            return;
+        }
+        switch (erasure(type)) {
+            case "java.lang.String":
+            case "java.lang.Boolean":
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Float":
+            case "java.lang.Double":
+                return;
+            default:
+                break;
+        }
+        Element typeElement = ((DeclaredType) type).asElement();
+        if (typeElement.getKind() == ElementKind.ENUM || isMessage(type)) {
+            return;
+        }
+        error(field, "Unsupported message field type " + type
+                + ": use a primitive, wrapper, String, enum, List or a @BridgeMessage class");
+    }
+
+    private void checkInstantiable(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(type, "@BridgeMessage must annotate a concrete class");
+            return;
+        }
+        checkAccessible(type);
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "Nested @BridgeMessage classes must be static");
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return;
+            }
+        }
+        error(type, "@BridgeMessage classes need a non-private no-argument constructor");
+    }
+
+    // Handlers
+
+    private void generateHandlers(TypeElement owner, List<ExecutableElement> methods) {
+        failed = false;
+        checkAccessible(owner);
+        Set<String> routes = new HashSet<>();
+        StringBuilder body = new StringBuilder(1024);
+        TypeMirror jsonException = typeOf(JSON_EXCEPTION);
+        TypeMirror runtimeException = typeOf("java.lang.RuntimeException");
+        TypeMirror error = typeOf("java.lang.Error");
+        for (ExecutableElement method : methods) {
+            String route = annotationValue(method, HANDLER, "value");
+            if (route == null || route.isEmpty()) {
+                error(method, "@BridgeHandler needs an event type");
+                continue;
+            }
+            if (!routes.add(route)) {
+                error(method, "Duplicate handler for \"" + route + "\"");
+            }
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+                error(method, "Handler methods must be instance methods that are not private");
+            }
+            List<? extends VariableElement> parameters = method.getParameters();
+            boolean hasResponder = parameters.size() == 2 && erasure(parameters.get(1).asType()).equals(RESPONDER);
+            if (parameters.isEmpty() || parameters.size() > 2 || (parameters.size() == 2 && !hasResponder)) {
+                error(method, "Handlers take a @BridgeMessage payload and optionally a BridgeResponder");
+                continue;
+            }
+            TypeMirror payload = parameters.get(0).asType();
+            if (!isMessage(payload)) {
+                error(parameters.get(0), "Handler payload " + payload + " is not a @BridgeMessage class");
+                continue;
+            }
+            TypeMirror result = method.getReturnType();
+            boolean returnsResult = result.getKind() != TypeKind.VOID;
+            if (returnsResult && !isMessage(result)) {
+                error(method, "Handlers return void or a @BridgeMessage class, not " + result);
+                continue;
+            }
+            for (TypeMirror thrown : method.getThrownTypes()) {
+                if (!isSubtype(thrown, jsonException) && !isSubtype(thrown, runtimeException) && !isSubtype(thrown, error)) {
+                    error(method, "Handlers may only throw JSONException or unchecked exceptions, not " + thrown);
+                }
+            }
+
+            body.append("        bridge.registerHandler(").append(javaLiteral(route)).append(", (event, responder) -> {\n");
+            body.append("            ").append(payload).append(" message = event.getData(")
+                    .append(codecReference(payload)).append(".INSTANCE);\n");
+            String call = "target." + method.getSimpleName() + "(message" + (hasResponder ? ", responder)" : ")");
+            if (returnsResult) {
+                body.append("            responder.resolve(").append(call).append(", ")
+                        .append(codecReference(result)).append(".INSTANCE);\n");
+            } else {
+                body.append("            ").append(call).append(";\n");
+                if (!hasResponder) {
+                    body.append("            responder.resolve(null);\n");
+                }
+            }
+            body.append("        });\n");
+        }
+        if (failed) {
+            return;
+        }
+
+        String ownerName = owner.getQualifiedName().toString();
+        String className = generatedName(owner, HANDLERS_SUFFIX);
+        StringBuilder src = new StringBuilder(body.length() + 512);
+        header(src, owner);
+        src.append("/**\n * Registers the @BridgeHandler methods of {@link ").append(ownerName)
+                .append("}, generated by BridgeCodegenProcessor\n */\n");
+        src.append(visibility(owner)).append("final class ").append(className).append(" {\n\n");
+        src.append("    private ").append(className).append("() {\n    }\n\n");
+        src.append("    /**\n     * Register every handler method of the target on the bridge, replacing previous handlers of the same routes\n     */\n");
+        src.append("    public static void register(").append(BRIDGE).append(" bridge, ").append(ownerName).append(" target) {\n");
+        src.append(body);
+        src.append("    }\n}\n");
+        write(owner, className, src);
+    }
+
+    // Helpers
+
+    private void header(StringBuilder src, TypeElement type) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        if (!packageName.isEmpty()) {
+            src.append("package ").append(packageName).append(";\n\n");
+        }
+    }
+
+    private void write(TypeElement origin, String simpleName, StringBuilder src) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(origin).getQualifiedName().toString();
+        String qualified = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualified, origin).openWriter()) {
+            writer.write(src.toString());
+        } catch (IOException e) {
+            error(origin, "Cannot write " + qualified + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return Outer_Inner + suffix, so nested classes get distinct top-level names
+     */
+    private static String generatedName(TypeElement type, String suffix) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append(suffix).toString();
+    }
+
+    private String codecReference(TypeMirror type) {
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+        String name = generatedName(element, CODEC_SUFFIX);
+        return packageName.isEmpty() ? name : packageName + "." + name;
+    }
+
+    private static String visibility(TypeElement type) {
+        return type.getModifiers().contains(Modifier.PUBLIC) ? "public " : "";
+    }
+
+    private void checkAccessible(TypeElement type) {
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                error(type, type.getSimpleName() + " must not be private or nested in a private class");
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Element type if the type is java.util.List, null otherwise
+     */
+    private static TypeMirror listElement(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED || !erasure(type).equals("java.util.List")) {
+            return null;
+        }
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        return arguments.size() == 1 ? arguments.get(0) : null;
+    }
+
+    private static String erasure(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.toString();
+        }
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+
+    private String boxed(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private static boolean isMessage(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && annotation(((DeclaredType) type).asElement(), MESSAGE) != null;
+    }
+
+    private static boolean isRequired(VariableElement field) {
+        return "true".equals(annotationValue(field, FIELD, "required"));
+    }
+
+    private static String jsonName(VariableElement field) {
+        String name = annotationValue(field, FIELD, "value");
+        return name == null || name.isEmpty() ? field.getSimpleName().toString() : name;
+    }
+
+    private static AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static String annotationValue(Element element, String annotationName, String member) {
+        AnnotationMirror mirror = annotation(element, annotationName);
+        if (mirror == null) {
+            return null;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(member)) {
+                return String.valueOf(entry.getValue().getValue());
+            }
+        }
+        return null;
+    }
+
+    private TypeMirror typeOf(String name) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(name);
+        return element != null ? element.asType() : null;
+    }
+
+    private boolean isSubtype(TypeMirror type, TypeMirror parent) {
+        return parent != null && processingEnv.getTypeUtils().isSubtype(type, parent);
+    }
+
+    /**
+     * @return JSON string literal of a member name
+     */
+    private static String jsonLiteral(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * @return Java string literal of a value
+     */
+    private static String javaLiteral(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private void error(Element element, String message) {
+        failed = true;
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
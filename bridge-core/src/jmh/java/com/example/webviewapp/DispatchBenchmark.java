@@ -0,0 +1,75 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound dispatch throughput: decode, route lookup and hand-off to the thread of the event type,
+ * measured until every handler has run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DispatchBenchmark {
+
+    private static final int MESSAGES = 1000;
+    private static final int EVENT_TYPES = 8;
+
+    @Param({"MAIN", "BACKGROUND", "SERIAL"})
+    public BridgeDispatcher.ThreadAffinity affinity;
+
+    private ExecutorService mainThread;
+    private ExecutorService backgroundPool;
+    private BridgeDispatcher dispatcher;
+    private final BridgeHandlerRegistry<Runnable> registry = new BridgeHandlerRegistry<>();
+    private final String[] messages = new String[EVENT_TYPES];
+    private volatile CountDownLatch done;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Stands in for the main looper
+        mainThread = Executors.newSingleThreadExecutor();
+        backgroundPool = Executors.newFixedThreadPool(4);
+        dispatcher = new BridgeDispatcher(mainThread, backgroundPool);
+        dispatcher.setDefaultAffinity(affinity);
+        String dataJson = Payloads.dataJson(256);
+        for (int i = 0; i < EVENT_TYPES; i++) {
+            messages[i] = Payloads.envelope("bench.event" + i, null, dataJson);
+        }
+        registry.register("bench.*", () -> done.countDown());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mainThread.shutdownNow();
+        backgroundPool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void decodeRouteDispatch() throws JSONException, InterruptedException {
+        CountDownLatch latch = new CountDownLatch(MESSAGES);
+        done = latch;
+        for (int i = 0; i < MESSAGES; i++) {
+            BridgeEnvelope envelope = BridgeEnvelopeDecoder.decode(messages[i % EVENT_TYPES]);
+            Runnable handler = registry.find(envelope.getEventType());
+            dispatcher.dispatch(envelope.getEventType(), handler);
+        }
+        latch.await();
+    }
+}
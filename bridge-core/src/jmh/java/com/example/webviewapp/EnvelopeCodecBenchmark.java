@@ -0,0 +1,63 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envelope encode and decode cost by payload size
+ * decodeEnvelope only locates the payload, decodeAndParse also builds the JSONObject a handler would read
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EnvelopeCodecBenchmark {
+
+    @Param({"64", "1024", "16384", "262144"})
+    public int payloadChars;
+
+    private String dataJson;
+    private String message;
+
+    @Setup
+    public void setUp() {
+        dataJson = Payloads.dataJson(payloadChars);
+        message = Payloads.envelope("media.level", "h42", dataJson);
+    }
+
+    @Benchmark
+    public int encodeEnvelope() {
+        StringBuilder out = JsLiteralEncoder.acquire();
+        JsLiteralEncoder.appendEnvelope(out, "media.level", null, dataJson, null);
+        int length = out.length();
+        JsLiteralEncoder.release(out);
+        return length;
+    }
+
+    @Benchmark
+    public BridgeEnvelope decodeEnvelope() throws JSONException {
+        return BridgeEnvelopeDecoder.decode(message);
+    }
+
+    @Benchmark
+    public JSONObject decodeAndParse() throws JSONException {
+        return BridgeEnvelopeDecoder.decode(message).getData();
+    }
+
+    /**
+     * Baseline: what parsing the whole message with org.json costs
+     */
+    @Benchmark
+    public JSONObject parseWithJsonObject() throws JSONException {
+        return new JSONObject(message);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.webviewapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one frame's worth of outbound traffic: queueing the messages and flushing them as one batch
+ * Reported per batch; divide by batchSize for the per-message cost
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlushBenchmark {
+
+    @Param({"1", "16", "128"})
+    public int batchSize;
+
+    @Param({"256", "4096"})
+    public int payloadChars;
+
+    @Param({"false", "true"})
+    public boolean coalesced;
+
+    private BridgeMetrics metrics;
+    private OutboundMessageQueue queue;
+    private OutboundBatcher batcher;
+    private String dataJson;
+    private final String[] mergeKeys = new String[8];
+
+    @Setup
+    public void setUp() {
+        metrics = new BridgeMetrics();
+        queue = new OutboundMessageQueue((message, merged) -> metrics.addQueueDepth(-1));
+        batcher = new OutboundBatcher(queue, metrics);
+        dataJson = Payloads.dataJson(payloadChars);
+        for (int i = 0; i < mergeKeys.length; i++) {
+            mergeKeys[i] = "progress#" + i;
+        }
+    }
+
+    @Benchmark
+    public int offerAndFlush(Blackhole blackhole) {
+        for (int i = 0; i < batchSize; i++) {
+            metrics.addQueueDepth(1);
+            queue.offer(new OutboundMessageQueue.Message("progress", dataJson, OutboundMessageQueue.PRIORITY_NORMAL,
+                    coalesced ? mergeKeys[i % mergeKeys.length] : null));
+        }
+        return batcher.flush(new BlackholeTransport(blackhole), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Consumes the batch text without delivering it anywhere
+     */
+    private static final class BlackholeTransport implements BridgeTransport {
+        private final Blackhole blackhole;
+
+        BlackholeTransport(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public String getName() {
+            return "blackhole";
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void beginBatch(StringBuilder out) {
+            out.append('[');
+        }
+
+        @Override
+        public void endBatch(StringBuilder out) {
+            out.append(']');
+        }
+
+        @Override
+        public void send(String batch, int count) {
+            blackhole.consume(batch);
+        }
+    }
+}
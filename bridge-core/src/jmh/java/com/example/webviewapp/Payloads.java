@@ -0,0 +1,35 @@
+package com.example.webviewapp;
+
+/**
+ * Synthetic message payloads shaped like real bridge traffic
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * @param chars Approximate payload size
+     * @return JSON object with a few scalar fields and a string field padded to the requested size,
+     *         including characters that need escaping
+     */
+    static String dataJson(int chars) {
+        StringBuilder sb = new StringBuilder(chars + 64);
+        sb.append("{\"id\":12345,\"ok\":true,\"level\":0.75,\"text\":\"");
+        int i = 0;
+        while (sb.length() < chars - 2) {
+            sb.append(i % 64 == 63 ? "\\n" : i % 97 == 96 ? "\\u00e9" : "x");
+            i++;
+        }
+        return sb.append("\"}").toString();
+    }
+
+    /**
+     * @return H5-to-native message text around a payload
+     */
+    static String envelope(String eventType, String callId, String dataJson) {
+        StringBuilder sb = new StringBuilder(dataJson.length() + 64);
+        JsLiteralEncoder.appendEnvelope(sb, eventType, callId, dataJson, null);
+        return sb.toString();
+    }
+}
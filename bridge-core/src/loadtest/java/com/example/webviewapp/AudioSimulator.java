@@ -0,0 +1,238 @@
+package com.example.webviewapp;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the audio capture pipeline on synthetic PCM on a plain JVM
+ * A {@link SyntheticAudioSource} alternates voiced bursts with background noise. A sender thread drains
+ * frames and formats them into audio.frame payloads the way the bridge does. Reports voice activity recall
+ * and precision against the known signal, frames dropped by a slow sender, bandwidth, and the bytes the
+ * capture thread allocated once warmed up. Exits with status 1 when a limit is exceeded.
+ *
+ * Options (defaults in brackets):
+ * --duration s            seconds of audio [30]
+ * --sample-rate n         samples per second [16000]
+ * --frame-ms n            frame length [20]
+ * --ring n                frames the sender may fall behind [64]
+ * --speech-ms n           length of each voiced burst [1200]
+ * --silence-ms n          length of the noise between bursts [800]
+ * --speech-db n           peak burst level in dBFS [-20]
+ * --noise-db n            RMS noise level in dBFS [-55]
+ * --sender-us n           simulated bridge cost per frame on the sender thread [0]
+ * --warmup-ms n           audio time before allocations are counted [5000]
+ * --realtime              deliver samples at the sample rate instead of as fast as possible
+ * --no-gate               send every frame instead of speech only
+ * --max-alloc-per-frame n fail if the warmed-up capture thread allocates more bytes per frame, -1 for no limit [-1]
+ * --min-recall n          fail if less than this fraction of voiced frames is sent, 0 for no limit [0]
+ */
+public final class AudioSimulator {
+
+    private long durationSeconds = 30;
+    private int sampleRate = 16000;
+    private int frameMs = 20;
+    private int ringFrames = 64;
+    private long speechMs = 1200;
+    private long silenceMs = 800;
+    private double speechDb = -20;
+    private double noiseDb = -55;
+    private long senderMicros;
+    private long warmupMs = 5000;
+    private boolean realTime;
+    private boolean gated = true;
+    private double maxAllocPerFrame = -1;
+    private double minRecall;
+
+    // Sender thread only
+    private final StringBuilder payload = new StringBuilder(1024);
+    private long sentFrames;
+    private long sentChars;
+    private long sentSpeechFrames;
+    private long sentTrueSpeechFrames;
+    private final LogHistogram latencyNanos = new LogHistogram();
+
+    private volatile boolean framesAvailable;
+    private volatile Thread sender;
+
+    public static void main(String[] args) throws Exception {
+        AudioSimulator simulator = new AudioSimulator();
+        simulator.parse(args);
+        System.exit(simulator.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if ("--realtime".equals(name)) {
+                realTime = true;
+                continue;
+            }
+            if ("--no-gate".equals(name)) {
+                gated = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--duration": durationSeconds = Long.parseLong(value); break;
+                case "--sample-rate": sampleRate = Integer.parseInt(value); break;
+                case "--frame-ms": frameMs = Integer.parseInt(value); break;
+                case "--ring": ringFrames = Integer.parseInt(value); break;
+                case "--speech-ms": speechMs = Long.parseLong(value); break;
+                case "--silence-ms": silenceMs = Long.parseLong(value); break;
+                case "--speech-db": speechDb = Double.parseDouble(value); break;
+                case "--noise-db": noiseDb = Double.parseDouble(value); break;
+                case "--sender-us": senderMicros = Long.parseLong(value); break;
+                case "--warmup-ms": warmupMs = Long.parseLong(value); break;
+                case "--max-alloc-per-frame": maxAllocPerFrame = Double.parseDouble(value); break;
+                case "--min-recall": minRecall = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+    }
+
+    /**
+     * @return true if every limit was met
+     */
+    private boolean run() throws InterruptedException {
+        SyntheticAudioSource source = new SyntheticAudioSource(sampleRate, TimeUnit.SECONDS.toMillis(durationSeconds),
+                speechMs, silenceMs, speechDb, noiseDb, realTime, warmupMs);
+        int frameSamples = sampleRate * frameMs / 1000;
+        CountDownLatch stopped = new CountDownLatch(1);
+        AtomicReference<String> stopReason = new AtomicReference<>();
+        AudioCapturePipeline pipeline = new AudioCapturePipeline(source, frameSamples, ringFrames,
+                new VoiceActivityDetector(), gated, new AudioCapturePipeline.Listener() {
+                    @Override
+                    public void onFramesAvailable() {
+                        framesAvailable = true;
+                        LockSupport.unpark(sender);
+                    }
+
+                    @Override
+                    public void onSpeechChanged(boolean speech) {
+                    }
+
+                    @Override
+                    public void onStopped(String reason, Exception error) {
+                        if (error != null) {
+                            error.printStackTrace();
+                        }
+                        stopReason.set(reason);
+                        stopped.countDown();
+                        LockSupport.unpark(sender);
+                    }
+                });
+
+        long senderNanos = TimeUnit.MICROSECONDS.toNanos(senderMicros);
+        long[] startNanos = {0};
+        AudioCapturePipeline.FrameConsumer consumer = frame -> {
+            payload.setLength(0);
+            payload.append("{\"sessionId\":\"sim\",\"seq\":").append(frame.getSeq())
+                    .append(",\"timestamp\":").append(frame.getTimestampMs())
+                    .append(",\"speech\":").append(frame.isSpeech())
+                    .append(",\"data\":");
+            BridgeJsonWriter.appendBase64(payload, frame.getData(), 0, frame.getLength());
+            payload.append('}');
+            sentFrames++;
+            sentChars += payload.length();
+            if (frame.isSpeech()) {
+                sentSpeechFrames++;
+            }
+            if (source.isSpeech(frame.getSeq() * frameSamples + frameSamples / 2)) {
+                sentTrueSpeechFrames++;
+            }
+            if (realTime) {
+                long capturedAt = startNanos[0] + TimeUnit.MILLISECONDS.toNanos(frame.getTimestampMs() + frameMs);
+                latencyNanos.record(Math.max(0, System.nanoTime() - capturedAt));
+            }
+            if (senderNanos > 0) {
+                LockSupport.parkNanos(senderNanos);
+            }
+        };
+
+        sender = new Thread(() -> {
+            while (true) {
+                boolean done = stopped.getCount() == 0;
+                if (framesAvailable) {
+                    framesAvailable = false;
+                    pipeline.drain(consumer, Integer.MAX_VALUE);
+                } else if (done) {
+                    // Frames published before the pipeline stopped
+                    pipeline.drain(consumer, Integer.MAX_VALUE);
+                    return;
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }, "sim-audio-sender");
+        sender.setDaemon(true);
+        sender.start();
+
+        long start = System.nanoTime();
+        startNanos[0] = start;
+        pipeline.start("sim-audio-capture");
+        stopped.await();
+        sender.join();
+        long elapsed = System.nanoTime() - start;
+        return report(pipeline, source, frameSamples, stopReason.get(), elapsed);
+    }
+
+    private boolean report(AudioCapturePipeline pipeline, SyntheticAudioSource source, int frameSamples,
+                           String reason, long elapsedNanos) {
+        long captured = pipeline.getCapturedFrames();
+        long trueSpeech = 0;
+        for (long seq = 0; seq < captured; seq++) {
+            if (source.isSpeech(seq * frameSamples + frameSamples / 2)) {
+                trueSpeech++;
+            }
+        }
+        double audioSeconds = (double) captured * frameSamples / sampleRate;
+        double recall = trueSpeech > 0 ? (double) sentTrueSpeechFrames / trueSpeech : 1;
+        double precision = sentSpeechFrames > 0 ? (double) sentTrueSpeechFrames / sentFrames : 1;
+        // Continuous 16-bit PCM as base64, what an ungated uncompressed stream would send
+        double rawChars = captured * (double) ((frameSamples * 2 + 2) / 3 * 4);
+
+        System.out.printf(Locale.US, "Capture: %.1f s of audio in %.2f s (%.0fx real time), ended: %s%n",
+                audioSeconds, elapsedNanos / 1e9, audioSeconds / (elapsedNanos / 1e9), reason);
+        System.out.printf(Locale.US, "Frames: captured %d, speech %d, sent %d, dropped %d%n",
+                captured, pipeline.getSpeechFrames(), sentFrames, pipeline.getDroppedFrames());
+        System.out.printf(Locale.US, "Voice activity: recall %.3f, precision %.3f (%d voiced frames in the signal)%n",
+                recall, precision, trueSpeech);
+        System.out.printf(Locale.US, "Bandwidth: %.1f KB/s sent, %.1f%% of raw PCM%n",
+                sentChars / audioSeconds / 1024, rawChars > 0 ? 100 * sentChars / rawChars : 0);
+        if (realTime) {
+            System.out.printf(Locale.US, "  capture to send    p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    latencyNanos.getPercentile(0.5) / 1e6, latencyNanos.getPercentile(0.99) / 1e6,
+                    latencyNanos.getMax() / 1e6);
+        }
+        long allocated = source.getSteadyStateAllocatedBytes();
+        long warmedFrames = captured - warmupMs * sampleRate / 1000 / frameSamples;
+        double perFrame = allocated >= 0 && warmedFrames > 0 ? (double) allocated / warmedFrames : -1;
+        if (perFrame >= 0) {
+            System.out.printf(Locale.US, "Capture thread allocations after warmup: %d bytes (%.2f per frame)%n",
+                    allocated, perFrame);
+        } else {
+            System.out.println("Capture thread allocations after warmup: unknown");
+        }
+
+        boolean passed = true;
+        if (maxAllocPerFrame >= 0 && perFrame > maxAllocPerFrame) {
+            System.out.printf(Locale.US, "FAILED: %.2f bytes allocated per frame exceeds %.2f%n", perFrame, maxAllocPerFrame);
+            passed = false;
+        }
+        if (minRecall > 0 && recall < minRecall) {
+            System.out.printf(Locale.US, "FAILED: voice activity recall %.3f below %.3f%n", recall, minRecall);
+            passed = false;
+        }
+        if (AudioCapturePipeline.REASON_ERROR.equals(reason)) {
+            System.out.println("FAILED: capture ended with an error");
+            passed = false;
+        }
+        return passed;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.webviewapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for evaluateJavascript delivery to a page
+ * Batches are parsed on a renderer thread that spends a configurable time per batch and per message,
+ * then the result callback is posted back to the simulated main thread, like WebView does. Reports itself
+ * busy with the same in-flight limit as the real transport, so backpressure and coalescing kick in
+ * when the simulated page falls behind
+ */
+final class FakeWebViewTransport implements BridgeTransport {
+
+    private static final int MAX_IN_FLIGHT = 2;
+
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sim-renderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService mainThread;
+    private final Runnable onIdle;
+    private final long batchCostNanos;
+    private final long messageCostNanos;
+
+    // Main thread only
+    private int inFlight;
+
+    final LogHistogram deliveryNanos = new LogHistogram();
+    final LogHistogram criticalDeliveryNanos = new LogHistogram();
+    final LogHistogram roundTripNanos = new LogHistogram();
+    final AtomicLong delivered = new AtomicLong();
+    final AtomicLong deliveredChars = new AtomicLong();
+
+    /**
+     * @param mainThread Simulated main thread, receives the result callbacks
+     * @param onIdle Runs on the main thread when a callback ends a busy period
+     * @param batchCostMicros Simulated script evaluation overhead per batch
+     * @param messageCostMicros Simulated page handler time per message
+     */
+    FakeWebViewTransport(ExecutorService mainThread, Runnable onIdle, long batchCostMicros, long messageCostMicros) {
+        this.mainThread = mainThread;
+        this.onIdle = onIdle;
+        this.batchCostNanos = TimeUnit.MICROSECONDS.toNanos(batchCostMicros);
+        this.messageCostNanos = TimeUnit.MICROSECONDS.toNanos(messageCostMicros);
+    }
+
+    @Override
+    public String getName() {
+        return "fakeWebView";
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public boolean isBusy() {
+        return inFlight >= MAX_IN_FLIGHT;
+    }
+
+    @Override
+    public void beginBatch(StringBuilder out) {
+        out.append('[');
+    }
+
+    @Override
+    public void endBatch(StringBuilder out) {
+        out.append(']');
+    }
+
+    @Override
+    public void send(String batch, int count) {
+        long sentAt = System.nanoTime();
+        inFlight++;
+        renderer.execute(() -> {
+            evaluate(batch);
+            mainThread.execute(() -> {
+                roundTripNanos.record(System.nanoTime() - sentAt);
+                if (inFlight-- == MAX_IN_FLIGHT) {
+                    onIdle.run();
+                }
+            });
+        });
+    }
+
+    private void evaluate(String batch) {
+        long start = System.nanoTime();
+        JSONArray messages;
+        try {
+            messages = new JSONArray(batch);
+        } catch (JSONException e) {
+            throw new IllegalStateException("Malformed batch", e);
+        }
+        long busyUntil = start + batchCostNanos + messageCostNanos * messages.length();
+        for (int i = 0; i < messages.length(); i++) {
+            JSONObject message = messages.optJSONObject(i);
+            JSONObject data = message.optJSONObject("data");
+            if (data != null && data.has(LoadSimulator.KEY_SENT_AT)) {
+                long latency = System.nanoTime() - data.optLong(LoadSimulator.KEY_SENT_AT);
+                deliveryNanos.record(latency);
+                if (LoadSimulator.EVENT_CRITICAL.equals(message.optString("eventType"))) {
+                    criticalDeliveryNanos.record(latency);
+                }
+            }
+        }
+        delivered.addAndGet(messages.length());
+        deliveredChars.addAndGet(batch.length());
+        long remaining = busyUntil - System.nanoTime();
+        if (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    void resetStatistics() {
+        deliveryNanos.reset();
+        criticalDeliveryNanos.reset();
+        roundTripNanos.reset();
+        delivered.set(0);
+        deliveredChars.set(0);
+    }
+
+    void shutdown() {
+        renderer.shutdownNow();
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-threaded load simulation of the bridge core on a plain JVM
+ * Producer threads post native-to-H5 messages at a fixed rate through the same queue, batching and frame
+ * flush scheduling as the bridge, delivered to a {@link FakeWebViewTransport}. H5-to-native traffic is
+ * decoded, routed and dispatched by a {@link BridgeDispatcher}. Reports throughput and tail latency in both
+ * directions and exits with status 1 when a latency limit is exceeded, so it can gate CI.
+ *
+ * Options (defaults in brackets):
+ * --producers n           native threads posting messages [4]
+ * --rate n                messages per second per producer [2000]
+ * --inbound-rate n        H5 messages per second [2000]
+ * --duration s            seconds of measured traffic [10]
+ * --warmup s              seconds of traffic before measuring, lets the JIT settle [2]
+ * --payload n             payload size in chars [256]
+ * --coalesce              producers post latest-value messages, one key per producer
+ * --critical-every n      one high priority message every n messages per producer, 0 for none [100]
+ * --render-batch-us n     simulated page cost per batch [200]
+ * --render-message-us n   simulated page cost per message [5]
+ * --max-p99-ms n          fail if outbound p99 delivery latency exceeds n ms, 0 for no limit [0]
+ * --max-critical-p99-ms n fail if high priority p99 delivery latency exceeds n ms, 0 for no limit [0]
+ * --max-inbound-p99-ms n  fail if inbound p99 dispatch latency exceeds n ms, 0 for no limit [0]
+ */
+public final class LoadSimulator {
+
+    static final String KEY_SENT_AT = "sentAt";
+    static final String EVENT_CRITICAL = "sim.critical";
+    private static final String EVENT_PREFIX = "sim.";
+
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final int LOW_PRIORITY_BATCH_LIMIT = 32;
+
+    private int producers = 4;
+    private long rate = 2000;
+    private long inboundRate = 2000;
+    private long durationSeconds = 10;
+    private long warmupSeconds = 2;
+    private int payloadChars = 256;
+    private boolean coalesce;
+    private int criticalEvery = 100;
+    private long renderBatchMicros = 200;
+    private long renderMessageMicros = 5;
+    private double maxP99Millis;
+    private double maxCriticalP99Millis;
+    private double maxInboundP99Millis;
+
+    private final BridgeMetrics metrics = new BridgeMetrics();
+    private final OutboundMessageQueue queue = new OutboundMessageQueue(this::onDiscard);
+    private final OutboundBatcher batcher = new OutboundBatcher(queue, metrics);
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicBoolean frameFlushScheduled = new AtomicBoolean();
+    private final LogHistogram inboundNanos = new LogHistogram();
+    private final AtomicLong inboundHandled = new AtomicLong();
+
+    // Stands in for the main looper, frame callbacks and evaluateJavascript results run on it
+    private final ScheduledExecutorService mainThread = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sim-main");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FakeWebViewTransport transport;
+
+    public static void main(String[] args) throws Exception {
+        LoadSimulator simulator = new LoadSimulator();
+        simulator.parse(args);
+        System.exit(simulator.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if ("--coalesce".equals(name)) {
+                coalesce = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--producers": producers = Integer.parseInt(value); break;
+                case "--rate": rate = Long.parseLong(value); break;
+                case "--inbound-rate": inboundRate = Long.parseLong(value); break;
+                case "--duration": durationSeconds = Long.parseLong(value); break;
+                case "--warmup": warmupSeconds = Long.parseLong(value); break;
+                case "--payload": payloadChars = Integer.parseInt(value); break;
+                case "--critical-every": criticalEvery = Integer.parseInt(value); break;
+                case "--render-batch-us": renderBatchMicros = Long.parseLong(value); break;
+                case "--render-message-us": renderMessageMicros = Long.parseLong(value); break;
+                case "--max-p99-ms": maxP99Millis = Double.parseDouble(value); break;
+                case "--max-critical-p99-ms": maxCriticalP99Millis = Double.parseDouble(value); break;
+                case "--max-inbound-p99-ms": maxInboundP99Millis = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+    }
+
+    /**
+     * @return true if every latency limit was met
+     */
+    private boolean run() throws InterruptedException {
+        transport = new FakeWebViewTransport(mainThread, () -> {
+            if (!queue.isEmpty()) {
+                scheduleFrameFlush();
+            }
+        }, renderBatchMicros, renderMessageMicros);
+        ExecutorService background = Executors.newFixedThreadPool(4);
+        BridgeDispatcher dispatcher = new BridgeDispatcher(mainThread, background);
+        BridgeHandlerRegistry<Runnable> registry = new BridgeHandlerRegistry<>();
+        registry.register(EVENT_PREFIX + "*", () -> { });
+
+        System.out.printf(Locale.US, "Simulating %d producers x %d msg/s, %d inbound msg/s, %d s, payload %d chars%s%n",
+                producers, rate, inboundRate, durationSeconds, payloadChars, coalesce ? ", coalesced" : "");
+        AtomicBoolean running = new AtomicBoolean(true);
+        ArrayList<Thread> threads = new ArrayList<>();
+        String padding = padding(payloadChars);
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(paced("sim-producer-" + p, rate, running, n -> post(producer, n, padding)));
+        }
+        if (inboundRate > 0) {
+            threads.add(paced("sim-h5", inboundRate, running, n -> receive(n, padding, dispatcher, registry)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        resetStatistics();
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        // Let the page catch up with what is still queued
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!queue.isEmpty() && System.nanoTime() < drainDeadline) {
+            scheduleFrameFlush();
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+
+        boolean passed = report(elapsed);
+        transport.shutdown();
+        mainThread.shutdownNow();
+        background.shutdownNow();
+        return passed;
+    }
+
+    private void resetStatistics() {
+        metrics.reset();
+        transport.resetStatistics();
+        inboundNanos.reset();
+        inboundHandled.set(0);
+        posted.set(0);
+    }
+
+    private void post(int producer, long n, String padding) {
+        boolean critical = criticalEvery > 0 && n % criticalEvery == criticalEvery - 1;
+        String eventType = critical ? EVENT_CRITICAL : EVENT_PREFIX + "status" + producer;
+        StringBuilder data = new StringBuilder(padding.length() + 64);
+        data.append("{\"").append(KEY_SENT_AT).append("\":").append(System.nanoTime())
+                .append(",\"seq\":").append(n).append(",\"pad\":\"").append(padding).append("\"}");
+        OutboundMessageQueue.Message message = new OutboundMessageQueue.Message(eventType, data.toString(),
+                critical ? OutboundMessageQueue.PRIORITY_HIGH : OutboundMessageQueue.PRIORITY_NORMAL,
+                coalesce && !critical ? eventType : null, !critical);
+        posted.incrementAndGet();
+        metrics.addQueueDepth(1);
+        boolean wasEmpty = queue.offer(message);
+        if (critical) {
+            mainThread.execute(this::flush);
+        } else if (wasEmpty) {
+            scheduleFrameFlush();
+        }
+    }
+
+    private void receive(long n, String padding, BridgeDispatcher dispatcher, BridgeHandlerRegistry<Runnable> registry) {
+        String eventType = EVENT_PREFIX + "input" + (n % 4);
+        StringBuilder message = new StringBuilder(padding.length() + 64);
+        JsLiteralEncoder.appendEnvelope(message, eventType, null,
+                "{\"seq\":" + n + ",\"pad\":\"" + padding + "\"}", null);
+        long receivedAt = System.nanoTime();
+        try {
+            BridgeEnvelope envelope = BridgeEnvelopeDecoder.decode(message.toString());
+            Runnable handler = registry.find(envelope.getEventType());
+            dispatcher.dispatch(envelope.getEventType(), () -> {
+                handler.run();
+                inboundNanos.record(System.nanoTime() - receivedAt);
+                inboundHandled.incrementAndGet();
+            });
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void scheduleFrameFlush() {
+        if (frameFlushScheduled.compareAndSet(false, true)) {
+            // Next vsync of the simulated main thread
+            long delay = FRAME_NANOS - System.nanoTime() % FRAME_NANOS;
+            mainThread.schedule(() -> {
+                frameFlushScheduled.set(false);
+                flush();
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        if (batcher.flush(transport, LOW_PRIORITY_BATCH_LIMIT) > 0 && !transport.isBusy() && !queue.isEmpty()) {
+            scheduleFrameFlush();
+        }
+    }
+
+    private void onDiscard(OutboundMessageQueue.Message message, boolean merged) {
+        metrics.addQueueDepth(-1);
+        if (merged) {
+            metrics.recordMerged(message.eventType);
+        } else {
+            metrics.recordDropped(message.eventType);
+        }
+    }
+
+    private boolean report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf(Locale.US, "Outbound: posted %d, delivered %d (%.0f msg/s, %.1f MB/s), merged %d, dropped %d%n",
+                posted.get(), transport.delivered.get(), transport.delivered.get() / seconds,
+                transport.deliveredChars.get() / seconds / 1e6, metrics.getMergedCount(), metrics.getDroppedCount());
+        System.out.println("  delivery latency   " + format(transport.deliveryNanos));
+        System.out.println("  high priority      " + format(transport.criticalDeliveryNanos));
+        System.out.println("  batch round trip   " + format(transport.roundTripNanos));
+        System.out.printf(Locale.US, "Inbound: dispatched %d (%.0f msg/s)%n",
+                inboundHandled.get(), inboundHandled.get() / seconds);
+        System.out.println("  dispatch latency   " + format(inboundNanos));
+        System.out.println(metrics.dump());
+
+        boolean passed = check("outbound p99", transport.deliveryNanos, maxP99Millis);
+        passed &= check("high priority p99", transport.criticalDeliveryNanos, maxCriticalP99Millis);
+        passed &= check("inbound p99", inboundNanos, maxInboundP99Millis);
+        return passed;
+    }
+
+    private static boolean check(String name, LogHistogram histogram, double limitMillis) {
+        if (limitMillis <= 0 || histogram.getCount() == 0) {
+            return true;
+        }
+        double p99 = histogram.getPercentile(0.99) / 1e6;
+        if (p99 > limitMillis) {
+            System.out.printf(Locale.US, "FAILED: %s %.2f ms exceeds %.2f ms%n", name, p99, limitMillis);
+            return false;
+        }
+        return true;
+    }
+
+    private static String format(LogHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "-";
+        }
+        return String.format(Locale.US, "p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms (n=%d)",
+                histogram.getPercentile(0.5) / 1e6, histogram.getPercentile(0.99) / 1e6,
+                histogram.getPercentile(0.999) / 1e6, histogram.getMax() / 1e6, histogram.getCount());
+    }
+
+    private static String padding(int chars) {
+        StringBuilder sb = new StringBuilder(chars);
+        for (int i = 0; i < chars; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Thread calling the action at a fixed rate, catching up on missed slots instead of drifting
+     */
+    private static Thread paced(String name, long perSecond, AtomicBoolean running, PacedAction action) {
+        long interval = 1_000_000_000L / Math.max(1, perSecond);
+        Thread thread = new Thread(() -> {
+            long next = System.nanoTime();
+            for (long n = 0; running.get(); n++) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                action.run(n);
+                next += interval;
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private interface PacedAction {
+        void run(long n);
+    }
+}
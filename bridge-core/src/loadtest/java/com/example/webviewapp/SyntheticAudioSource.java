@@ -0,0 +1,143 @@
+package com.example.webviewapp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic PCM alternating voiced bursts and background noise, standing in for a microphone
+ * Bursts are a few harmonics under a syllable-rate envelope, noise comes from a linear congruential
+ * generator, so the signal is reproducible and generating it allocates nothing. In real time mode reads
+ * block until the samples would have been recorded, like AudioRecord
+ */
+final class SyntheticAudioSource implements AudioSource {
+
+    private static final double[] HARMONICS = {180, 360, 720, 1440};
+
+    private final int sampleRate;
+    private final long totalSamples;
+    private final long speechSamples;
+    private final long cycleSamples;
+    private final double speechAmplitude;
+    private final double noiseAmplitude;
+    private final boolean realTime;
+
+    private long position;
+    private long seed = 0x2545F4914F6CDD1DL;
+    private long startNanos;
+    private volatile boolean stopped;
+
+    // Bytes allocated by the capture thread, sampled from within read
+    private long allocatedAtMark = -1;
+    private long allocatedAtEnd = -1;
+    private final long markSample;
+
+    /**
+     * @param sampleRate Samples per second
+     * @param durationMs Length of the signal, the source ends afterwards
+     * @param speechMs Length of each voiced burst
+     * @param silenceMs Length of the noise between bursts
+     * @param speechDb Peak burst level in dBFS
+     * @param noiseDb RMS noise level in dBFS
+     * @param realTime true to deliver samples at the sample rate, false as fast as they are read
+     * @param warmupMs Audio time after which capture thread allocations are counted
+     */
+    SyntheticAudioSource(int sampleRate, long durationMs, long speechMs, long silenceMs, double speechDb,
+                         double noiseDb, boolean realTime, long warmupMs) {
+        this.sampleRate = sampleRate;
+        this.totalSamples = durationMs * sampleRate / 1000;
+        this.speechSamples = speechMs * sampleRate / 1000;
+        this.cycleSamples = (speechMs + silenceMs) * sampleRate / 1000;
+        this.speechAmplitude = 32767 * Math.pow(10, speechDb / 20) / HARMONICS.length;
+        this.noiseAmplitude = 32767 * Math.pow(10, noiseDb / 20) * Math.sqrt(3);
+        this.realTime = realTime;
+        this.markSample = warmupMs * sampleRate / 1000;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        if (stopped || position >= totalSamples) {
+            allocatedAtEnd = Allocations.currentThread();
+            return -1;
+        }
+        if (allocatedAtMark < 0 && position >= markSample) {
+            allocatedAtMark = Allocations.currentThread();
+        }
+        int count = (int) Math.min(length, totalSamples - position);
+        if (realTime) {
+            long due = startNanos + TimeUnit.SECONDS.toNanos(position + count) / sampleRate;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            long n = position + i;
+            double sample = noise();
+            if (isSpeech(n)) {
+                long inBurst = n % cycleSamples;
+                // Syllable-rate envelope, rising from zero at the start of each burst
+                double envelope = 0.6 + 0.4 * Math.sin(2 * Math.PI * 4 * inBurst / sampleRate - Math.PI / 2);
+                double t = (double) n / sampleRate;
+                for (double frequency : HARMONICS) {
+                    sample += speechAmplitude * envelope * Math.sin(2 * Math.PI * frequency * t);
+                }
+            }
+            buffer[offset + i] = (short) Math.max(-32768, Math.min(32767, Math.round(sample)));
+        }
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return true if the sample at this index belongs to a voiced burst
+     */
+    boolean isSpeech(long sample) {
+        return sample % cycleSamples < speechSamples;
+    }
+
+    /**
+     * @return Bytes the capture thread allocated between the end of the warmup and the end of the signal, -1 if unknown
+     */
+    long getSteadyStateAllocatedBytes() {
+        if (allocatedAtMark < 0 || allocatedAtEnd < 0) {
+            return -1;
+        }
+        return allocatedAtEnd - allocatedAtMark;
+    }
+
+    private double noise() {
+        seed = seed * 6364136223846793005L + 1442695040888963407L;
+        // Uniform in [-1, 1), scaled to the requested RMS level
+        return ((seed >>> 11) * 0x1.0p-53 * 2 - 1) * noiseAmplitude;
+    }
+
+    /**
+     * Per-thread allocation counter of HotSpot JVMs
+     */
+    private static final class Allocations {
+        private static final java.lang.management.ThreadMXBean BEAN =
+                java.lang.management.ManagementFactory.getThreadMXBean();
+
+        static long currentThread() {
+            if (BEAN instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return -1;
+        }
+    }
+}
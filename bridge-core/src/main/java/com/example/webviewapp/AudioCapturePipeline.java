@@ -0,0 +1,220 @@
+package com.example.webviewapp;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Capture thread turning PCM from an {@link AudioSource} into encoded frames for the bridge
+ * Each frame of a fixed number of samples is classified by the voice activity detector, dropped while
+ * gated silence, mu-law encoded into a frame of the {@link AudioFrameRing} and published to the sender.
+ * The capture loop reuses one PCM buffer and the ring's frames, so it allocates nothing per frame and
+ * never waits for the sender: frames that find the ring full are counted as dropped
+ */
+public final class AudioCapturePipeline {
+
+    public static final String REASON_STOPPED = "stopped";
+    public static final String REASON_END_OF_INPUT = "end_of_input";
+    public static final String REASON_ERROR = "error";
+
+    /**
+     * Capture events, called on the capture thread
+     */
+    public interface Listener {
+        /**
+         * Frames are waiting; called once until the next {@link #drain}, which must not run on the capture thread
+         */
+        void onFramesAvailable();
+
+        void onSpeechChanged(boolean speech);
+
+        /**
+         * Last callback of the pipeline
+         * @param reason {@link #REASON_STOPPED}, {@link #REASON_END_OF_INPUT} or {@link #REASON_ERROR}
+         * @param error Failure for {@link #REASON_ERROR}, null otherwise
+         */
+        void onStopped(String reason, Exception error);
+    }
+
+    /**
+     * Receives frames during {@link #drain}, which releases each frame once accept returns
+     */
+    public interface FrameConsumer {
+        void accept(AudioFrameRing.Frame frame);
+    }
+
+    private final AudioSource source;
+    private final int frameSamples;
+    private final AudioFrameRing ring;
+    private final VoiceActivityDetector vad;
+    private final boolean gated;
+    private final Listener listener;
+    private final AtomicBoolean drainPending = new AtomicBoolean(false);
+
+    private volatile boolean running;
+    private Thread thread;
+
+    // Written by the capture thread only
+    private volatile long capturedFrames;
+    private volatile long speechFrames;
+    private volatile long publishedFrames;
+    private volatile long droppedFrames;
+
+    /**
+     * @param source PCM source, started and read on the capture thread
+     * @param frameSamples Samples per frame
+     * @param ringFrames Frames the sender may fall behind before frames are dropped
+     * @param vad Voice activity detector, null to treat every frame as speech
+     * @param gated true to send only frames classified as speech
+     * @param listener Capture events
+     */
+    public AudioCapturePipeline(AudioSource source, int frameSamples, int ringFrames, VoiceActivityDetector vad,
+                                boolean gated, Listener listener) {
+        this.source = source;
+        this.frameSamples = frameSamples;
+        this.ring = new AudioFrameRing(ringFrames, frameSamples);
+        this.vad = vad;
+        this.gated = gated && vad != null;
+        this.listener = listener;
+    }
+
+    /**
+     * Start the capture thread, a pipeline runs once
+     * @param threadName Name of the capture thread
+     */
+    public synchronized void start(String threadName) {
+        if (thread != null) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        running = true;
+        thread = new Thread(this::capture, threadName);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stop capturing; the listener is told once the capture thread has finished
+     */
+    public void stop() {
+        running = false;
+        source.stop();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Deliver published frames in capture order
+     * @param consumer Receives each frame, which is reused once accept returns
+     * @param max Most frames to deliver
+     * @return Frames delivered
+     */
+    public int drain(FrameConsumer consumer, int max) {
+        // Cleared before reading, so frames published from now on signal again
+        drainPending.set(false);
+        int count = 0;
+        AudioFrameRing.Frame frame;
+        while (count < max && (frame = ring.peek()) != null) {
+            try {
+                consumer.accept(frame);
+            } finally {
+                ring.release();
+            }
+            count++;
+        }
+        if (count == max && ring.size() > 0 && drainPending.compareAndSet(false, true)) {
+            listener.onFramesAvailable();
+        }
+        return count;
+    }
+
+    public int getFrameSamples() {
+        return frameSamples;
+    }
+
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    public long getCapturedFrames() {
+        return capturedFrames;
+    }
+
+    public long getSpeechFrames() {
+        return speechFrames;
+    }
+
+    public long getPublishedFrames() {
+        return publishedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private void capture() {
+        String reason = REASON_STOPPED;
+        Exception error = null;
+        short[] pcm = new short[frameSamples];
+        long capturedSamples = 0;
+        int sampleRate = source.getSampleRate();
+        boolean speech = false;
+        try {
+            source.start();
+            while (running) {
+                int filled = 0;
+                while (filled < frameSamples && running) {
+                    int read = source.read(pcm, filled, frameSamples - filled);
+                    if (read < 0) {
+                        break;
+                    }
+                    filled += read;
+                }
+                if (!running) {
+                    break;
+                }
+                if (filled < frameSamples) {
+                    reason = REASON_END_OF_INPUT;
+                    break;
+                }
+                long timestampMs = capturedSamples * 1000 / sampleRate;
+                long seq = capturedFrames;
+                capturedSamples += frameSamples;
+                capturedFrames = seq + 1;
+
+                boolean frameSpeech = vad == null || vad.process(pcm, 0, frameSamples);
+                if (vad != null && frameSpeech != speech) {
+                    speech = frameSpeech;
+                    listener.onSpeechChanged(speech);
+                }
+                if (frameSpeech) {
+                    speechFrames++;
+                } else if (gated) {
+                    continue;
+                }
+                AudioFrameRing.Frame frame = ring.claim();
+                if (frame == null) {
+                    droppedFrames++;
+                    continue;
+                }
+                MuLawEncoder.encode(pcm, 0, frameSamples, frame.data, 0);
+                frame.length = frameSamples;
+                frame.seq = seq;
+                frame.timestampMs = timestampMs;
+                frame.speech = frameSpeech;
+                ring.publish();
+                publishedFrames++;
+                if (drainPending.compareAndSet(false, true)) {
+                    listener.onFramesAvailable();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            reason = REASON_ERROR;
+            error = e;
+        } finally {
+            running = false;
+            source.stop();
+        }
+        listener.onStopped(reason, error);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.webviewapp;
+
+/**
+ * Fixed ring of preallocated encoded audio frames between one producer and one consumer thread
+ * The capture thread claims a free frame, fills it and publishes it; the sender peeks published frames
+ * and releases them once delivered. Frames are reused forever, so steady-state capture allocates nothing.
+ * When the sender falls behind, claim fails and the producer drops the frame instead of blocking capture
+ */
+public final class AudioFrameRing {
+
+    /**
+     * Encoded frame, owned by the producer between claim and publish and by the consumer until release
+     */
+    public static final class Frame {
+        final byte[] data;
+        int length;
+        long seq;
+        long timestampMs;
+        boolean speech;
+
+        Frame(int capacity) {
+            data = new byte[capacity];
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return Index of the frame among all captured frames, gaps are gated or dropped frames
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * @return Capture time of the first sample, in milliseconds of audio since the session started
+         */
+        public long getTimestampMs() {
+            return timestampMs;
+        }
+
+        public boolean isSpeech() {
+            return speech;
+        }
+    }
+
+    private final Frame[] frames;
+    private final int mask;
+    // Frames published by the producer and released by the consumer; each is written by one thread only
+    private volatile long head;
+    private volatile long tail;
+
+    /**
+     * @param capacity Frames in the ring, rounded up to a power of two
+     * @param frameBytes Capacity of each frame
+     */
+    public AudioFrameRing(int capacity, int frameBytes) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        frames = new Frame[size];
+        for (int i = 0; i < size; i++) {
+            frames[i] = new Frame(frameBytes);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Producer: take the next free frame
+     * @return Frame to fill, null if every frame is waiting for the consumer
+     */
+    public Frame claim() {
+        long h = head;
+        return h - tail == frames.length ? null : frames[(int) (h & mask)];
+    }
+
+    /**
+     * Producer: hand the claimed frame to the consumer
+     */
+    public void publish() {
+        head = head + 1;
+    }
+
+    /**
+     * Consumer: look at the oldest published frame
+     * @return Frame, null if none is waiting
+     */
+    public Frame peek() {
+        long t = tail;
+        return t == head ? null : frames[(int) (t & mask)];
+    }
+
+    /**
+     * Consumer: return the peeked frame to the producer
+     */
+    public void release() {
+        tail = tail + 1;
+    }
+
+    /**
+     * @return Frames published and not yet released
+     */
+    public int size() {
+        return (int) (head - tail);
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.webviewapp;
+
+import java.io.IOException;
+
+/**
+ * Source of 16-bit mono PCM for {@link AudioCapturePipeline}
+ * The Android implementation wraps AudioRecord; synthetic sources feed the pipeline on a plain JVM.
+ * All methods except {@link #stop()} are called on the capture thread
+ */
+public interface AudioSource {
+
+    /**
+     * @return Samples per second
+     */
+    int getSampleRate();
+
+    /**
+     * Begin capturing, called on the capture thread before the first read
+     * @throws IOException if the source cannot be opened
+     */
+    void start() throws IOException;
+
+    /**
+     * Block until samples are available
+     * @param buffer Target buffer
+     * @param offset First index to fill
+     * @param length Most samples to read
+     * @return Samples read, -1 once the source has ended
+     * @throws IOException if capturing failed
+     */
+    int read(short[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Stop capturing and unblock a pending read; may be called from any thread
+     * Also called on the capture thread once capture has ended, where the source releases its resources
+     */
+    void stop();
+}
@@ -0,0 +1,25 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+
+/**
+ * Reads and writes one message type as JSON
+ * Implementations are generated for every {@link BridgeMessage} class as {@code <Class>_BridgeCodec},
+ * with a shared instance in their {@code INSTANCE} field
+ * @param <T> Message type
+ */
+public interface BridgeCodec<T> {
+
+    /**
+     * @param reader Reader positioned on the value
+     * @return Message, null if the value is JSON null
+     * @throws JSONException if the value does not match the message type
+     */
+    T read(BridgeJsonReader reader) throws JSONException;
+
+    /**
+     * @param out Buffer to append the JSON value to
+     * @param value Message, null for JSON null
+     */
+    void write(StringBuilder out, T value);
+}
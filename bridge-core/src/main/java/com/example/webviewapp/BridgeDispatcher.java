@@ -0,0 +1,230 @@
+package com.example.webviewapp;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dispatch layer for H5 events
+ * Each event type declares the thread it runs on, so handler work never blocks the JavaBridge thread
+ * and independent event types can run in parallel while ordering is kept within a type
+ */
+public class BridgeDispatcher {
+    // java.util.logging keeps the dispatcher free of Android classes, Android forwards it to logcat
+    private static final Logger LOGGER = Logger.getLogger("BridgeDispatcher");
+
+    /**
+     * Thread affinity of an event type
+     */
+    public enum ThreadAffinity {
+        /** Run on the main thread, in arrival order */
+        MAIN,
+        /** Run on the shared background pool, events of the same type may run concurrently */
+        BACKGROUND,
+        /** Run on a dedicated serial lane backed by the background pool, in arrival order */
+        SERIAL
+    }
+
+    // Number of tasks a lane runs before yielding its pool thread to other lanes
+    private static final int LANE_BATCH = 16;
+
+    private static volatile Executor sharedBackgroundExecutor;
+
+    private final Executor mainExecutor;
+    private final Executor backgroundExecutor;
+    private final ConcurrentHashMap<String, ThreadAffinity> affinities = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SerialLane> lanes = new ConcurrentHashMap<>();
+    // Event types sharing a serial lane with other types, keyed by event type
+    private final ConcurrentHashMap<String, String> laneKeys = new ConcurrentHashMap<>();
+    private volatile ThreadAffinity defaultAffinity = ThreadAffinity.SERIAL;
+
+    /**
+     * @param mainExecutor Executor posting to the main thread
+     * @param backgroundExecutor Pool for BACKGROUND tasks and SERIAL lanes, null for the shared default pool
+     */
+    public BridgeDispatcher(Executor mainExecutor, Executor backgroundExecutor) {
+        this.mainExecutor = mainExecutor;
+        this.backgroundExecutor = backgroundExecutor != null ? backgroundExecutor : defaultBackgroundExecutor();
+    }
+
+    /**
+     * Declare the thread affinity of an event type
+     * @param eventType Event type
+     * @param affinity Thread affinity, null to fall back to the default affinity
+     */
+    public void setAffinity(String eventType, ThreadAffinity affinity) {
+        laneKeys.remove(eventType);
+        if (affinity == null) {
+            affinities.remove(eventType);
+        } else {
+            affinities.put(eventType, affinity);
+        }
+    }
+
+    /**
+     * Set the affinity of event types that did not declare one, SERIAL unless changed
+     * @param affinity Thread affinity
+     */
+    public void setDefaultAffinity(ThreadAffinity affinity) {
+        if (affinity == null) {
+            throw new IllegalArgumentException("affinity == null");
+        }
+        defaultAffinity = affinity;
+    }
+
+    /**
+     * Run an event type on a serial lane shared with other event types
+     * Events of every type mapped to the same lane run one at a time in arrival order,
+     * for protocols whose messages depend on each other (open, chunk, close)
+     * @param eventType Event type
+     * @param lane Lane name shared by the related event types
+     */
+    public void setSharedLane(String eventType, String lane) {
+        // Prefixed so shared lanes never collide with the lane of an event type of the same name
+        laneKeys.put(eventType, "#" + lane);
+        affinities.put(eventType, ThreadAffinity.SERIAL);
+    }
+
+    /**
+     * Forget every affinity and shared lane declaration, queued tasks still run
+     * Used when a pooled bridge is handed to a new page
+     */
+    public void clearAffinities() {
+        affinities.clear();
+        laneKeys.clear();
+    }
+
+    public ThreadAffinity getAffinity(String eventType) {
+        ThreadAffinity affinity = affinities.get(eventType);
+        return affinity != null ? affinity : defaultAffinity;
+    }
+
+    /**
+     * Run a task for an event type on the thread declared for it
+     * @param eventType Event type
+     * @param task Handler work
+     */
+    public void dispatch(String eventType, Runnable task) {
+        switch (getAffinity(eventType)) {
+            case MAIN:
+                mainExecutor.execute(guard(eventType, task));
+                break;
+            case BACKGROUND:
+                backgroundExecutor.execute(guard(eventType, task));
+                break;
+            case SERIAL:
+            default:
+                String laneKey = laneKeys.get(eventType);
+                if (laneKey == null) {
+                    laneKey = eventType;
+                }
+                SerialLane lane;
+                do {
+                    lane = lanes.computeIfAbsent(laneKey, SerialLane::new);
+                } while (!lane.offer(guard(eventType, task)));
+                break;
+        }
+    }
+
+    private static Runnable guard(String eventType, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Handler failed for event type: " + eventType, e);
+            }
+        };
+    }
+
+    /**
+     * Shared pool used when no background executor is supplied
+     * Threads time out when idle, so bridges do not need to shut it down
+     */
+    static Executor defaultBackgroundExecutor() {
+        Executor executor = sharedBackgroundExecutor;
+        if (executor == null) {
+            synchronized (BridgeDispatcher.class) {
+                executor = sharedBackgroundExecutor;
+                if (executor == null) {
+                    int threads = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), new DispatchThreadFactory());
+                    pool.allowCoreThreadTimeOut(true);
+                    sharedBackgroundExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Serial lane of one event type, or of a group of event types sharing it
+     * Runs its tasks one at a time on the background pool and retires itself once drained,
+     * so lanes of rarely used event types do not accumulate
+     */
+    private final class SerialLane implements Runnable {
+        private final String key;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean retired;
+
+        SerialLane(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return false if the lane already retired and a new one must be created
+         */
+        boolean offer(Runnable task) {
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                tasks.add(task);
+                if (scheduled) {
+                    return true;
+                }
+                scheduled = true;
+            }
+            backgroundExecutor.execute(this);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < LANE_BATCH; i++) {
+                Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        scheduled = false;
+                        retired = true;
+                        lanes.remove(key, this);
+                        return;
+                    }
+                }
+                task.run();
+            }
+            // Yield the pool thread so other lanes make progress, ordering is unaffected
+            backgroundExecutor.execute(this);
+        }
+    }
+
+    private static final class DispatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "bridge-dispatch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
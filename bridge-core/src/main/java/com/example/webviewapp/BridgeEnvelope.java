@@ -0,0 +1,135 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Decoded H5 message envelope
+ * Holds the event type and call ID eagerly and the data and error payloads as slices of the original
+ * message, so payloads are only copied or parsed when a handler actually asks for them
+ */
+public final class BridgeEnvelope {
+
+    private static final String EMPTY_OBJECT = "{}";
+
+    private final String source;
+    private final String eventType;
+    private final String callId;
+    private final int dataStart;
+    private final int dataEnd;
+    private final int errorStart;
+    private final int errorEnd;
+    private JSONObject data;
+
+    BridgeEnvelope(String source, String eventType, String callId,
+                   int dataStart, int dataEnd, int errorStart, int errorEnd) {
+        this.source = source;
+        this.eventType = eventType;
+        this.callId = callId;
+        this.dataStart = dataStart;
+        this.dataEnd = dataEnd;
+        this.errorStart = errorStart;
+        this.errorEnd = errorEnd;
+    }
+
+    /**
+     * @return Event type of the message
+     */
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return Call ID correlating a request with its response, null for fire-and-forget messages
+     */
+    public String getCallId() {
+        return callId;
+    }
+
+    /**
+     * @return true if the message carries a JSON object as its data payload
+     */
+    public boolean hasData() {
+        return dataStart >= 0 && source.charAt(dataStart) == '{';
+    }
+
+    /**
+     * @return Length in chars of the raw data payload, 0 if there is none
+     */
+    public int getRawDataLength() {
+        return hasData() ? dataEnd - dataStart : 0;
+    }
+
+    /**
+     * Get the data payload as raw JSON text without parsing it
+     * @return JSON object text, "{}" if the message has no object payload
+     */
+    public String getRawData() {
+        return hasData() ? source.substring(dataStart, dataEnd) : EMPTY_OBJECT;
+    }
+
+    /**
+     * Get the data payload as a JSON object, parsed on first access
+     * @return Parsed data, an empty object if the message has no object payload
+     * @throws JSONException if the payload is not valid JSON
+     */
+    public JSONObject getData() throws JSONException {
+        JSONObject parsed = data;
+        if (parsed == null) {
+            parsed = hasData() ? new JSONObject(getRawData()) : new JSONObject();
+            data = parsed;
+        }
+        return parsed;
+    }
+
+    /**
+     * Read the data payload straight into a typed message, without building a JSONObject
+     * @param codec Codec of the message type, usually generated from a {@link BridgeMessage} class
+     * @return Message read from the payload, read from an empty object if the message has no object payload
+     * @throws JSONException if the payload does not match the message type
+     */
+    public <T> T getData(BridgeCodec<T> codec) throws JSONException {
+        BridgeJsonReader reader = hasData()
+                ? new BridgeJsonReader(source, dataStart, dataEnd) : new BridgeJsonReader(EMPTY_OBJECT);
+        return codec.read(reader);
+    }
+
+    /**
+     * @return true if the message is a response carrying an error instead of a result
+     */
+    public boolean hasError() {
+        return errorStart >= 0 && !source.startsWith("null", errorStart);
+    }
+
+    /**
+     * Get the error code of a failed response
+     * Errors are sent as {"code": "...", "message": "..."}, a bare string is treated as the code
+     * @return Error code, null if the message has no error
+     */
+    public String getErrorCode() {
+        return readError("code");
+    }
+
+    /**
+     * @return Error message of a failed response, null if absent
+     */
+    public String getErrorMessage() {
+        return readError("message");
+    }
+
+    private String readError(String key) {
+        if (!hasError()) {
+            return null;
+        }
+        String raw = source.substring(errorStart, errorEnd);
+        if (source.charAt(errorStart) != '{') {
+            return "code".equals(key) ? raw.replace("\"", "") : null;
+        }
+        try {
+            JSONObject error = new JSONObject(raw);
+            return error.has(key) ? error.getString(key) : null;
+        } catch (JSONException e) {
+            return "code".equals(key) ? raw : null;
+        }
+    }
+}
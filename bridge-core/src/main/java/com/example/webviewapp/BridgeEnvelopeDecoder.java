@@ -0,0 +1,222 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+
+/**
+ * Single-pass decoder for H5 message envelopes
+ * Scans the top-level object once, reads eventType in place and only records where the data payload
+ * starts and ends; nested values are skipped without building any JSON tree
+ */
+final class BridgeEnvelopeDecoder {
+
+    private static final String KEY_EVENT_TYPE = "eventType";
+    private static final String KEY_DATA = "data";
+    private static final String KEY_CALL_ID = "callId";
+    private static final String KEY_ERROR = "error";
+
+    private final String json;
+    private final int length;
+    private int pos;
+
+    private BridgeEnvelopeDecoder(String json) {
+        this.json = json;
+        this.length = json.length();
+    }
+
+    /**
+     * Decode a message sent by H5
+     * @param json Message text in the form {"eventType": "...", "callId": "...", "data": {...}, "error": {...}}
+     * @return Decoded envelope
+     * @throws JSONException if the message is malformed or has no eventType
+     */
+    static BridgeEnvelope decode(String json) throws JSONException {
+        if (json == null) {
+            throw new JSONException("Message is null");
+        }
+        return new BridgeEnvelopeDecoder(json).readEnvelope();
+    }
+
+    private BridgeEnvelope readEnvelope() throws JSONException {
+        String eventType = null;
+        String callId = null;
+        int dataStart = -1;
+        int dataEnd = -1;
+        int errorStart = -1;
+        int errorEnd = -1;
+
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                expect('"');
+                int keyStart = pos;
+                boolean escaped = skipStringBody();
+                int keyEnd = pos - 1;
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+
+                if (keyEquals(KEY_EVENT_TYPE, keyStart, keyEnd, escaped)) {
+                    eventType = readScalar(KEY_EVENT_TYPE);
+                } else if (keyEquals(KEY_DATA, keyStart, keyEnd, escaped)) {
+                    dataStart = pos;
+                    skipValue();
+                    dataEnd = pos;
+                } else if (keyEquals(KEY_CALL_ID, keyStart, keyEnd, escaped)) {
+                    callId = readScalar(KEY_CALL_ID);
+                } else if (keyEquals(KEY_ERROR, keyStart, keyEnd, escaped)) {
+                    errorStart = pos;
+                    skipValue();
+                    errorEnd = pos;
+                } else {
+                    skipValue();
+                }
+
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+            }
+        }
+
+        if (eventType == null) {
+            throw new JSONException("JSONObject[\"eventType\"] not found.");
+        }
+        return new BridgeEnvelope(json, eventType, callId, dataStart, dataEnd, errorStart, errorEnd);
+    }
+
+    private boolean keyEquals(String key, int start, int end, boolean escaped) throws JSONException {
+        if (!escaped) {
+            return end - start == key.length() && json.regionMatches(start, key, 0, key.length());
+        }
+        // Escaped keys are rare, decode them instead of comparing in place
+        return key.equals(decodeString(start, end));
+    }
+
+    private String readScalar(String key) throws JSONException {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            int start = pos;
+            boolean escaped = skipStringBody();
+            int end = pos - 1;
+            return escaped ? decodeString(start, end) : json.substring(start, end);
+        }
+        // Keep getString() semantics for non-string scalars
+        int start = pos;
+        skipValue();
+        String literal = json.substring(start, pos).trim();
+        if (literal.isEmpty() || literal.charAt(0) == '{' || literal.charAt(0) == '[' || "null".equals(literal)) {
+            throw new JSONException("JSONObject[\"" + key + "\"] is not a string.");
+        }
+        return literal;
+    }
+
+    /**
+     * Skip the rest of a string whose opening quote has already been consumed
+     * @return true if the string contains escape sequences
+     */
+    private boolean skipStringBody() throws JSONException {
+        boolean escaped = false;
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return escaped;
+            }
+            if (c == '\\') {
+                escaped = true;
+                pos++;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private void skipValue() throws JSONException {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            skipStringBody();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else {
+            int start = pos;
+            while (pos < length) {
+                char ch = json.charAt(pos);
+                if (ch == ',' || ch == '}' || ch == ']' || ch <= ' ') {
+                    break;
+                }
+                pos++;
+            }
+            if (pos == start) {
+                throw syntaxError("Missing value");
+            }
+        }
+    }
+
+    private void skipContainer() throws JSONException {
+        int depth = 0;
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            switch (c) {
+                case '"':
+                    skipStringBody();
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    if (depth == 0) {
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        throw syntaxError("Unterminated object or array");
+    }
+
+    private String decodeString(int start, int end) throws JSONException {
+        return BridgeJsonReader.unescape(json, start, end);
+    }
+
+    private void skipWhitespace() {
+        while (pos < length && json.charAt(pos) <= ' ') {
+            pos++;
+        }
+    }
+
+    private char peek() throws JSONException {
+        if (pos >= length) {
+            throw syntaxError("Unexpected end of message");
+        }
+        return json.charAt(pos);
+    }
+
+    private char next() throws JSONException {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) throws JSONException {
+        if (next() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + pos);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.webviewapp;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * JSON mapping of a {@link BridgeMessage} field
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface BridgeField {
+
+    /**
+     * @return JSON member name, the field name if empty
+     */
+    String value() default "";
+
+    /**
+     * @return true to reject payloads without this member
+     */
+    boolean required() default false;
+}
@@ -0,0 +1,23 @@
+package com.example.webviewapp;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as the handler of an H5 event type
+ * The build generates {@code <Class>_BridgeHandlers.register(bridge, target)}, which registers every annotated
+ * method of the class with its payload decoded by the generated codec. Handlers take the
+ * {@link BridgeMessage} payload and optionally a BridgeResponder, and may return a {@link BridgeMessage}
+ * answered as the result. Handlers without a responder parameter answer requests when they return
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface BridgeHandler {
+
+    /**
+     * @return Event type or wildcard route, as accepted by WebViewBridge.registerHandler
+     */
+    String value();
+}
@@ -0,0 +1,87 @@
+package com.example.webviewapp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routing table from H5 event types to handlers
+ * Routes are either exact event types ("click"), namespace wildcards ("media.*") matching every
+ * event type under that dot-separated prefix, or "*" matching anything that has no other route.
+ * Exact routes are a single hash lookup; wildcard lookups cost one lookup per namespace level
+ * @param <H> Handler type
+ */
+final class BridgeHandlerRegistry<H> {
+
+    static final String WILDCARD = "*";
+    private static final char SEPARATOR = '.';
+
+    private final ConcurrentHashMap<String, H> exactRoutes = new ConcurrentHashMap<>();
+    // Keyed by the prefix including its trailing separator, e.g. "media."
+    private final ConcurrentHashMap<String, H> prefixRoutes = new ConcurrentHashMap<>();
+    private volatile H catchAll;
+
+    /**
+     * Add or replace a route
+     * @param route Event type, "namespace.*" or "*"
+     * @param handler Handler for matching events
+     */
+    void register(String route, H handler) {
+        if (route == null || route.isEmpty() || handler == null) {
+            throw new IllegalArgumentException("route and handler are required");
+        }
+        if (WILDCARD.equals(route)) {
+            catchAll = handler;
+        } else if (isPrefixRoute(route)) {
+            prefixRoutes.put(route.substring(0, route.length() - 1), handler);
+        } else {
+            exactRoutes.put(route, handler);
+        }
+    }
+
+    /**
+     * Remove a route
+     * @param route Route previously passed to {@link #register}
+     */
+    void unregister(String route) {
+        if (WILDCARD.equals(route)) {
+            catchAll = null;
+        } else if (isPrefixRoute(route)) {
+            prefixRoutes.remove(route.substring(0, route.length() - 1));
+        } else {
+            exactRoutes.remove(route);
+        }
+    }
+
+    void clear() {
+        exactRoutes.clear();
+        prefixRoutes.clear();
+        catchAll = null;
+    }
+
+    /**
+     * Find the handler of an event type: exact route first, then the longest matching namespace, then "*"
+     * @param eventType Event type
+     * @return Handler, null if no route matches
+     */
+    H find(String eventType) {
+        H handler = exactRoutes.get(eventType);
+        if (handler != null) {
+            return handler;
+        }
+        if (!prefixRoutes.isEmpty()) {
+            int index = eventType.lastIndexOf(SEPARATOR);
+            while (index > 0) {
+                handler = prefixRoutes.get(eventType.substring(0, index + 1));
+                if (handler != null) {
+                    return handler;
+                }
+                index = eventType.lastIndexOf(SEPARATOR, index - 1);
+            }
+        }
+        return catchAll;
+    }
+
+    private static boolean isPrefixRoute(String route) {
+        int length = route.length();
+        return length > 2 && route.charAt(length - 1) == '*' && route.charAt(length - 2) == SEPARATOR;
+    }
+}
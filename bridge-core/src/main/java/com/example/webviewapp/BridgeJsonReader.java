@@ -0,0 +1,426 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+
+/**
+ * Pull reader over JSON text, used by generated message codecs
+ * Reads values straight out of the message string, one token at a time, so typed messages are filled in
+ * without building a JSONObject tree. Values must have the declared JSON type: a string is never coerced
+ * into a number or the other way round, mismatches surface as a JSONException
+ */
+public final class BridgeJsonReader {
+
+    private static final int INITIAL_DEPTH = 8;
+    // Deeper nesting is rejected rather than risking a stack overflow in skipValue
+    private static final int MAX_DEPTH = 256;
+
+    private final String json;
+    private final int end;
+    private int pos;
+    // Per open container: true until its first member has been read, so commas are checked
+    private boolean[] first = new boolean[INITIAL_DEPTH];
+    private int depth;
+
+    /**
+     * @param json Text holding a single JSON value
+     */
+    public BridgeJsonReader(String json) {
+        this(json, 0, json.length());
+    }
+
+    /**
+     * @param json Text holding a JSON value between start and end
+     */
+    public BridgeJsonReader(String json, int start, int end) {
+        this.json = json;
+        this.pos = start;
+        this.end = end;
+    }
+
+    public void beginObject() throws JSONException {
+        expect('{');
+        push();
+    }
+
+    public void endObject() throws JSONException {
+        expect('}');
+        depth--;
+    }
+
+    public void beginArray() throws JSONException {
+        expect('[');
+        push();
+    }
+
+    public void endArray() throws JSONException {
+        expect(']');
+        depth--;
+    }
+
+    /**
+     * @return true if the current object or array has another member, consuming the separating comma
+     */
+    public boolean hasNext() throws JSONException {
+        skipWhitespace();
+        char c = peek();
+        if (c == '}' || c == ']') {
+            return false;
+        }
+        if (first[depth - 1]) {
+            first[depth - 1] = false;
+        } else {
+            expect(',');
+        }
+        return true;
+    }
+
+    /**
+     * @return Name of the next object member, positioned on its value
+     */
+    public String nextName() throws JSONException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Consume a null literal if it is the next value
+     * @return true if the value was null
+     */
+    public boolean nextNull() throws JSONException {
+        skipWhitespace();
+        if (json.startsWith("null", pos) && pos + 4 <= end) {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    public String nextString() throws JSONException {
+        skipWhitespace();
+        if (peek() != '"') {
+            throw syntaxError("Expected a string");
+        }
+        int start = ++pos;
+        boolean escaped = false;
+        while (pos < end) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return escaped ? unescape(json, start, pos - 1) : json.substring(start, pos - 1);
+            }
+            if (c == '\\') {
+                escaped = true;
+                pos++;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    public boolean nextBoolean() throws JSONException {
+        skipWhitespace();
+        if (json.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        }
+        if (json.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+        throw syntaxError("Expected a boolean");
+    }
+
+    public long nextLong() throws JSONException {
+        int start = pos;
+        String literal = nextNumberLiteral();
+        try {
+            return Long.parseLong(literal);
+        } catch (NumberFormatException e) {
+            // Whole numbers written as 1.0 or 1e3 by JavaScript
+            double value = parseDouble(literal, start);
+            if (value != Math.rint(value) || Math.abs(value) > 0x1p63) {
+                pos = start;
+                throw syntaxError("Expected an integer");
+            }
+            return (long) value;
+        }
+    }
+
+    public int nextInt() throws JSONException {
+        int start = pos;
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            pos = start;
+            throw syntaxError("Integer out of range");
+        }
+        return (int) value;
+    }
+
+    public double nextDouble() throws JSONException {
+        int start = pos;
+        return parseDouble(nextNumberLiteral(), start);
+    }
+
+    /**
+     * @return Constant of the enum named by the next string value
+     */
+    public <E extends Enum<E>> E nextEnum(Class<E> type) throws JSONException {
+        int start = pos;
+        String name = nextString();
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            pos = start;
+            throw syntaxError("Unknown " + type.getSimpleName() + " constant " + name);
+        }
+    }
+
+    /**
+     * Skip the next value, whatever its type, checking it against the JSON grammar
+     * Strings must hold no raw control character or unknown escape, numbers must be JSON numbers,
+     * so a skipped value is also valid as a JavaScript expression
+     */
+    public void skipValue() throws JSONException {
+        skipWhitespace();
+        char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{') {
+            skipObject();
+        } else if (c == '[') {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+            endArray();
+        } else if (c == 't' || c == 'f') {
+            nextBoolean();
+        } else if (c == 'n') {
+            if (!nextNull()) {
+                throw syntaxError("Expected null");
+            }
+        } else {
+            skipNumber();
+        }
+    }
+
+    /**
+     * Skip the next value, which must be an object, checking it like {@link #skipValue()}
+     */
+    public void skipObject() throws JSONException {
+        beginObject();
+        while (hasNext()) {
+            skipString();
+            expect(':');
+            skipValue();
+        }
+        endObject();
+    }
+
+    /**
+     * Check that nothing but whitespace follows the value just read
+     */
+    public void endInput() throws JSONException {
+        skipWhitespace();
+        if (pos < end) {
+            throw syntaxError("Unexpected trailing input");
+        }
+    }
+
+    private void skipString() throws JSONException {
+        skipWhitespace();
+        if (peek() != '"') {
+            throw syntaxError("Expected a string");
+        }
+        pos++;
+        while (pos < end) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return;
+            }
+            if (c < 0x20) {
+                pos--;
+                throw syntaxError("Control character in string");
+            }
+            if (c == '\\') {
+                char e = peek();
+                pos++;
+                if (e == 'u') {
+                    for (int i = 0; i < 4; i++) {
+                        if (Character.digit(peek(), 16) < 0) {
+                            throw syntaxError("Invalid unicode escape");
+                        }
+                        pos++;
+                    }
+                } else if ("\"\\/bfnrt".indexOf(e) < 0) {
+                    pos--;
+                    throw syntaxError("Invalid escape");
+                }
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    /**
+     * Skip a number: -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?
+     */
+    private void skipNumber() throws JSONException {
+        if (pos < end && json.charAt(pos) == '-') {
+            pos++;
+        }
+        if (pos < end && json.charAt(pos) == '0') {
+            pos++;
+        } else if (skipDigits() == 0) {
+            throw syntaxError("Expected a value");
+        }
+        if (pos < end && json.charAt(pos) == '.') {
+            pos++;
+            if (skipDigits() == 0) {
+                throw syntaxError("Malformed number");
+            }
+        }
+        if (pos < end && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+            pos++;
+            if (pos < end && (json.charAt(pos) == '+' || json.charAt(pos) == '-')) {
+                pos++;
+            }
+            if (skipDigits() == 0) {
+                throw syntaxError("Malformed number");
+            }
+        }
+    }
+
+    private int skipDigits() {
+        int start = pos;
+        while (pos < end && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private String nextNumberLiteral() throws JSONException {
+        skipWhitespace();
+        char c = peek();
+        if (c != '-' && (c < '0' || c > '9')) {
+            throw syntaxError("Expected a number");
+        }
+        return nextLiteral();
+    }
+
+    private String nextLiteral() throws JSONException {
+        int start = pos;
+        while (pos < end) {
+            char ch = json.charAt(pos);
+            if (ch == ',' || ch == '}' || ch == ']' || ch <= ' ') {
+                break;
+            }
+            pos++;
+        }
+        if (pos == start) {
+            throw syntaxError("Missing value");
+        }
+        return json.substring(start, pos);
+    }
+
+    private double parseDouble(String literal, int start) throws JSONException {
+        try {
+            return Double.parseDouble(literal);
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw syntaxError("Malformed number " + literal);
+        }
+    }
+
+    private void push() throws JSONException {
+        if (depth == MAX_DEPTH) {
+            throw syntaxError("Nesting deeper than " + MAX_DEPTH);
+        }
+        if (depth == first.length) {
+            boolean[] grown = new boolean[depth * 2];
+            System.arraycopy(first, 0, grown, 0, depth);
+            first = grown;
+        }
+        first[depth++] = true;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private char peek() throws JSONException {
+        if (pos >= end) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return json.charAt(pos);
+    }
+
+    private void expect(char expected) throws JSONException {
+        skipWhitespace();
+        if (peek() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + pos);
+    }
+
+    /**
+     * Decode the escape sequences of a JSON string body
+     * @param json Text holding the string
+     * @param start Index after the opening quote
+     * @param end Index of the closing quote
+     */
+    static String unescape(String json, int start, int end) throws JSONException {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = json.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (++i >= end) {
+                throw new JSONException("Unterminated escape sequence at character " + i);
+            }
+            char e = json.charAt(i);
+            switch (e) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'u':
+                    if (i + 4 >= end) {
+                        throw new JSONException("Invalid unicode escape at character " + i);
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException ex) {
+                        throw new JSONException("Invalid unicode escape at character " + i);
+                    }
+                    i += 4;
+                    break;
+                default:
+                    sb.append(e);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.webviewapp;
+
+/**
+ * JSON value writers used by generated message codecs
+ */
+public final class BridgeJsonWriter {
+
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private BridgeJsonWriter() {
+    }
+
+    /**
+     * @param value String, null for JSON null
+     */
+    public static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+        } else {
+            JsLiteralEncoder.appendString(out, value);
+        }
+    }
+
+    /**
+     * @param value Number; NaN and infinities have no JSON form and are written as null
+     */
+    public static void appendDouble(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("null");
+        } else if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * @param value Enum constant written by name, null for JSON null
+     */
+    public static void appendEnum(StringBuilder out, Enum<?> value) {
+        if (value == null) {
+            out.append("null");
+        } else {
+            JsLiteralEncoder.appendString(out, value.name());
+        }
+    }
+
+    /**
+     * Append bytes as a quoted base64 string, without an intermediate array or String
+     * @param data Source bytes
+     * @param offset First byte to encode
+     * @param length Bytes to encode
+     */
+    public static void appendBase64(StringBuilder out, byte[] data, int offset, int length) {
+        out.ensureCapacity(out.length() + (length + 2) / 3 * 4 + 2);
+        out.append('"');
+        int end = offset + length;
+        int i = offset;
+        for (; i + 2 < end; i += 3) {
+            int bits = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF);
+            out.append(BASE64[bits >>> 18]).append(BASE64[(bits >>> 12) & 0x3F])
+                    .append(BASE64[(bits >>> 6) & 0x3F]).append(BASE64[bits & 0x3F]);
+        }
+        if (i < end) {
+            int bits = (data[i] & 0xFF) << 16 | (i + 1 < end ? (data[i + 1] & 0xFF) << 8 : 0);
+            out.append(BASE64[bits >>> 18]).append(BASE64[(bits >>> 12) & 0x3F])
+                    .append(i + 1 < end ? BASE64[(bits >>> 6) & 0x3F] : '=').append('=');
+        }
+        out.append('"');
+    }
+}
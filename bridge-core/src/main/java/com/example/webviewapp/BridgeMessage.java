@@ -0,0 +1,18 @@
+package com.example.webviewapp;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class as a bridge message payload, the build generates its {@code <Class>_BridgeCodec}
+ * Every non-static, non-transient field is part of the JSON object and must not be private or final.
+ * Supported field types are primitives and their wrappers, String, enums (by name), other message classes
+ * and java.util.List of any of these; anything else fails the build. The class needs a no-argument
+ * constructor visible to its package. Unknown JSON members are skipped, missing ones keep their default
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface BridgeMessage {
+}
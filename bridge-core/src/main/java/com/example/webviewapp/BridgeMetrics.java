@@ -0,0 +1,367 @@
+package com.example.webviewapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bridge instrumentation
+ * Records per event type and direction message counts, payload sizes, parse/encode time and queue wait,
+ * plus transport-level batch sizes, outbound queue depth, merged and dropped outbound messages
+ * and evaluateJavascript round trips.
+ * All counters are lock-free and every histogram has a fixed size, so metrics can stay on in release builds
+ */
+public final class BridgeMetrics {
+
+    /**
+     * Direction of a message
+     */
+    public enum Direction {
+        /** H5 calling native */
+        INBOUND,
+        /** Native calling H5 */
+        OUTBOUND
+    }
+
+    // Bound on distinct event types so a misbehaving page cannot grow the table without limit
+    private static final int MAX_EVENT_TYPES = 128;
+    private static final String OVERFLOW_EVENT_TYPE = "(other)";
+
+    private final ConcurrentHashMap<String, EventStats> inbound = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, EventStats> outbound = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LogHistogram> timings = new ConcurrentHashMap<>();
+
+    private final LogHistogram batchSize = new LogHistogram();
+    private final LogHistogram evaluateRoundTrip = new LogHistogram();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean enabled = true;
+
+    /**
+     * Statistics of one event type in one direction
+     */
+    public static final class EventStats {
+        private final String eventType;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LogHistogram payloadSize = new LogHistogram();
+        private final LogHistogram codecNanos = new LogHistogram();
+        private final LogHistogram queueWaitNanos = new LogHistogram();
+        private final LongAdder merged = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        EventStats(String eventType) {
+            this.eventType = eventType;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * @return Payload sizes in chars
+         */
+        public LogHistogram getPayloadSize() {
+            return payloadSize;
+        }
+
+        /**
+         * @return Envelope decode time for inbound messages, encode time for outbound ones, in nanoseconds
+         */
+        public LogHistogram getCodecNanos() {
+            return codecNanos;
+        }
+
+        /**
+         * @return Time between queueing and handling (inbound) or delivery (outbound), in nanoseconds
+         */
+        public LogHistogram getQueueWaitNanos() {
+            return queueWaitNanos;
+        }
+
+        /**
+         * @return Outbound messages replaced by a newer message with the same coalescing key before delivery
+         */
+        public long getMergedCount() {
+            return merged.sum();
+        }
+
+        /**
+         * @return Outbound messages discarded because the outbound buffer was full
+         */
+        public long getDroppedCount() {
+            return dropped.sum();
+        }
+
+        void reset() {
+            count.reset();
+            bytes.reset();
+            payloadSize.reset();
+            codecNanos.reset();
+            queueWaitNanos.reset();
+            merged.reset();
+            dropped.reset();
+        }
+    }
+
+    /**
+     * Turn recording on or off, recording calls are near free while off
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record a message that was decoded or encoded
+     * @param direction Direction of the message
+     * @param eventType Event type
+     * @param payloadChars Size of the message payload in chars
+     * @param codecNanos Decode or encode time in nanoseconds
+     */
+    public void recordMessage(Direction direction, String eventType, long payloadChars, long codecNanos) {
+        if (!enabled) {
+            return;
+        }
+        EventStats stats = stats(direction, eventType);
+        stats.count.increment();
+        stats.bytes.add(payloadChars);
+        stats.payloadSize.record(payloadChars);
+        stats.codecNanos.record(codecNanos);
+    }
+
+    /**
+     * Record how long a message waited before it was handled or delivered
+     * @param direction Direction of the message
+     * @param eventType Event type
+     * @param waitNanos Wait time in nanoseconds
+     */
+    public void recordQueueWait(Direction direction, String eventType, long waitNanos) {
+        if (enabled) {
+            stats(direction, eventType).queueWaitNanos.record(waitNanos);
+        }
+    }
+
+    /**
+     * Record an outbound message superseded by a newer one with the same coalescing key
+     * @param eventType Event type
+     */
+    public void recordMerged(String eventType) {
+        if (enabled) {
+            merged.increment();
+            stats(Direction.OUTBOUND, eventType).merged.increment();
+        }
+    }
+
+    /**
+     * Record an outbound message discarded to make room in a full outbound buffer
+     * @param eventType Event type
+     */
+    public void recordDropped(String eventType) {
+        if (enabled) {
+            dropped.increment();
+            stats(Direction.OUTBOUND, eventType).dropped.increment();
+        }
+    }
+
+    /**
+     * Record the delivery of an outbound batch
+     * @param messages Messages in the batch
+     */
+    public void recordBatch(int messages) {
+        if (enabled) {
+            batchSize.record(messages);
+        }
+    }
+
+    /**
+     * Record the time between evaluateJavascript and its result callback
+     * @param nanos Round trip in nanoseconds
+     */
+    public void recordEvaluateRoundTrip(long nanos) {
+        if (enabled) {
+            evaluateRoundTrip.record(nanos);
+        }
+    }
+
+    /**
+     * Record a named duration outside the per-message statistics, such as a lifecycle handshake
+     * @param name Timing name
+     * @param nanos Duration in nanoseconds
+     */
+    public void recordTiming(String name, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        LogHistogram histogram = timings.get(name);
+        if (histogram == null) {
+            histogram = timings.computeIfAbsent(name, key -> new LogHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Track the outbound queue depth, called with +1 when a message is queued and -n when n are delivered
+     */
+    public void addQueueDepth(long delta) {
+        long depth = queueDepth.addAndGet(delta);
+        long currentMax = maxQueueDepth.get();
+        while (depth > currentMax && !maxQueueDepth.compareAndSet(currentMax, depth)) {
+            currentMax = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * @return Statistics of an event type, null if nothing was recorded for it
+     */
+    public EventStats getEventStats(Direction direction, String eventType) {
+        return table(direction).get(eventType);
+    }
+
+    /**
+     * @return Statistics of every recorded event type in a direction
+     */
+    public ArrayList<EventStats> getAllEventStats(Direction direction) {
+        return new ArrayList<>(table(direction).values());
+    }
+
+    /**
+     * @return Named timing, null if nothing was recorded under that name
+     */
+    public LogHistogram getTiming(String name) {
+        return timings.get(name);
+    }
+
+    public LogHistogram getBatchSize() {
+        return batchSize;
+    }
+
+    public LogHistogram getEvaluateRoundTrip() {
+        return evaluateRoundTrip;
+    }
+
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return Outbound messages of every event type merged into a newer one
+     */
+    public long getMergedCount() {
+        return merged.sum();
+    }
+
+    /**
+     * @return Outbound messages of every event type dropped from a full buffer
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Clear every statistic, e.g. after a dump
+     */
+    public void reset() {
+        for (EventStats stats : inbound.values()) {
+            stats.reset();
+        }
+        for (EventStats stats : outbound.values()) {
+            stats.reset();
+        }
+        for (LogHistogram histogram : timings.values()) {
+            histogram.reset();
+        }
+        batchSize.reset();
+        evaluateRoundTrip.reset();
+        merged.reset();
+        dropped.reset();
+        maxQueueDepth.set(queueDepth.get());
+    }
+
+    /**
+     * Format all statistics as a human readable table, durations in microseconds
+     * @return Metrics dump
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("Bridge metrics (latencies in us: p50/p99/max)\n");
+        dumpDirection(sb, Direction.INBOUND, "decode");
+        dumpDirection(sb, Direction.OUTBOUND, "encode");
+        sb.append(String.format(Locale.US, "batches: %d, size p50=%d p99=%d max=%d\n",
+                batchSize.getCount(), batchSize.getPercentile(0.5), batchSize.getPercentile(0.99), batchSize.getMax()));
+        sb.append("evaluateJavascript round trip: ").append(formatLatency(evaluateRoundTrip)).append('\n');
+        sb.append("outbound queue depth: ").append(queueDepth.get())
+                .append(", max ").append(maxQueueDepth.get())
+                .append(", merged ").append(merged.sum())
+                .append(", dropped ").append(dropped.sum()).append('\n');
+        ArrayList<String> names = new ArrayList<>(timings.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            sb.append(name).append(": ").append(formatLatency(timings.get(name))).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void dumpDirection(StringBuilder sb, Direction direction, String codec) {
+        ArrayList<EventStats> all = getAllEventStats(direction);
+        Collections.sort(all, (a, b) -> Long.compare(b.getCount(), a.getCount()));
+        sb.append(direction).append('\n');
+        for (EventStats stats : all) {
+            sb.append(String.format(Locale.US, "  %s: count=%d bytes=%d size p50=%d max=%d, %s %s, wait %s",
+                    stats.eventType, stats.getCount(), stats.getBytes(),
+                    stats.payloadSize.getPercentile(0.5), stats.payloadSize.getMax(),
+                    codec, formatLatency(stats.codecNanos), formatLatency(stats.queueWaitNanos)));
+            long mergedCount = stats.getMergedCount();
+            long droppedCount = stats.getDroppedCount();
+            if (mergedCount > 0 || droppedCount > 0) {
+                sb.append(", merged=").append(mergedCount).append(" dropped=").append(droppedCount);
+            }
+            sb.append('\n');
+        }
+    }
+
+    private static String formatLatency(LogHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "-";
+        }
+        return String.format(Locale.US, "%d/%d/%d (n=%d)",
+                histogram.getPercentile(0.5) / 1000, histogram.getPercentile(0.99) / 1000,
+                histogram.getMax() / 1000, histogram.getCount());
+    }
+
+    private ConcurrentHashMap<String, EventStats> table(Direction direction) {
+        return direction == Direction.INBOUND ? inbound : outbound;
+    }
+
+    private EventStats stats(Direction direction, String eventType) {
+        ConcurrentHashMap<String, EventStats> table = table(direction);
+        EventStats stats = table.get(eventType);
+        if (stats != null) {
+            return stats;
+        }
+        if (table.size() >= MAX_EVENT_TYPES) {
+            eventType = OVERFLOW_EVENT_TYPE;
+        }
+        return table.computeIfAbsent(eventType, EventStats::new);
+    }
+}
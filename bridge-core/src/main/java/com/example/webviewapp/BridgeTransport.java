@@ -0,0 +1,46 @@
+package com.example.webviewapp;
+
+/**
+ * Native-to-H5 delivery channel
+ * A transport frames a batch of encoded envelopes and hands it to the page; the bridge writes the
+ * envelopes between {@link #beginBatch} and {@link #endBatch} so each batch is built in one buffer
+ */
+interface BridgeTransport {
+
+    /**
+     * @return Transport name for logging
+     */
+    String getName();
+
+    /**
+     * @return true if the transport can deliver messages right now
+     */
+    boolean isConnected();
+
+    /**
+     * Backpressure signal: while busy the bridge only sends high priority messages and holds the rest
+     * @return true if the page has not yet consumed enough of the batches already sent
+     */
+    default boolean isBusy() {
+        return false;
+    }
+
+    /**
+     * Write whatever precedes the comma-separated envelopes of a batch
+     * @param out Batch buffer
+     */
+    void beginBatch(StringBuilder out);
+
+    /**
+     * Write whatever follows the envelopes of a batch
+     * @param out Batch buffer
+     */
+    void endBatch(StringBuilder out);
+
+    /**
+     * Deliver a framed batch, called on the main thread
+     * @param batch Batch text built with {@link #beginBatch} and {@link #endBatch}
+     * @param count Number of envelopes in the batch
+     */
+    void send(String batch, int count);
+}
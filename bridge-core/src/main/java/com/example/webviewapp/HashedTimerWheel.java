@@ -0,0 +1,180 @@
+package com.example.webviewapp;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel for cheap, coarse timeouts
+ * All timeouts share one daemon thread that only ticks while something is pending; scheduling and
+ * cancelling are O(1), so tracking thousands of pending bridge calls costs no more than a few
+ */
+final class HashedTimerWheel {
+
+    /**
+     * Handle of a scheduled timeout
+     */
+    interface Timeout {
+        /**
+         * @return true if the timeout was cancelled before it fired
+         */
+        boolean cancel();
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Node[] buckets;
+    private final String threadName;
+    private final Object lock = new Object();
+
+    private long startNanos;
+    private long tick;
+    private int pending;
+    private Thread worker;
+
+    /**
+     * @param tickMillis Timer resolution, timeouts fire at most one tick late
+     * @param wheelSize Number of buckets, rounded up to a power of two
+     * @param threadName Name of the timer thread
+     */
+    HashedTimerWheel(long tickMillis, int wheelSize, String threadName) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMillis and wheelSize must be positive");
+        }
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.buckets = new Node[size];
+        this.threadName = threadName;
+    }
+
+    /**
+     * Run a task once the delay has elapsed, on the timer thread
+     * Tasks must be short; hand longer work to another executor
+     * @param task Task to run
+     * @param delayMillis Delay in milliseconds
+     * @return Handle to cancel the timeout
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        long now = System.nanoTime();
+        synchronized (lock) {
+            if (pending == 0) {
+                // Restart the timeline so an idle wheel does not have to catch up on missed ticks
+                startNanos = now;
+                tick = 0;
+            }
+            long deadline = now - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+            long ticks = Math.max((deadline + tickNanos - 1) / tickNanos, tick);
+            Node node = new Node(task, (ticks - tick) / buckets.length, (int) (ticks & mask));
+            link(node);
+            pending++;
+            if (worker == null) {
+                worker = new Thread(this::runWorker, threadName);
+                worker.setDaemon(true);
+                worker.start();
+            } else {
+                lock.notifyAll();
+            }
+            return node;
+        }
+    }
+
+    private void link(Node node) {
+        Node head = buckets[node.bucket];
+        node.next = head;
+        if (head != null) {
+            head.prev = node;
+        }
+        buckets[node.bucket] = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            buckets[node.bucket] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    private void runWorker() {
+        ArrayList<Runnable> expired = new ArrayList<>();
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (pending == 0) {
+                        lock.wait();
+                    }
+                    long waitNanos = startNanos + tick * tickNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Node node = buckets[(int) (tick & mask)];
+                while (node != null) {
+                    Node next = node.next;
+                    if (node.rounds <= 0) {
+                        unlink(node);
+                        node.fired = true;
+                        pending--;
+                        expired.add(node.task);
+                    } else {
+                        node.rounds--;
+                    }
+                    node = next;
+                }
+                tick++;
+            }
+            for (int i = 0; i < expired.size(); i++) {
+                try {
+                    expired.get(i).run();
+                } catch (RuntimeException e) {
+                    // A failing task must not stop the timer thread
+                    Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+                    if (handler != null) {
+                        handler.uncaughtException(Thread.currentThread(), e);
+                    }
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    private final class Node implements Timeout {
+        final Runnable task;
+        final int bucket;
+        long rounds;
+        boolean fired;
+        boolean cancelled;
+        Node prev;
+        Node next;
+
+        Node(Runnable task, long rounds, int bucket) {
+            this.task = task;
+            this.rounds = rounds;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (lock) {
+                if (fired || cancelled) {
+                    return false;
+                }
+                cancelled = true;
+                unlink(this);
+                pending--;
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+
+/**
+ * Encoder that writes native-to-H5 message envelopes as JavaScript expressions
+ * Envelopes are appended in one pass into a pooled StringBuilder, so a payload is copied once into the
+ * script buffer instead of being serialized, escaped and concatenated into several intermediate strings
+ */
+final class JsLiteralEncoder {
+
+    private static final String EMPTY_OBJECT = "{}";
+    private static final String ENVELOPE_EVENT_TYPE = "{\"eventType\":";
+    private static final String ENVELOPE_CALL_ID = ",\"callId\":";
+    private static final String ENVELOPE_DATA = ",\"data\":";
+    private static final String ENVELOPE_ERROR = ",\"error\":";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // Builders that grew beyond this are dropped instead of pinning a large buffer
+    private static final int MAX_POOLED_CAPACITY = 256 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final ThreadLocal<StringBuilder> POOL = new ThreadLocal<>();
+
+    private JsLiteralEncoder() {
+    }
+
+    /**
+     * Take the pooled builder of the current thread
+     * @return Empty builder, must be handed back with {@link #release(StringBuilder)}
+     */
+    static StringBuilder acquire() {
+        StringBuilder sb = POOL.get();
+        if (sb == null) {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+        POOL.set(null);
+        return sb;
+    }
+
+    /**
+     * Return a builder to the pool of the current thread
+     * @param sb Builder obtained from {@link #acquire()}
+     */
+    static void release(StringBuilder sb) {
+        if (sb.capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        sb.setLength(0);
+        POOL.set(sb);
+    }
+
+    /**
+     * Append a message envelope {"eventType": ..., "data": ...}
+     * @param out Target buffer
+     * @param eventType Event type
+     * @param dataJson Serialized JSON object, null for an empty object; must come from a JSON serializer
+     */
+    static void appendEnvelope(StringBuilder out, String eventType, String dataJson) {
+        appendEnvelope(out, eventType, null, dataJson, null);
+    }
+
+    /**
+     * Append a message envelope that takes part in a request/response exchange
+     * @param out Target buffer
+     * @param eventType Event type
+     * @param callId Call ID, omitted when null
+     * @param dataJson Serialized JSON object, null for an empty object; must come from a JSON serializer
+     * @param errorJson Serialized error object, omitted when null
+     */
+    static void appendEnvelope(StringBuilder out, String eventType, String callId, String dataJson, String errorJson) {
+        out.append(ENVELOPE_EVENT_TYPE);
+        appendString(out, eventType);
+        if (callId != null) {
+            out.append(ENVELOPE_CALL_ID);
+            appendString(out, callId);
+        }
+        out.append(ENVELOPE_DATA);
+        appendJson(out, dataJson != null ? dataJson : EMPTY_OBJECT);
+        if (errorJson != null) {
+            out.append(ENVELOPE_ERROR);
+            appendJson(out, errorJson);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Build a serialized error object {"code": ..., "message": ...}
+     * @param code Error code
+     * @param message Error description, omitted when null
+     * @return Serialized error object
+     */
+    static String errorJson(String code, String message) {
+        StringBuilder sb = new StringBuilder(32);
+        sb.append("{\"code\":");
+        appendString(sb, code);
+        if (message != null) {
+            sb.append(",\"message\":");
+            appendString(sb, message);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Append a string as a quoted literal that is valid both as JSON and as JavaScript
+     * @param out Target buffer
+     * @param value String to quote, null is written as null
+     */
+    static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int length = value.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                replacement = null;
+            } else {
+                continue;
+            }
+            out.append(value, runStart, i);
+            if (replacement != null) {
+                out.append(replacement);
+            } else {
+                appendUnicodeEscape(out, c);
+            }
+            runStart = i + 1;
+        }
+        out.append(value, runStart, length);
+        out.append('"');
+    }
+
+    /**
+     * Append serialized JSON as a JavaScript expression
+     * JSON is a JavaScript expression except for raw U+2028/U+2029 inside strings, which are escaped here
+     * @param out Target buffer
+     * @param json Serialized JSON
+     */
+    static void appendJson(StringBuilder out, String json) {
+        int length = json.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = json.charAt(i);
+            if (c == '\u2028' || c == '\u2029') {
+                out.append(json, runStart, i);
+                appendUnicodeEscape(out, c);
+                runStart = i + 1;
+            }
+        }
+        out.append(json, runStart, length);
+    }
+
+    /**
+     * Check that caller-supplied text is one serialized JSON object, or null, before it is spliced into a script
+     * The text is walked with the grammar-checking {@link BridgeJsonReader#skipValue()} up to the end of input,
+     * so it can neither close the expression nor break the syntax of the batch it is sent in
+     * @param json Text to check
+     * @return true if the text is safe to pass as dataJson
+     */
+    static boolean isJsonObject(String json) {
+        BridgeJsonReader reader = new BridgeJsonReader(json);
+        try {
+            if (!reader.nextNull()) {
+                reader.skipObject();
+            }
+            reader.endInput();
+            return true;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    private static void appendUnicodeEscape(StringBuilder out, char c) {
+        out.append("\\u")
+                .append(HEX[(c >> 12) & 0xF])
+                .append(HEX[(c >> 8) & 0xF])
+                .append(HEX[(c >> 4) & 0xF])
+                .append(HEX[c & 0xF]);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.webviewapp;
+
+/**
+ * G.711 mu-law companding of 16-bit PCM to 8 bits per sample
+ * Halves the size of voice frames at no CPU cost worth measuring, and every browser can expand it with a
+ * 256-entry table
+ */
+public final class MuLawEncoder {
+
+    private static final int BIAS = 0x84;
+    private static final int CLIP = 32635;
+
+    private MuLawEncoder() {
+    }
+
+    /**
+     * @param pcm Source samples
+     * @param offset First sample to encode
+     * @param length Samples to encode
+     * @param out Target buffer, receives one byte per sample
+     * @param outOffset First index to write
+     */
+    public static void encode(short[] pcm, int offset, int length, byte[] out, int outOffset) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = encode(pcm[offset + i]);
+        }
+    }
+
+    public static byte encode(short sample) {
+        int pcm = sample;
+        int sign = 0;
+        if (pcm < 0) {
+            pcm = -pcm;
+            sign = 0x80;
+        }
+        if (pcm > CLIP) {
+            pcm = CLIP;
+        }
+        pcm += BIAS;
+        // Segment is the position of the highest set bit above the 7 low bits
+        int exponent = 31 - Integer.numberOfLeadingZeros((pcm >> 7) | 1);
+        int mantissa = (pcm >> (exponent + 3)) & 0x0F;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+
+    public static short decode(byte encoded) {
+        int value = ~encoded & 0xFF;
+        int exponent = (value >> 4) & 0x07;
+        int magnitude = ((((value & 0x0F) << 3) + BIAS) << exponent) - BIAS;
+        return (short) ((value & 0x80) != 0 ? -magnitude : magnitude);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.webviewapp;
+
+import java.util.ArrayList;
+
+/**
+ * Turns queued native-to-H5 messages into transport batches
+ * Drains the outbound queue, highest priority first, encodes the envelopes into one pooled buffer framed by
+ * the transport and hands the batch over, recording per-message metrics on the way. Independent of the
+ * WebView, so the flush path can be measured on a plain JVM. Not thread-safe: flush from one thread only
+ */
+final class OutboundBatcher {
+
+    private final OutboundMessageQueue queue;
+    private final BridgeMetrics metrics;
+    // Reused by every flush
+    private final ArrayList<OutboundMessageQueue.Message> batch = new ArrayList<>();
+
+    OutboundBatcher(OutboundMessageQueue queue, BridgeMetrics metrics) {
+        this.queue = queue;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Deliver one batch; while the transport is busy only high priority messages are taken
+     * @param transport Transport to deliver with
+     * @param lowLimit Most low priority messages in the batch
+     * @return Number of messages delivered, 0 if nothing was eligible
+     */
+    int flush(BridgeTransport transport, int lowLimit) {
+        return flush(transport, lowLimit, false);
+    }
+
+    /**
+     * Deliver one batch
+     * @param throttled true to take only high priority messages, requests and responses, leaving the rest queued
+     * @see #flush(BridgeTransport, int)
+     */
+    int flush(BridgeTransport transport, int lowLimit, boolean throttled) {
+        int drained;
+        if (transport.isBusy()) {
+            drained = queue.drainTo(batch, OutboundMessageQueue.PRIORITY_HIGH, lowLimit);
+        } else if (throttled) {
+            drained = queue.drainUrgentTo(batch);
+        } else {
+            drained = queue.drainTo(batch, OutboundMessageQueue.PRIORITY_LOW, lowLimit);
+        }
+        if (drained == 0) {
+            return 0;
+        }
+
+        StringBuilder out = JsLiteralEncoder.acquire();
+        transport.beginBatch(out);
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            OutboundMessageQueue.Message message = batch.get(i);
+            long encodeStart = System.nanoTime();
+            JsLiteralEncoder.appendEnvelope(out, message.eventType, message.callId, message.dataJson, message.errorJson);
+            metrics.recordMessage(BridgeMetrics.Direction.OUTBOUND, message.eventType,
+                    message.dataJson != null ? message.dataJson.length() : 0, System.nanoTime() - encodeStart);
+            metrics.recordQueueWait(BridgeMetrics.Direction.OUTBOUND, message.eventType,
+                    encodeStart - message.enqueuedAtNanos);
+        }
+        transport.endBatch(out);
+        int count = batch.size();
+        metrics.addQueueDepth(-count);
+        metrics.recordBatch(count);
+        batch.clear();
+        String payload = out.toString();
+        JsLiteralEncoder.release(out);
+
+        transport.send(payload, count);
+        return count;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.webviewapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Outbound message queue for native calling H5
+ * Collects messages posted between two frames so they can be delivered to H5 in one batch,
+ * and buffers them while the page is not ready or falls behind. Messages are kept in one lane per
+ * priority and drained highest priority first. A message with a merge key replaces the queued message
+ * with the same key in place, so only the latest value of a progress or state stream is delivered.
+ * The queue is bounded; when it is full the overflow policy makes room, lowest priority first, among
+ * messages explicitly created droppable. Requests, responses and every other message are never dropped
+ */
+class OutboundMessageQueue {
+
+    static final int DEFAULT_CAPACITY = 512;
+
+    static final int PRIORITY_HIGH = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_LOW = 2;
+    private static final int PRIORITY_COUNT = 3;
+
+    /**
+     * Notified of every message superseded by a newer one or removed to make room, called while the queue is locked
+     */
+    interface DiscardListener {
+        /**
+         * @param discarded Removed message
+         * @param merged true if a newer message with the same key replaced it
+         */
+        void onDiscard(Message discarded, boolean merged);
+    }
+
+    /**
+     * A single queued native-to-H5 message
+     */
+    static final class Message {
+        final String eventType;
+        final String callId;
+        final String dataJson;
+        final String errorJson;
+        final int priority;
+        // A newer message with the same merge key replaces this one while both are queued, null if none
+        final String mergeKey;
+        // Messages sharing a key supersede each other on overflow, null if the message must be delivered
+        // Only droppable messages have one, never requests and responses
+        final String coalesceKey;
+        final long enqueuedAtNanos = System.nanoTime();
+
+        Message(String eventType, String dataJson) {
+            this(eventType, dataJson, PRIORITY_NORMAL, null);
+        }
+
+        Message(String eventType, String dataJson, int priority, String mergeKey) {
+            this(eventType, dataJson, priority, mergeKey, false);
+        }
+
+        /**
+         * @param droppable true if the message may be discarded to make room, such as a frame of a media stream
+         */
+        Message(String eventType, String dataJson, int priority, String mergeKey, boolean droppable) {
+            this.eventType = eventType;
+            this.callId = null;
+            this.dataJson = dataJson;
+            this.errorJson = null;
+            this.priority = priority;
+            this.mergeKey = mergeKey;
+            this.coalesceKey = droppable ? eventType : null;
+        }
+
+        Message(String eventType, String callId, String dataJson, String errorJson) {
+            this(eventType, callId, dataJson, errorJson, PRIORITY_NORMAL);
+        }
+
+        Message(String eventType, String callId, String dataJson, String errorJson, int priority) {
+            this.eventType = eventType;
+            this.callId = callId;
+            this.dataJson = dataJson;
+            this.errorJson = errorJson;
+            this.priority = priority;
+            this.mergeKey = null;
+            this.coalesceKey = null;
+        }
+    }
+
+    /**
+     * Messages of one priority in posting order, with the position of every merge key
+     */
+    private static final class Lane {
+        final ArrayList<Message> pending = new ArrayList<>();
+        final HashMap<String, Integer> mergeIndex = new HashMap<>();
+
+        Message remove(int index) {
+            Message removed = pending.remove(index);
+            reindex();
+            return removed;
+        }
+
+        void reindex() {
+            mergeIndex.clear();
+            for (int i = 0; i < pending.size(); i++) {
+                String key = pending.get(i).mergeKey;
+                if (key != null) {
+                    mergeIndex.put(key, i);
+                }
+            }
+        }
+    }
+
+    private final DiscardListener discardListener;
+    private final Lane[] lanes = new Lane[PRIORITY_COUNT];
+    private int size;
+    private int capacity = DEFAULT_CAPACITY;
+    private boolean coalesce;
+
+    OutboundMessageQueue(DiscardListener discardListener) {
+        this.discardListener = discardListener;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * @param capacity Messages held before the overflow policy applies
+     * @param coalesce true to first replace a queued message with the same key, false to drop the oldest
+     */
+    synchronized void setOverflowPolicy(int capacity, boolean coalesce) {
+        this.capacity = capacity;
+        this.coalesce = coalesce;
+    }
+
+    /**
+     * Append a message to its lane, or replace the queued message with the same merge key
+     * @param message Message to append
+     * @return true if the queue was empty before, meaning a flush has to be scheduled
+     */
+    synchronized boolean offer(Message message) {
+        Lane lane = lanes[message.priority];
+        if (message.mergeKey != null) {
+            Integer index = lane.mergeIndex.get(message.mergeKey);
+            if (index != null) {
+                discardListener.onDiscard(lane.pending.set(index, message), true);
+                return false;
+            }
+        }
+        if (size >= capacity) {
+            makeRoom(message);
+        }
+        // makeRoom may have reindexed the lane
+        if (message.mergeKey != null) {
+            lane.mergeIndex.put(message.mergeKey, lane.pending.size());
+        }
+        lane.pending.add(message);
+        size++;
+        return size == 1;
+    }
+
+    private void makeRoom(Message incoming) {
+        if (coalesce && incoming.coalesceKey != null) {
+            for (int p = PRIORITY_COUNT - 1; p >= 0; p--) {
+                ArrayList<Message> pending = lanes[p].pending;
+                for (int i = 0; i < pending.size(); i++) {
+                    if (incoming.coalesceKey.equals(pending.get(i).coalesceKey)) {
+                        discard(lanes[p], i, true);
+                        return;
+                    }
+                }
+            }
+        }
+        for (int p = PRIORITY_COUNT - 1; p >= 0; p--) {
+            ArrayList<Message> pending = lanes[p].pending;
+            for (int i = 0; i < pending.size(); i++) {
+                if (pending.get(i).coalesceKey != null) {
+                    discard(lanes[p], i, false);
+                    return;
+                }
+            }
+        }
+        // Nothing queued may be dropped, the queue grows past its capacity
+    }
+
+    private void discard(Lane lane, int index, boolean merged) {
+        size--;
+        discardListener.onDiscard(lane.remove(index), merged);
+    }
+
+    /**
+     * Move queued messages into a batch, highest priority first and in posting order within a priority
+     * @param out Batch to append to
+     * @param lowestPriority Lowest priority drained, lower ones stay queued
+     * @param lowLimit Most low priority messages drained, the rest stay queued for the next batch
+     * @return Number of messages drained
+     */
+    synchronized int drainTo(ArrayList<Message> out, int lowestPriority, int lowLimit) {
+        int drained = 0;
+        for (int p = 0; p <= lowestPriority && p < PRIORITY_COUNT; p++) {
+            Lane lane = lanes[p];
+            int count = lane.pending.size();
+            if (count == 0) {
+                continue;
+            }
+            if (p == PRIORITY_LOW && count > lowLimit) {
+                out.addAll(lane.pending.subList(0, lowLimit));
+                lane.pending.subList(0, lowLimit).clear();
+                lane.reindex();
+                count = lowLimit;
+            } else {
+                out.addAll(lane.pending);
+                lane.pending.clear();
+                lane.mergeIndex.clear();
+            }
+            drained += count;
+        }
+        size -= drained;
+        return drained;
+    }
+
+    /**
+     * Move high priority messages, requests and responses into a batch, leaving the rest queued
+     * Used while delivery is throttled, so nobody waiting for an answer is held up
+     * @param out Batch to append to
+     * @return Number of messages drained
+     */
+    synchronized int drainUrgentTo(ArrayList<Message> out) {
+        int drained = lanes[PRIORITY_HIGH].pending.size();
+        out.addAll(lanes[PRIORITY_HIGH].pending);
+        lanes[PRIORITY_HIGH].pending.clear();
+        lanes[PRIORITY_HIGH].mergeIndex.clear();
+        for (int p = PRIORITY_HIGH + 1; p < PRIORITY_COUNT; p++) {
+            Lane lane = lanes[p];
+            int kept = 0;
+            for (int i = 0; i < lane.pending.size(); i++) {
+                Message message = lane.pending.get(i);
+                if (message.callId != null) {
+                    out.add(message);
+                    drained++;
+                } else {
+                    lane.pending.set(kept++, message);
+                }
+            }
+            if (kept < lane.pending.size()) {
+                lane.pending.subList(kept, lane.pending.size()).clear();
+                lane.reindex();
+            }
+        }
+        size -= drained;
+        return drained;
+    }
+
+    /**
+     * Copy the queued messages without removing them, in drain order
+     * @param out List to append to
+     */
+    synchronized void snapshot(ArrayList<Message> out) {
+        for (Lane lane : lanes) {
+            out.addAll(lane.pending);
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+}
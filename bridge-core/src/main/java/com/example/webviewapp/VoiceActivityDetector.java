@@ -0,0 +1,106 @@
+package com.example.webviewapp;
+
+/**
+ * Energy-based voice activity detector for fixed-size PCM frames
+ * Tracks the background noise floor and reports speech while frames are loud enough above it. Speech starts
+ * after a few loud frames in a row, so clicks are ignored, and ends only after a hangover of quiet frames,
+ * so pauses between words do not cut the stream
+ */
+public final class VoiceActivityDetector {
+
+    public static final double DEFAULT_THRESHOLD_DB = 10;
+    public static final double DEFAULT_MIN_LEVEL_DB = -50;
+    public static final int DEFAULT_ATTACK_FRAMES = 2;
+    public static final int DEFAULT_HANGOVER_FRAMES = 15;
+
+    // Floor follows quieter frames quickly and louder frames slowly, and almost not at all during speech
+    private static final double FLOOR_FALL = 0.5;
+    private static final double FLOOR_RISE = 0.02;
+    private static final double FLOOR_RISE_SPEECH = 0.001;
+    private static final double FULL_SCALE = 32768.0;
+
+    private final double thresholdDb;
+    private final double minLevelDb;
+    private final int attackFrames;
+    private final int hangoverFrames;
+
+    private double noiseFloorDb = Double.NaN;
+    private int loudFrames;
+    private int quietFrames;
+    private boolean speech;
+
+    public VoiceActivityDetector() {
+        this(DEFAULT_THRESHOLD_DB, DEFAULT_MIN_LEVEL_DB, DEFAULT_ATTACK_FRAMES, DEFAULT_HANGOVER_FRAMES);
+    }
+
+    /**
+     * @param thresholdDb Level above the noise floor that counts as speech
+     * @param minLevelDb Level in dBFS below which frames are never speech
+     * @param attackFrames Loud frames in a row that start speech
+     * @param hangoverFrames Quiet frames in a row that end speech
+     */
+    public VoiceActivityDetector(double thresholdDb, double minLevelDb, int attackFrames, int hangoverFrames) {
+        this.thresholdDb = thresholdDb;
+        this.minLevelDb = minLevelDb;
+        this.attackFrames = attackFrames;
+        this.hangoverFrames = hangoverFrames;
+    }
+
+    /**
+     * Classify the next frame
+     * @return true while speech is active
+     */
+    public boolean process(short[] pcm, int offset, int length) {
+        double levelDb = levelDb(pcm, offset, length);
+        if (Double.isNaN(noiseFloorDb)) {
+            noiseFloorDb = levelDb;
+        }
+        boolean loud = levelDb > minLevelDb && levelDb > noiseFloorDb + thresholdDb;
+        if (loud) {
+            quietFrames = 0;
+            if (!speech && ++loudFrames >= attackFrames) {
+                speech = true;
+            }
+        } else {
+            loudFrames = 0;
+            if (speech && ++quietFrames >= hangoverFrames) {
+                speech = false;
+                quietFrames = 0;
+            }
+        }
+        double rate = levelDb < noiseFloorDb ? FLOOR_FALL : speech ? FLOOR_RISE_SPEECH : FLOOR_RISE;
+        noiseFloorDb += (levelDb - noiseFloorDb) * rate;
+        return speech;
+    }
+
+    public boolean isSpeech() {
+        return speech;
+    }
+
+    public double getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    public void reset() {
+        noiseFloorDb = Double.NaN;
+        loudFrames = 0;
+        quietFrames = 0;
+        speech = false;
+    }
+
+    /**
+     * @return RMS level of a frame in dBFS, -120 for digital silence
+     */
+    static double levelDb(short[] pcm, int offset, int length) {
+        long sumSquares = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int sample = pcm[i];
+            sumSquares += sample * sample;
+        }
+        if (sumSquares == 0 || length == 0) {
+            return -120;
+        }
+        double rms = Math.sqrt((double) sumSquares / length) / FULL_SCALE;
+        return 20 * Math.log10(rms);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.webviewapp;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BridgeEnvelopeDecoderTest {
+
+    @Test
+    public void decodesEnvelope() throws JSONException {
+        BridgeEnvelope envelope = BridgeEnvelopeDecoder.decode(
+                "{\"eventType\":\"media.play\",\"callId\":\"c1\",\"data\":{\"id\":3,\"tags\":[\"a\",\"}\"]}}");
+
+        assertEquals("media.play", envelope.getEventType());
+        assertEquals("c1", envelope.getCallId());
+        assertTrue(envelope.hasData());
+        assertEquals("{\"id\":3,\"tags\":[\"a\",\"}\"]}", envelope.getRawData());
+        assertEquals(envelope.getRawData().length(), envelope.getRawDataLength());
+        assertEquals(3, envelope.getData().getInt("id"));
+        assertFalse(envelope.hasError());
+    }
+
+    @Test
+    public void keysMayComeInAnyOrderWithWhitespace() throws JSONException {
+        BridgeEnvelope envelope = BridgeEnvelopeDecoder.decode(
+                " {\n \"data\" : { \"a\" : 1 } ,\t\"extra\": {\"eventType\": \"nested\"}, \"eventType\" : \"click\" } ");
+
+        assertEquals("click", envelope.getEventType());
+        assertEquals("{ \"a\" : 1 }", envelope.getRawData());
+        assertNull(envelope.getCallId());
+    }
+
+    @Test
+    public void missingOrNonObjectDataReadsAsEmptyObject() throws JSONException {
+        assertEquals("{}", BridgeEnvelopeDecoder.decode("{\"eventType\":\"a\"}").getRawData());
+
+        BridgeEnvelope envelope = BridgeEnvelopeDecoder.decode("{\"eventType\":\"a\",\"data\":[1,2]}");
+        assertFalse(envelope.hasData());
+        assertEquals(0, envelope.getRawDataLength());
+        assertEquals("{}", envelope.getRawData());
+        assertEquals(0, envelope.getData().length());
+    }
+
+    @Test
+    public void escapedKeysAndValuesAreDecoded() throws JSONException {
+        BridgeEnvelope envelope = BridgeEnvelopeDecoder.decode(
+                "{\"event\\u0054ype\":\"say \\\"hi\\\"\",\"callId\":\"a\\/b\"}");
+
+        assertEquals("say \"hi\"", envelope.getEventType());
+        assertEquals("a/b", envelope.getCallId());
+    }
+
+    @Test
+    public void numericCallIdReadsAsString() throws JSONException {
+        assertEquals("42", BridgeEnvelopeDecoder.decode("{\"eventType\":\"a\",\"callId\":42}").getCallId());
+    }
+
+    @Test
+    public void errorIsReadOnDemand() throws JSONException {
+        BridgeEnvelope envelope = BridgeEnvelopeDecoder.decode(
+                "{\"eventType\":\"rpcResponse\",\"callId\":\"1\",\"error\":{\"code\":\"E_DENIED\",\"message\":\"No\"}}");
+        assertTrue(envelope.hasError());
+        assertEquals("E_DENIED", envelope.getErrorCode());
+        assertEquals("No", envelope.getErrorMessage());
+
+        BridgeEnvelope bare = BridgeEnvelopeDecoder.decode("{\"eventType\":\"rpcResponse\",\"error\":\"E_TIMEOUT\"}");
+        assertEquals("E_TIMEOUT", bare.getErrorCode());
+        assertNull(bare.getErrorMessage());
+
+        assertFalse(BridgeEnvelopeDecoder.decode("{\"eventType\":\"rpcResponse\",\"error\":null}").hasError());
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsNull() throws JSONException {
+        BridgeEnvelopeDecoder.decode(null);
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsMissingEventType() throws JSONException {
+        BridgeEnvelopeDecoder.decode("{\"data\":{}}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsNonStringEventType() throws JSONException {
+        BridgeEnvelopeDecoder.decode("{\"eventType\":{\"a\":1}}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsNullEventType() throws JSONException {
+        BridgeEnvelopeDecoder.decode("{\"eventType\":null}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsMissingComma() throws JSONException {
+        BridgeEnvelopeDecoder.decode("{\"eventType\":\"a\" \"data\":{}}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsUnterminatedData() throws JSONException {
+        BridgeEnvelopeDecoder.decode("{\"eventType\":\"a\",\"data\":{\"b\":[1}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsUnterminatedString() throws JSONException {
+        BridgeEnvelopeDecoder.decode("{\"eventType\":\"a");
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsNonObject() throws JSONException {
+        BridgeEnvelopeDecoder.decode("[\"eventType\",\"a\"]");
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.webviewapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BridgeHandlerRegistryTest {
+
+    private BridgeHandlerRegistry<String> registry;
+
+    @Before
+    public void setUp() {
+        registry = new BridgeHandlerRegistry<>();
+        registry.register("*", "any");
+        registry.register("media.*", "media");
+        registry.register("media.audio.*", "audio");
+        registry.register("media.audio.start", "start");
+    }
+
+    @Test
+    public void exactRouteComesFirst() {
+        assertEquals("start", registry.find("media.audio.start"));
+    }
+
+    @Test
+    public void longestNamespaceComesNext() {
+        assertEquals("audio", registry.find("media.audio.stop"));
+        assertEquals("audio", registry.find("media.audio.level.changed"));
+        assertEquals("media", registry.find("media.video.start"));
+    }
+
+    @Test
+    public void catchAllComesLast() {
+        assertEquals("any", registry.find("click"));
+        // A namespace route matches below the namespace only, on whole segments
+        assertEquals("any", registry.find("media"));
+        assertEquals("any", registry.find("mediaplayer.start"));
+    }
+
+    @Test
+    public void noRouteMatches() {
+        registry.unregister("*");
+        assertNull(registry.find("click"));
+        assertEquals("media", registry.find("media.video.start"));
+    }
+
+    @Test
+    public void unregisterFallsBackToTheNextRoute() {
+        registry.unregister("media.audio.start");
+        assertEquals("audio", registry.find("media.audio.start"));
+        registry.unregister("media.audio.*");
+        assertEquals("media", registry.find("media.audio.start"));
+        registry.unregister("media.*");
+        assertEquals("any", registry.find("media.audio.start"));
+    }
+
+    @Test
+    public void registerReplacesARoute() {
+        registry.register("media.*", "player");
+        assertEquals("player", registry.find("media.video.start"));
+    }
+
+    @Test
+    public void clearRemovesEveryRoute() {
+        registry.clear();
+        assertNull(registry.find("media.audio.start"));
+        assertNull(registry.find("click"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyRoute() {
+        registry.register("", "handler");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingHandler() {
+        registry.register("click", null);
+    }
+}
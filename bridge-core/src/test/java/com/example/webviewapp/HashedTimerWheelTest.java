@@ -0,0 +1,124 @@
+package com.example.webviewapp;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedTimerWheelTest {
+
+    private final HashedTimerWheel wheel = new HashedTimerWheel(5, 8, "test-timer");
+
+    @Test
+    public void firesNoEarlierThanTheDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long[] firedAt = new long[1];
+        long start = System.nanoTime();
+        wheel.schedule(() -> {
+            firedAt[0] = System.nanoTime();
+            fired.countDown();
+        }, 30);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(firedAt[0] - start >= TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    public void delayLongerThanOneRotationWaitsForItsRound() throws InterruptedException {
+        // 8 buckets of 5 ms turn once every 40 ms
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(fired::countDown, 100);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void firesInDeadlineOrder() throws InterruptedException {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch fired = new CountDownLatch(3);
+        wheel.schedule(() -> {
+            order.add(3);
+            fired.countDown();
+        }, 90);
+        wheel.schedule(() -> {
+            order.add(1);
+            fired.countDown();
+        }, 10);
+        wheel.schedule(() -> {
+            order.add(2);
+            fired.countDown();
+        }, 45);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(1, (int) order.get(0));
+        assertEquals(2, (int) order.get(1));
+        assertEquals(3, (int) order.get(2));
+    }
+
+    @Test
+    public void cancelledTimeoutNeverFires() throws InterruptedException {
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        CountDownLatch later = new CountDownLatch(1);
+        HashedTimerWheel.Timeout timeout = wheel.schedule(() -> cancelledRan.set(true), 20);
+        wheel.schedule(later::countDown, 60);
+
+        assertTrue(timeout.cancel());
+        assertFalse("Cancelled twice", timeout.cancel());
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.get());
+    }
+
+    @Test
+    public void firedTimeoutCannotBeCancelled() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        HashedTimerWheel.Timeout timeout = wheel.schedule(fired::countDown, 0);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        // The task runs after the timeout is marked fired
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void failingTaskDoesNotStopTheTimer() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        wheel.schedule(() -> {
+            throw new IllegalStateException("task failure");
+        }, 5);
+        wheel.schedule(fired::countDown, 30);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void schedulesAgainAfterIdling() throws InterruptedException {
+        CountDownLatch first = new CountDownLatch(1);
+        wheel.schedule(first::countDown, 5);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+
+        CountDownLatch second = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(second::countDown, 20);
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveTick() {
+        new HashedTimerWheel(0, 8, "test-timer");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyWheel() {
+        new HashedTimerWheel(5, 0, "test-timer");
+    }
+}
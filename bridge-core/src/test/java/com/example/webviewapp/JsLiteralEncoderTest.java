@@ -0,0 +1,132 @@
+package com.example.webviewapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JsLiteralEncoderTest {
+
+    @Test
+    public void stringIsQuotedForJsonAndJavaScript() {
+        StringBuilder sb = new StringBuilder();
+        JsLiteralEncoder.appendString(sb, "a\"b\\c\nd\re\tf\u0001g\u2028h\u2029</script>");
+        assertEquals("\"a\\\"b\\\\c\\nd\\re\\tf\\u0001g\\u2028h\\u2029</script>\"", sb.toString());
+    }
+
+    @Test
+    public void nullStringIsWrittenAsNull() {
+        StringBuilder sb = new StringBuilder();
+        JsLiteralEncoder.appendString(sb, null);
+        assertEquals("null", sb.toString());
+    }
+
+    @Test
+    public void jsonOnlyEscapesLineSeparators() {
+        StringBuilder sb = new StringBuilder();
+        JsLiteralEncoder.appendJson(sb, "{\"a\":\"x\u2028y\u2029\",\"b\":\"\\n\"}");
+        assertEquals("{\"a\":\"x\\u2028y\\u2029\",\"b\":\"\\n\"}", sb.toString());
+    }
+
+    @Test
+    public void envelopeOmitsAbsentFields() {
+        StringBuilder sb = new StringBuilder();
+        JsLiteralEncoder.appendEnvelope(sb, "click", null);
+        assertEquals("{\"eventType\":\"click\",\"data\":{}}", sb.toString());
+    }
+
+    @Test
+    public void responseEnvelopeCarriesCallIdAndError() {
+        StringBuilder sb = new StringBuilder();
+        JsLiteralEncoder.appendEnvelope(sb, "rpcResponse", "7", null, JsLiteralEncoder.errorJson("E", "bad \"x\""));
+        assertEquals("{\"eventType\":\"rpcResponse\",\"callId\":\"7\",\"data\":{},"
+                + "\"error\":{\"code\":\"E\",\"message\":\"bad \\\"x\\\"\"}}", sb.toString());
+    }
+
+    @Test
+    public void errorWithoutMessage() {
+        assertEquals("{\"code\":\"E\"}", JsLiteralEncoder.errorJson("E", null));
+    }
+
+    @Test
+    public void builderIsPooledPerThread() {
+        StringBuilder sb = JsLiteralEncoder.acquire();
+        sb.append("used");
+        JsLiteralEncoder.release(sb);
+        StringBuilder again = JsLiteralEncoder.acquire();
+        assertSame(sb, again);
+        assertEquals(0, again.length());
+    }
+
+    @Test
+    public void acceptsJsonObjects() {
+        assertTrue(JsLiteralEncoder.isJsonObject("{}"));
+        assertTrue(JsLiteralEncoder.isJsonObject("null"));
+        assertTrue(JsLiteralEncoder.isJsonObject(" {\"a\" : [1, -2.5e-3, 0, true, false, null, {}, []]}\n"));
+        assertTrue(JsLiteralEncoder.isJsonObject("{\"a\":\"\\u00e9\\n\\/\\\"\",\"b\":{\"c\":[[]]}}"));
+        assertTrue(JsLiteralEncoder.isJsonObject("{\"s\":\"</script>\u2028\"}"));
+    }
+
+    @Test
+    public void rejectsMalformedObjects() {
+        assertRejected("{]");
+        assertRejected("{\"a\":}");
+        assertRejected("{\"a\" 1 2}");
+        assertRejected("{\"a\":false.true}");
+        assertRejected("{\"a\":1,}");
+        assertRejected("{,}");
+        assertRejected("{\"a\":1");
+        assertRejected("{\"a\":[1,2}");
+        assertRejected("{\"a\":\"unterminated}");
+        assertRejected("{a:1}");
+        assertRejected("{'a':1}");
+    }
+
+    @Test
+    public void rejectsInvalidScalars() {
+        assertRejected("{\"a\":01}");
+        assertRejected("{\"a\":1.}");
+        assertRejected("{\"a\":.5}");
+        assertRejected("{\"a\":1e}");
+        assertRejected("{\"a\":+1}");
+        assertRejected("{\"a\":1d}");
+        assertRejected("{\"a\":truex}");
+        assertRejected("{\"a\":nul}");
+        assertRejected("{\"a\":undefined}");
+        assertRejected("{\"a\":\"\\x41\"}");
+        assertRejected("{\"a\":\"\\u00g1\"}");
+        assertRejected("{\"a\":\"line\nbreak\"}");
+    }
+
+    @Test
+    public void rejectsAnythingButOneObject() {
+        assertRejected("");
+        assertRejected("   ");
+        assertRejected("[1]");
+        assertRejected("\"x\"");
+        assertRejected("1");
+        assertRejected("{}{}");
+        assertRejected("{}, 1");
+        assertRejected("{});alert(1);({");
+        assertRejected("{}//");
+        assertRejected("{}\u2028");
+    }
+
+    @Test
+    public void rejectsDeepNesting() {
+        StringBuilder sb = new StringBuilder("{\"a\":");
+        for (int i = 0; i < 1000; i++) {
+            sb.append('[');
+        }
+        for (int i = 0; i < 1000; i++) {
+            sb.append(']');
+        }
+        assertRejected(sb.append('}').toString());
+    }
+
+    private static void assertRejected(String json) {
+        assertFalse(json, JsLiteralEncoder.isJsonObject(json));
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.webviewapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogHistogramTest {
+
+    // Buckets 0..163 cover values below 2^42, the last one holds everything above
+    private static final int LAST_BUCKET = 167;
+    private static final int LAST_REGULAR_BUCKET = 163;
+
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, LogHistogram.bucketOf(value));
+            assertEquals(value, LogHistogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int bucket = 0; bucket < LAST_REGULAR_BUCKET; bucket++) {
+            long upper = LogHistogram.upperBoundOf(bucket);
+            assertEquals(bucket, LogHistogram.bucketOf(upper));
+            assertEquals(bucket + 1, LogHistogram.bucketOf(upper + 1));
+        }
+        assertEquals((1L << 42) - 1, LogHistogram.upperBoundOf(LAST_REGULAR_BUCKET));
+    }
+
+    @Test
+    public void bucketsAreWithinAQuarterOfTheirValues() {
+        for (int bucket = 4; bucket <= LAST_REGULAR_BUCKET; bucket++) {
+            long lower = LogHistogram.upperBoundOf(bucket - 1) + 1;
+            long upper = LogHistogram.upperBoundOf(bucket);
+            assertTrue("bucket " + bucket, upper - lower + 1 <= lower / 4 + 1);
+        }
+    }
+
+    @Test
+    public void bucketBoundariesArePowersOfTwoSplitInFour() {
+        assertEquals(8, LogHistogram.bucketOf(8));
+        assertEquals(8, LogHistogram.bucketOf(9));
+        assertEquals(9, LogHistogram.bucketOf(10));
+        assertEquals(11, LogHistogram.bucketOf(15));
+        assertEquals(12, LogHistogram.bucketOf(16));
+        assertEquals(12, LogHistogram.bucketOf(19));
+        assertEquals(13, LogHistogram.bucketOf(20));
+    }
+
+    @Test
+    public void hugeValuesLandInTheLastBucket() {
+        assertEquals(LAST_BUCKET, LogHistogram.bucketOf(1L << 42));
+        assertEquals(LAST_BUCKET, LogHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreCappedAtTheMaximum() {
+        LogHistogram histogram = new LogHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(50, histogram.getMean());
+        assertEquals(100, histogram.getMax());
+        long p50 = histogram.getPercentile(0.5);
+        assertTrue(p50 >= 50 && p50 <= 50 * 5 / 4);
+        long p99 = histogram.getPercentile(0.99);
+        assertTrue(p99 >= 99 && p99 <= 100);
+        assertEquals(100, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+}
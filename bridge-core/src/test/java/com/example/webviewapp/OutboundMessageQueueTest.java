@@ -0,0 +1,203 @@
+package com.example.webviewapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundMessageQueueTest {
+
+    private final List<OutboundMessageQueue.Message> discarded = new ArrayList<>();
+    private final List<Boolean> merged = new ArrayList<>();
+    private OutboundMessageQueue queue;
+
+    @Before
+    public void setUp() {
+        queue = new OutboundMessageQueue((message, wasMerged) -> {
+            discarded.add(message);
+            merged.add(wasMerged);
+        });
+    }
+
+    @Test
+    public void offerReportsTheFirstMessage() {
+        assertTrue(queue.offer(message("a", OutboundMessageQueue.PRIORITY_NORMAL)));
+        assertFalse(queue.offer(message("b", OutboundMessageQueue.PRIORITY_NORMAL)));
+        queue.drainTo(new ArrayList<>(), OutboundMessageQueue.PRIORITY_LOW, Integer.MAX_VALUE);
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer(message("c", OutboundMessageQueue.PRIORITY_NORMAL)));
+    }
+
+    @Test
+    public void mergeKeyReplacesTheQueuedMessageInPlace() {
+        OutboundMessageQueue.Message first = keyed("progress", "{\"p\":1}");
+        OutboundMessageQueue.Message other = message("other", OutboundMessageQueue.PRIORITY_NORMAL);
+        OutboundMessageQueue.Message latest = keyed("progress", "{\"p\":2}");
+        queue.offer(first);
+        queue.offer(other);
+        assertFalse(queue.offer(latest));
+
+        assertEquals(2, drainAll().size());
+        assertEquals(1, discarded.size());
+        assertSame(first, discarded.get(0));
+        assertTrue(merged.get(0));
+    }
+
+    @Test
+    public void mergeKeyKeepsItsPosition() {
+        queue.offer(keyed("progress", "{\"p\":1}"));
+        OutboundMessageQueue.Message other = message("other", OutboundMessageQueue.PRIORITY_NORMAL);
+        queue.offer(other);
+        OutboundMessageQueue.Message latest = keyed("progress", "{\"p\":2}");
+        queue.offer(latest);
+
+        List<OutboundMessageQueue.Message> out = drainAll();
+        assertSame(latest, out.get(0));
+        assertSame(other, out.get(1));
+    }
+
+    @Test
+    public void drainedMergeKeyIsQueuedAgain() {
+        queue.offer(keyed("progress", "{\"p\":1}"));
+        drainAll();
+        assertTrue(queue.offer(keyed("progress", "{\"p\":2}")));
+        assertEquals(1, drainAll().size());
+        assertTrue(discarded.isEmpty());
+    }
+
+    @Test
+    public void drainsHighestPriorityFirst() {
+        OutboundMessageQueue.Message low = message("low", OutboundMessageQueue.PRIORITY_LOW);
+        OutboundMessageQueue.Message normal = message("normal", OutboundMessageQueue.PRIORITY_NORMAL);
+        OutboundMessageQueue.Message high = message("high", OutboundMessageQueue.PRIORITY_HIGH);
+        queue.offer(low);
+        queue.offer(normal);
+        queue.offer(high);
+
+        List<OutboundMessageQueue.Message> out = drainAll();
+        assertSame(high, out.get(0));
+        assertSame(normal, out.get(1));
+        assertSame(low, out.get(2));
+    }
+
+    @Test
+    public void lowPriorityIsDrainedUpToTheLimit() {
+        for (int i = 0; i < 3; i++) {
+            queue.offer(message("low" + i, OutboundMessageQueue.PRIORITY_LOW));
+        }
+        queue.offer(message("normal", OutboundMessageQueue.PRIORITY_NORMAL));
+
+        ArrayList<OutboundMessageQueue.Message> out = new ArrayList<>();
+        assertEquals(1, queue.drainTo(out, OutboundMessageQueue.PRIORITY_NORMAL, 2));
+        assertEquals(2, queue.drainTo(out, OutboundMessageQueue.PRIORITY_LOW, 2));
+        assertEquals("low0", out.get(1).eventType);
+        assertEquals("low1", out.get(2).eventType);
+        assertEquals(1, queue.drainTo(out, OutboundMessageQueue.PRIORITY_LOW, 2));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void urgentDrainTakesHighPriorityAndCalls() {
+        OutboundMessageQueue.Message high = message("high", OutboundMessageQueue.PRIORITY_HIGH);
+        OutboundMessageQueue.Message response = new OutboundMessageQueue.Message("rpcResponse", "7", "{}", null,
+                OutboundMessageQueue.PRIORITY_LOW);
+        OutboundMessageQueue.Message event = message("event", OutboundMessageQueue.PRIORITY_NORMAL);
+        queue.offer(event);
+        queue.offer(response);
+        queue.offer(high);
+
+        ArrayList<OutboundMessageQueue.Message> out = new ArrayList<>();
+        assertEquals(2, queue.drainUrgentTo(out));
+        assertSame(high, out.get(0));
+        assertSame(response, out.get(1));
+
+        List<OutboundMessageQueue.Message> rest = drainAll();
+        assertEquals(1, rest.size());
+        assertSame(event, rest.get(0));
+    }
+
+    @Test
+    public void overflowDropsDroppableMessagesLowestPriorityFirst() {
+        queue.setOverflowPolicy(3, false);
+        OutboundMessageQueue.Message frameNormal = droppable("frame", OutboundMessageQueue.PRIORITY_NORMAL);
+        OutboundMessageQueue.Message frameLow = droppable("frame", OutboundMessageQueue.PRIORITY_LOW);
+        queue.offer(frameNormal);
+        queue.offer(frameLow);
+        queue.offer(message("state", OutboundMessageQueue.PRIORITY_NORMAL));
+
+        queue.offer(message("click", OutboundMessageQueue.PRIORITY_NORMAL));
+
+        assertEquals(1, discarded.size());
+        assertSame(frameLow, discarded.get(0));
+        assertFalse(merged.get(0));
+        assertEquals(3, drainAll().size());
+    }
+
+    @Test
+    public void overflowNeverDropsMessagesThatMustBeDelivered() {
+        queue.setOverflowPolicy(2, true);
+        queue.offer(message("a", OutboundMessageQueue.PRIORITY_LOW));
+        queue.offer(new OutboundMessageQueue.Message("rpcResponse", "1", "{}", null));
+        queue.offer(droppable("frame", OutboundMessageQueue.PRIORITY_LOW));
+
+        assertTrue(discarded.isEmpty());
+        assertEquals(3, drainAll().size());
+    }
+
+    @Test
+    public void coalescingReplacesAMessageOfTheSameStream() {
+        queue.setOverflowPolicy(2, true);
+        OutboundMessageQueue.Message audio = droppable("audio", OutboundMessageQueue.PRIORITY_LOW);
+        OutboundMessageQueue.Message video = droppable("video", OutboundMessageQueue.PRIORITY_HIGH);
+        queue.offer(audio);
+        queue.offer(video);
+
+        queue.offer(droppable("video", OutboundMessageQueue.PRIORITY_HIGH));
+
+        assertEquals(1, discarded.size());
+        assertSame(video, discarded.get(0));
+        assertTrue(merged.get(0));
+        assertTrue(drainAll().contains(audio));
+    }
+
+    @Test
+    public void mergeKeyStillMatchesAfterADrop() {
+        queue.setOverflowPolicy(2, false);
+        queue.offer(droppable("frame", OutboundMessageQueue.PRIORITY_NORMAL));
+        queue.offer(keyed("progress", "{\"p\":1}"));
+        OutboundMessageQueue.Message other = message("other", OutboundMessageQueue.PRIORITY_NORMAL);
+        queue.offer(other);
+
+        OutboundMessageQueue.Message latest = keyed("progress", "{\"p\":2}");
+        queue.offer(latest);
+
+        List<OutboundMessageQueue.Message> out = drainAll();
+        assertEquals(2, out.size());
+        assertSame(latest, out.get(0));
+        assertSame(other, out.get(1));
+    }
+
+    private List<OutboundMessageQueue.Message> drainAll() {
+        ArrayList<OutboundMessageQueue.Message> out = new ArrayList<>();
+        queue.drainTo(out, OutboundMessageQueue.PRIORITY_LOW, Integer.MAX_VALUE);
+        return out;
+    }
+
+    private static OutboundMessageQueue.Message message(String eventType, int priority) {
+        return new OutboundMessageQueue.Message(eventType, "{}", priority, null);
+    }
+
+    private static OutboundMessageQueue.Message keyed(String key, String dataJson) {
+        return new OutboundMessageQueue.Message("progress", dataJson, OutboundMessageQueue.PRIORITY_NORMAL, key);
+    }
+
+    private static OutboundMessageQueue.Message droppable(String eventType, int priority) {
+        return new OutboundMessageQueue.Message(eventType, "{}", priority, null, true);
+    }
+}